@@ -0,0 +1,87 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of claim and commit of new files by 1 to 16 threads sharing one filter, as executor threads do.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AcceptCommitBenchmark {
+
+    /**
+     * Simulated store round trip, 0 means pure in-memory store.
+     */
+    @Param({"0", "200"})
+    public long roundTripMicros;
+
+    private NamedFilePersistentAcceptOnceRetriableFileListFilter filter;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        LatencyInjectingMetadataStore store =
+                new LatencyInjectingMetadataStore(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        filter = new NamedFilePersistentAcceptOnceRetriableFileListFilter(store, "bench-");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1() {
+        return acceptAndCommit();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean threads2() {
+        return acceptAndCommit();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4() {
+        return acceptAndCommit();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean threads8() {
+        return acceptAndCommit();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean threads16() {
+        return acceptAndCommit();
+    }
+
+    private boolean acceptAndCommit() {
+        NamedFile file = new NamedFile("file-" + sequence.incrementAndGet());
+        boolean accepted = filter.accept(file);
+        if (accepted) {
+            filter.commit(file);
+        }
+        return accepted;
+    }
+}
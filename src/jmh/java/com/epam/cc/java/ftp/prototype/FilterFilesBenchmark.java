@@ -0,0 +1,101 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single poll of {@link AbstractPersistentAcceptOnceRetriableFileListFilter#filterFiles(Object[])} over a listing
+ * with mixed states: a third of files is new, a third is in progress and a third is done. Files accepted by
+ * an invocation are reverted to new after it, so every invocation sees the same state.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterFilesBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int listingSize;
+
+    /**
+     * Simulated store round trip, 0 means pure in-memory store.
+     */
+    @Param({"0", "200"})
+    public long roundTripMicros;
+
+    @Param({"false", "true"})
+    public boolean batchStore;
+
+    @Param({"-1", "20"})
+    public int maxAcceptedFileListLength;
+
+    private LatencyInjectingMetadataStore store;
+
+    private NamedFilePersistentAcceptOnceRetriableFileListFilter filter;
+
+    private NamedFile[] files;
+
+    private List<NamedFile> accepted;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+        store = batchStore ? new LatencyInjectingBatchMetadataStore(roundTripNanos)
+                : new LatencyInjectingMetadataStore(roundTripNanos);
+        filter = new NamedFilePersistentAcceptOnceRetriableFileListFilter(store, "bench-");
+        filter.setMaxAcceptedFileListLength(maxAcceptedFileListLength);
+
+        long now = Instant.now().getEpochSecond();
+        files = new NamedFile[listingSize];
+        for (int i = 0; i < listingSize; i++) {
+            files[i] = new NamedFile("file-" + i);
+            if (i % 3 == 1) {
+                store.getMetadata().put("bench-" + files[i].getName(), status(FileAcceptStatus.IN_PROGRESS, now));
+            } else if (i % 3 == 2) {
+                store.getMetadata().put("bench-" + files[i].getName(), status(FileAcceptStatus.DONE, now));
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void revertAccepted() {
+        if (accepted != null) {
+            for (NamedFile file : accepted) {
+                store.getMetadata().remove("bench-" + file.getName());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<NamedFile> filterFiles() {
+        accepted = filter.filterFiles(files);
+        return accepted;
+    }
+
+    private static String status(int status, long timestamp) {
+        FileAcceptStatus acceptStatus = new FileAcceptStatus();
+        acceptStatus.setStatus(status);
+        acceptStatus.setTries(1);
+        acceptStatus.setLastTryTimestamp(timestamp);
+        return StatusSerializer.toString(acceptStatus);
+    }
+}
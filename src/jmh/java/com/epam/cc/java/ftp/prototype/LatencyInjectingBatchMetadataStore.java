@@ -0,0 +1,57 @@
+package com.epam.cc.java.ftp.prototype;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link LatencyInjectingMetadataStore} with support of {@link BatchConcurrentMetadataStore}: every batch operation
+ * costs a single round trip.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class LatencyInjectingBatchMetadataStore extends LatencyInjectingMetadataStore
+        implements BatchConcurrentMetadataStore {
+
+    public LatencyInjectingBatchMetadataStore(long roundTripNanos) {
+        super(roundTripNanos);
+    }
+
+    @Override
+    public List<String> multiGet(List<String> keys) {
+        roundTrip();
+        List<String> values = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            values.add(metadata.get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, String> putAllIfAbsent(Map<String, String> entries) {
+        roundTrip();
+        Map<String, String> existing = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String oldValue = metadata.putIfAbsent(entry.getKey(), entry.getValue());
+            if (oldValue != null) {
+                existing.put(entry.getKey(), oldValue);
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public Set<String> replaceAll(Map<String, String> oldValues, Map<String, String> newValues) {
+        roundTrip();
+        Set<String> replaced = new HashSet<String>();
+        for (Map.Entry<String, String> entry : newValues.entrySet()) {
+            if (metadata.replace(entry.getKey(), oldValues.get(entry.getKey()), entry.getValue())) {
+                replaced.add(entry.getKey());
+            }
+        }
+        return replaced;
+    }
+}
@@ -0,0 +1,19 @@
+package com.epam.cc.java.ftp.prototype;
+
+/**
+ * File stub for benchmarks, filter needs only a name.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class NamedFile {
+
+    private final String name;
+
+    public NamedFile(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,21 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+
+/**
+ * Implementation for {link NamedFile} filter.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class NamedFilePersistentAcceptOnceRetriableFileListFilter
+        extends AbstractPersistentAcceptOnceRetriableFileListFilter<NamedFile> {
+
+    public NamedFilePersistentAcceptOnceRetriableFileListFilter(ConcurrentMetadataStore store, String prefix) {
+        super(store, prefix);
+    }
+
+    @Override
+    protected String fileName(NamedFile file) {
+        return file.getName();
+    }
+}
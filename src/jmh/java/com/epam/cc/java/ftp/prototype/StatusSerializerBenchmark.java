@@ -0,0 +1,65 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of {@link StatusSerializer}, including reading of legacy JSON values.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatusSerializerBenchmark {
+
+    private final FileAcceptStatus status = new FileAcceptStatus();
+
+    private final FileAcceptStatus target = new FileAcceptStatus();
+
+    private final String value = "0:2:1474020000";
+
+    private final String legacyValue = "{\"status\":0,\"tries\":2,\"lastTryTimestamp\":1474020000}";
+
+    {
+        status.setTries(2);
+        status.setLastTryTimestamp(1474020000L);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return StatusSerializer.toString(status);
+    }
+
+    @Benchmark
+    public FileAcceptStatus deserialize() {
+        return StatusSerializer.fromString(value);
+    }
+
+    @Benchmark
+    public FileAcceptStatus deserializeIntoTarget() {
+        return StatusSerializer.fromString(value, target);
+    }
+
+    @Benchmark
+    public FileAcceptStatus deserializeLegacy() {
+        return StatusSerializer.fromString(legacyValue);
+    }
+
+    @Benchmark
+    public FileAcceptStatus roundTrip() {
+        return StatusSerializer.fromString(StatusSerializer.toString(status), target);
+    }
+}
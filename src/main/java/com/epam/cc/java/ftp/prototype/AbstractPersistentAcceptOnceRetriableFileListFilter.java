@@ -1,5 +1,7 @@
 package com.epam.cc.java.ftp.prototype;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.integration.file.filters.FileListFilter;
 import org.springframework.integration.file.filters.ResettableFileListFilter;
 import org.springframework.integration.metadata.ConcurrentMetadataStore;
@@ -10,15 +12,47 @@ import java.io.Flushable;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * Base class for filter with comprehensive strategy: retry after timeout, limit number of accepted files and etc.
  * <p>
+ * Filter does not use any locks: consistency is provided by {@link ConcurrentMetadataStore#putIfAbsent} and
+ * {@link ConcurrentMetadataStore#replace}, so independent files are claimed and committed in parallel both by threads
+ * of one process and by different processes.
+ * <p>
+ * By default file in progress is retried when {@link #setRetryTimeoutSeconds(long) retryTimeout} elapses since
+ * the last try. With {@link #setLeaseSeconds(long) lease} enabled, each claim is owned by this node until lease
+ * expiry and the owner extends it with {@link #renewLeases()} while file is still processed, so short lease gives
+ * fast failover without retrying files that are just processed slowly.
+ * <p>
+ * With {@link AsyncConcurrentMetadataStore} files may be claimed and committed without blocking a thread per
+ * store request (see {@link #setAsyncStoreOperations(boolean)}), blocking methods then wait for the same
+ * asynchronous operations.
+ * <p>
  * Created by Maksym Bruner.
  */
 public abstract class AbstractPersistentAcceptOnceRetriableFileListFilter<F>
-        implements FileListFilter<F>, ResettableFileListFilter<F>, CommitableFilter<F>, Closeable {
+        implements FileListFilter<F>, ResettableFileListFilter<F>, AsyncCommitableFilter<F>,
+        TransferProgressTracker<F>, Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(AbstractPersistentAcceptOnceRetriableFileListFilter.class);
 
     protected final ConcurrentMetadataStore store;
 
@@ -28,132 +62,1544 @@ public abstract class AbstractPersistentAcceptOnceRetriableFileListFilter<F>
 
     protected volatile boolean flushOnUpdate;
 
-    protected int maxTry = 3;
+    protected int maxTry = 3;
+
+    private long retryTimeoutSeconds = 60L;
+
+    private int maxAcceptedFileListLength = -1;
+
+    private int batchSize = 500;
+
+    private final BatchConcurrentMetadataStore batchStore;
+
+    private final StatusTransitionMetadataStore transitionStore;
+
+    private volatile boolean serverSideTransitions;
+
+    private final AsyncConcurrentMetadataStore asyncStore;
+
+    private volatile boolean asyncStoreOperations;
+
+    private int maxInFlightClaims = 64;
+
+    private volatile FileProcessingMetrics metrics = FileProcessingMetrics.NONE;
+
+    private volatile FilterPollListener pollListener = FilterPollListener.NONE;
+
+    private volatile CapacitySource capacitySource;
+
+    private volatile Comparator<? super F> priorityComparator;
+
+    private volatile GroupCommitter<Commit> groupCommitter;
+
+    private int groupCommitBatchSize = 0;
+
+    private long groupCommitMaxDelayMillis = 10L;
+
+    private volatile TerminalStatusCache terminalCache;
+
+    private volatile ForkJoinPool claimPool;
+
+    private int parallelThreshold = 32;
+
+    private volatile ProcessedKeysBloomFilter processedKeys;
+
+    private volatile boolean processedKeysLoaded;
+
+    private String processedKeysStoreKey;
+
+    /**
+     * Set when processed keys filter has keys that were not persisted yet.
+     */
+    private final AtomicBoolean processedKeysDirty = new AtomicBoolean();
+
+    private String nodeId = UUID.randomUUID().toString();
+
+    private volatile long leaseSeconds = 0L;
+
+    /**
+     * Keys claimed by this node with a lease that was not committed or rolled back yet.
+     */
+    private final Set<String> leasedKeys = ConcurrentHashMap.newKeySet();
+
+    public AbstractPersistentAcceptOnceRetriableFileListFilter(ConcurrentMetadataStore store, String prefix) {
+        Assert.notNull(store, "'store' cannot be null");
+        Assert.notNull(prefix, "'prefix' cannot be null");
+        this.store = store;
+        this.prefix = prefix;
+        this.processedKeysStoreKey = "processedKeysBloomFilter-" + prefix;
+        if (store instanceof Flushable) {
+            this.flushableStore = (Flushable) store;
+        } else {
+            this.flushableStore = null;
+        }
+        if (store instanceof BatchConcurrentMetadataStore) {
+            this.batchStore = (BatchConcurrentMetadataStore) store;
+        } else {
+            this.batchStore = null;
+        }
+        if (store instanceof StatusTransitionMetadataStore) {
+            this.transitionStore = (StatusTransitionMetadataStore) store;
+        } else {
+            this.transitionStore = null;
+        }
+        if (store instanceof AsyncConcurrentMetadataStore) {
+            this.asyncStore = (AsyncConcurrentMetadataStore) store;
+        } else {
+            this.asyncStore = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<F> filterFiles(F[] files) {
+        return filterFiles(files, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The limit is applied together with {@link #setMaxAcceptedFileListLength(int) maxAcceptedFileListLength} and
+     * {@link #setCapacitySource(CapacitySource) capacity}.
+     */
+    @Override
+    public final List<F> filterFiles(F[] files, int maxAccepted) {
+        return filterFiles(files, null, maxAccepted);
+    }
+
+    /**
+     * Filter files of a poll in two groups: other files are filtered only if preferred files don't fill
+     * the limit, e.g. to take files of other cluster members when this node is idle. Other files are ignored
+     * when the limit is unbounded, otherwise preferred files would not differ from others. Poll is reported to
+     * {@link #setPollListener(FilterPollListener) listener} once for both groups.
+     *
+     * @param preferred   files filtered first.
+     * @param others      files filtered with the rest of the limit, may be {@code null}.
+     * @param maxAccepted max number of files to accept.
+     * @return accepted files, preferred files first.
+     */
+    public final List<F> filterFiles(F[] preferred, F[] others, int maxAccepted) {
+        Assert.isTrue(maxAccepted >= 0, "'maxAccepted' must not be negative");
+        int otherCandidates = others != null ? others.length : 0;
+        int candidates = (preferred != null ? preferred.length : 0) + otherCandidates;
+        int limit = Math.min(acceptLimit(), maxAccepted);
+        List<F> accepted = doFilterFiles(preferred, limit);
+        if (otherCandidates > 0 && limit != Integer.MAX_VALUE && accepted.size() < limit) {
+            accepted.addAll(doFilterFiles(others, limit - accepted.size()));
+        }
+        boolean limitReached = candidates > 0 && accepted.size() >= limit;
+        pollListener.filtered(prefix, candidates, accepted.size(), limitReached);
+        return accepted;
+    }
+
+    /**
+     * @return max number of files that may be accepted by current poll: {@link #setMaxAcceptedFileListLength(int)
+     * static limit} further limited by {@link #setCapacitySource(CapacitySource) capacity}.
+     */
+    private int acceptLimit() {
+        int limit = maxAcceptedFileListLength > 0 ? maxAcceptedFileListLength : Integer.MAX_VALUE;
+        CapacitySource capacity = this.capacitySource;
+        return capacity != null ? Math.max(0, Math.min(limit, capacity.availableCapacity())) : limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Without {@link #setAsyncStoreOperations(boolean) asynchronous store operations} files are filtered by
+     * the calling thread. With {@link #setPriorityComparator(Comparator) priority} files are claimed in rounds of
+     * best files as by blocking method, but files of a round are claimed concurrently, so a file of lower priority
+     * in the round may be accepted while a better file is in progress of other process.
+     */
+    @Override
+    public CompletableFuture<List<F>> filterFilesAsync(F[] files, int maxAccepted) {
+        if (!asyncStoreOperations || serverSideTransitions) {
+            return blocking(() -> filterFiles(files, maxAccepted));
+        }
+        Assert.isTrue(maxAccepted >= 0, "'maxAccepted' must not be negative");
+        int candidates = files != null ? files.length : 0;
+        int limit = Math.min(acceptLimit(), maxAccepted);
+
+        CompletableFuture<List<F>> accepted;
+        if (files == null || limit == 0) {
+            accepted = CompletableFuture.completedFuture(new ArrayList<F>());
+        } else {
+            if (processedKeys != null && !processedKeysLoaded) {
+                loadProcessedKeys();
+            }
+            Comparator<? super F> comparator = this.priorityComparator;
+            accepted = comparator != null && limit < files.length
+                    ? filterFilesByPriorityAsync(files, limit, comparator)
+                    : new AsyncClaimPipeline(files, limit).start();
+        }
+        return accepted.thenApply(result -> {
+            boolean limitReached = candidates > 0 && result.size() >= limit;
+            pollListener.filtered(prefix, candidates, result.size(), limitReached);
+            return result;
+        });
+    }
+
+    /**
+     * Non-blocking version of {@link #filterFilesByPriority(Object[], int, Comparator)}: next round is selected
+     * when claims of previous round are completed.
+     */
+    private CompletableFuture<List<F>> filterFilesByPriorityAsync(F[] files, int limit,
+                                                                 Comparator<? super F> comparator) {
+        F[] remaining = notKnownTerminal(files);
+        return claimRoundAsync(remaining, remaining.length, limit, limit, new ArrayList<F>(), comparator);
+    }
+
+    private CompletableFuture<List<F>> claimRoundAsync(F[] remaining, int count, int roundSize, int limit,
+                                                       List<F> accepted, Comparator<? super F> comparator) {
+        if (accepted.size() >= limit || count == 0) {
+            return CompletableFuture.completedFuture(accepted);
+        }
+        F[] round = takeBest(remaining, count, roundSize, comparator);
+        int left = count - round.length;
+        int nextRoundSize = roundSize < Integer.MAX_VALUE / 2 ? roundSize * 2 : Integer.MAX_VALUE;
+        return new AsyncClaimPipeline(round, limit - accepted.size()).start()
+                .thenCompose(roundAccepted -> {
+                    accepted.addAll(roundAccepted);
+                    return claimRoundAsync(remaining, left, nextRoundSize, limit, accepted, comparator);
+                });
+    }
+
+    private List<F> doFilterFiles(F[] files, int limit) {
+        if (files == null || limit == 0) {
+            // nothing can be processed now - leave files to other processes
+            return new ArrayList<F>();
+        }
+
+        if (processedKeys != null && !processedKeysLoaded) {
+            loadProcessedKeys();
+        }
+
+        Comparator<? super F> comparator = this.priorityComparator;
+        if (comparator != null && limit < files.length) {
+            return filterFilesByPriority(files, limit, comparator);
+        }
+        return claimFiles(files, limit);
+    }
+
+    /**
+     * Claim files in the given order until limit is reached.
+     */
+    private List<F> claimFiles(F[] files, int limit) {
+        if (serverSideTransitions) {
+            return filterFilesWithTransitions(files, limit);
+        }
+
+        if (asyncStoreOperations) {
+            return join(new AsyncClaimPipeline(files, limit).start());
+        }
+
+        if (claimPool != null) {
+            return filterFilesInParallel(files, limit);
+        }
+
+        if (batchStore != null) {
+            return filterFilesInBatches(files, limit);
+        }
+
+        List<F> accepted = new ArrayList<F>();
+        int acceptedCounter = 0;
+        for (F file : files) {
+            if (this.accept(file)) {
+                metrics.accepted(prefix);
+                accepted.add(file);
+                acceptedCounter++;
+                if (acceptedCounter == limit) {
+                    break;
+                }
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Claim files with the highest priority first: files that may still be accepted (not known to be terminal)
+     * are examined in rounds, each round selects best files and claims them in priority order. First round
+     * selects as many files as may be accepted, each next round twice more than previous one, so when most of
+     * best files are already processed or in progress the number of rounds stays logarithmic.
+     */
+    private List<F> filterFilesByPriority(F[] files, int limit, Comparator<? super F> comparator) {
+        F[] remaining = notKnownTerminal(files);
+        int count = remaining.length;
+
+        List<F> accepted = new ArrayList<F>();
+        int roundSize = limit;
+        while (accepted.size() < limit && count > 0) {
+            F[] round = takeBest(remaining, count, roundSize, comparator);
+            accepted.addAll(claimFiles(round, limit - accepted.size()));
+            count -= round.length;
+            roundSize = roundSize < Integer.MAX_VALUE / 2 ? roundSize * 2 : Integer.MAX_VALUE;
+        }
+        return accepted;
+    }
+
+    private F[] notKnownTerminal(F[] files) {
+        F[] remaining = Arrays.copyOf(files, files.length);
+        int count = 0;
+        for (F file : files) {
+            if (!isKnownTerminal(buildKey(file))) {
+                remaining[count++] = file;
+            }
+        }
+        return Arrays.copyOf(remaining, count);
+    }
+
+    /**
+     * Select best files of the first {@code count} remaining files in priority order and move the rest of
+     * remaining files to the beginning of the array.
+     *
+     * @return selected files.
+     */
+    private F[] takeBest(F[] remaining, int count, int size, Comparator<? super F> comparator) {
+        int[] selected = TopKSelector.select(remaining, count, size, comparator);
+        F[] round = Arrays.copyOf(remaining, selected.length);
+        for (int i = 0; i < selected.length; i++) {
+            round[i] = remaining[selected[i]];
+            remaining[selected[i]] = null;
+        }
+
+        int left = 0;
+        for (int i = 0; i < count; i++) {
+            if (remaining[i] != null) {
+                remaining[left++] = remaining[i];
+            }
+        }
+        return round;
+    }
+
+    protected boolean accept(F file) {
+        return claim(buildKey(file), Instant.now().getEpochSecond()) != null;
+    }
+
+    /**
+     * Try to claim the key for this process.
+     *
+     * @return description of successful claim or {@code null} if key was not claimed.
+     */
+    private Claim claim(String key, long currentTimestamp) {
+        if (isKnownTerminal(key)) {
+            return null;
+        }
+
+        if (mightBeProcessed(key)) {
+            // record most likely exists - read it instead of failing putIfAbsent
+            return acceptExisting(key, null, currentTimestamp);
+        }
+
+        String newValue = newStatusValue(currentTimestamp);
+        String oldValue = storePutIfAbsent(key, newValue); // try happy path
+        if (oldValue == null) {
+            claimed(key);
+            return new Claim(key, null, newValue);
+        }
+        return acceptExisting(key, null, currentTimestamp);
+    }
+
+    /**
+     * Return claimed key to the state it had before the claim.
+     */
+    private void release(Claim claim) {
+        leasedKeys.remove(claim.key);
+        if (claim.previousValue == null) {
+            // record was created by this claim, other processes could only skip it as in progress meanwhile
+            storeRemove(claim.key);
+        } else {
+            storeReplace(claim.key, claim.newValue, claim.previousValue);
+        }
+    }
+
+    /**
+     * Claim files of a single poll by tasks of {@link #claimPool}. All tasks share one acceptance budget,
+     * file claimed when budget is already exhausted is released back.
+     */
+    private List<F> filterFilesInParallel(F[] files, int limit) {
+        AtomicInteger budget = new AtomicInteger(limit);
+        boolean[] claimed = new boolean[files.length];
+
+        claimPool.invoke(new ParallelClaimTask(files, claimed, budget, 0, files.length));
+
+        List<F> accepted = new ArrayList<F>();
+        for (int i = 0; i < files.length; i++) {
+            if (claimed[i]) {
+                metrics.accepted(prefix);
+                accepted.add(files[i]);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Claim files of a single poll using {@link BatchConcurrentMetadataStore}: all keys of a chunk are read at once
+     * and new files are claimed at once, so number of round trips does not depend on number of files.
+     * Only files that may be retried fall back to per-file compare-and-set.
+     */
+    private List<F> filterFilesInBatches(F[] files, int limit) {
+        boolean[] claimed = new boolean[files.length];
+        int remaining = limit;
+
+        for (int from = 0; from < files.length && remaining > 0; from += batchSize) {
+            int to = Math.min(from + batchSize, files.length);
+
+            List<String> keys = new ArrayList<String>(to - from);
+            List<Integer> indexes = new ArrayList<Integer>(to - from);
+            for (int i = from; i < to; i++) {
+                String key = buildKey(files[i]);
+                if (!isKnownTerminal(key)) {
+                    keys.add(key);
+                    indexes.add(i);
+                }
+            }
+            if (keys.isEmpty()) {
+                continue;
+            }
+
+            List<String> values = multiGetPossiblyProcessed(keys);
+            long currentTimestamp = Instant.now().getEpochSecond();
+
+            // new files are claimed in groups not bigger than remaining limit to never claim more than allowed
+            Map<String, Integer> pending = new LinkedHashMap<String, Integer>();
+            for (int j = 0; j < keys.size() && remaining > 0; j++) {
+                String key = keys.get(j);
+                String value = values.get(j);
+                int i = indexes.get(j);
+
+                if (value == null) {
+                    pending.put(key, i);
+                } else if (acceptExisting(key, value, currentTimestamp) != null) {
+                    claimed[i] = true;
+                    remaining--;
+                }
+
+                if (!pending.isEmpty() && pending.size() >= remaining) {
+                    remaining -= claimPending(pending, claimed, currentTimestamp);
+                }
+            }
+            if (!pending.isEmpty() && remaining > 0) {
+                remaining -= claimPending(pending, claimed, currentTimestamp);
+            }
+        }
+
+        List<F> accepted = new ArrayList<F>();
+        for (int i = 0; i < files.length; i++) {
+            if (claimed[i]) {
+                metrics.accepted(prefix);
+                accepted.add(files[i]);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Claim files of a single poll using {@link StatusTransitionMetadataStore}: whole decision for every file of
+     * a chunk is made by the store in a single request, including the limit of accepted files.
+     */
+    private List<F> filterFilesWithTransitions(F[] files, int limit) {
+        StatusTransitionMetadataStore.ClaimPolicy policy =
+                new StatusTransitionMetadataStore.ClaimPolicy(retryTimeoutSeconds, maxTry, nodeId, leaseSeconds);
+        List<F> accepted = new ArrayList<F>();
+
+        for (int from = 0; from < files.length && accepted.size() < limit; from += batchSize) {
+            int to = Math.min(from + batchSize, files.length);
+
+            List<String> keys = new ArrayList<String>(to - from);
+            List<F> candidates = new ArrayList<F>(to - from);
+            for (int i = from; i < to; i++) {
+                String key = buildKey(files[i]);
+                if (!isKnownTerminal(key)) {
+                    keys.add(key);
+                    candidates.add(files[i]);
+                }
+            }
+            if (keys.isEmpty()) {
+                continue;
+            }
+
+            List<StatusTransitionMetadataStore.Transition> transitions =
+                    storeClaimAll(keys, policy, limit - accepted.size());
+            for (int j = 0; j < keys.size(); j++) {
+                String key = keys.get(j);
+                switch (transitions.get(j)) {
+                    case RETRIED:
+                        metrics.retried(prefix);
+                        // fall through
+                    case CLAIMED:
+                        claimed(key);
+                        metrics.accepted(prefix);
+                        accepted.add(candidates.get(j));
+                        break;
+                    case REJECTED:
+                        metrics.rejected(prefix);
+                        markTerminal(key);
+                        break;
+                    case TERMINAL:
+                        markTerminal(key);
+                        break;
+                    case IN_PROGRESS:
+                        metrics.skippedInProgress(prefix);
+                        break;
+                    default:
+                        // unknown value or limit reached - file is not touched
+                        break;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Read only keys which may exist according to processed keys filter, definitely new keys are treated as absent.
+     */
+    private List<String> multiGetPossiblyProcessed(List<String> keys) {
+        ProcessedKeysBloomFilter bloomFilter = this.processedKeys;
+        if (bloomFilter == null) {
+            return storeMultiGet(keys);
+        }
+
+        List<String> values = new ArrayList<String>(Collections.<String>nCopies(keys.size(), null));
+        List<String> verifyKeys = new ArrayList<String>();
+        List<Integer> positions = new ArrayList<Integer>();
+        for (int j = 0; j < keys.size(); j++) {
+            if (bloomFilter.mightContain(keys.get(j))) {
+                verifyKeys.add(keys.get(j));
+                positions.add(j);
+            }
+        }
+        if (!verifyKeys.isEmpty()) {
+            List<String> found = storeMultiGet(verifyKeys);
+            for (int n = 0; n < positions.size(); n++) {
+                values.set(positions.get(n), found.get(n));
+            }
+        }
+        return values;
+    }
+
+    private int claimPending(Map<String, Integer> pending, boolean[] claimed, long currentTimestamp) {
+        String newValue = newStatusValue(currentTimestamp);
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        for (String key : pending.keySet()) {
+            entries.put(key, newValue);
+        }
+
+        Map<String, String> existing = storePutAllIfAbsent(entries);
+
+        int claimedCounter = 0;
+        for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+            String oldValue = existing.get(entry.getKey());
+            // concurrent process created record after our read - it still may be retried
+            if (oldValue == null) {
+                claimed(entry.getKey());
+            }
+            if (oldValue == null || acceptExisting(entry.getKey(), oldValue, currentTimestamp) != null) {
+                claimed[entry.getValue()] = true;
+                claimedCounter++;
+            }
+        }
+        pending.clear();
+        return claimedCounter;
+    }
+
+    /**
+     * Try to accept file which record already exists in metadata store (retry after timeout).
+     *
+     * @param key              key of the file.
+     * @param knownValue       value that was already read from store or {@code null} to read it.
+     * @param currentTimestamp current timestamp.
+     * @return description of claim if file was accepted for one more try, otherwise {@code null}.
+     */
+    private Claim acceptExisting(String key, String knownValue, long currentTimestamp) {
+        String oldValue = knownValue;
+
+        while (true) {
+            if (oldValue == null) {
+                oldValue = storeGet(key);
+                if (oldValue == null) {
+                    // record was removed concurrently - start from scratch
+                    String newValue = newStatusValue(currentTimestamp);
+                    if (storePutIfAbsent(key, newValue) == null) {
+                        claimed(key);
+                        return new Claim(key, null, newValue);
+                    }
+                    continue;
+                }
+            }
+            FileAcceptStatus status = nextTry(key, oldValue, currentTimestamp);
+            if (status == null) {
+                return null;
+            }
+
+            String newValue = StatusSerializer.toString(status);
+            if (storeReplace(key, oldValue, newValue)) {
+                return nextTryReplaced(key, oldValue, status, newValue);
+            }
+            metrics.casRetry(prefix);
+            oldValue = null;
+        }
+    }
+
+    /**
+     * Decide on claim of existing record.
+     *
+     * @return status of the next try or rejected status if there are no tries left, {@code null} if record must not
+     * be changed.
+     */
+    private FileAcceptStatus nextTry(String key, String oldValue, long currentTimestamp) {
+        FileAcceptStatus status = new FileAcceptStatus();
+        if (StatusSerializer.fromString(oldValue, status) == null) {
+            // unknown value - never touch it
+            return null;
+        }
+
+        if (status.getStatus() != FileAcceptStatus.IN_PROGRESS) {
+            markTerminal(key);
+            return null;
+        } else if (!isExpired(status, currentTimestamp)) {
+            metrics.skippedInProgress(prefix);
+            return null;
+        }
+
+        if (status.getTries() >= maxTry) {
+            status.setStatus(FileAcceptStatus.REJECTED);
+            status.setOwner(null);
+            status.setLeaseExpiry(0L);
+        } else {
+            status.setLastTryTimestamp(currentTimestamp);
+            status.setTries(status.getTries() + 1);
+            applyLease(status, currentTimestamp);
+        }
+        return status;
+    }
+
+    /**
+     * Account record replaced with status decided by {@link #nextTry(String, String, long)}.
+     *
+     * @return description of claim if file was accepted for one more try, otherwise {@code null}.
+     */
+    private Claim nextTryReplaced(String key, String oldValue, FileAcceptStatus status, String newValue) {
+        if (status.getStatus() != FileAcceptStatus.IN_PROGRESS) {
+            metrics.rejected(prefix);
+            markTerminal(key);
+            return null;
+        }
+        metrics.retried(prefix);
+        claimed(key);
+        return new Claim(key, oldValue, newValue);
+    }
+
+    /**
+     * Non-blocking version of {@link #claim(String, long)}. Value returned by failed putIfAbsent is used as is,
+     * so existing record costs no extra read.
+     */
+    private CompletableFuture<Claim> claimAsync(String key, long currentTimestamp) {
+        if (isKnownTerminal(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (mightBeProcessed(key)) {
+            return acceptExistingAsync(key, null, currentTimestamp);
+        }
+
+        return createAsync(key, currentTimestamp);
+    }
+
+    private CompletableFuture<Claim> createAsync(String key, long currentTimestamp) {
+        String newValue = newStatusValue(currentTimestamp);
+        return storePutIfAbsentAsync(key, newValue).thenCompose(oldValue -> {
+            if (oldValue == null) {
+                claimed(key);
+                return CompletableFuture.completedFuture(new Claim(key, null, newValue));
+            }
+            return acceptExistingAsync(key, oldValue, currentTimestamp);
+        });
+    }
+
+    /**
+     * Non-blocking version of {@link #acceptExisting(String, String, long)}.
+     */
+    private CompletableFuture<Claim> acceptExistingAsync(String key, String knownValue, long currentTimestamp) {
+        if (knownValue == null) {
+            return storeGetAsync(key).thenCompose(oldValue -> oldValue != null
+                    ? acceptExistingAsync(key, oldValue, currentTimestamp)
+                    // record was removed concurrently - start from scratch
+                    : createAsync(key, currentTimestamp));
+        }
+
+        FileAcceptStatus status = nextTry(key, knownValue, currentTimestamp);
+        if (status == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String newValue = StatusSerializer.toString(status);
+        return storeReplaceAsync(key, knownValue, newValue).thenCompose(replaced -> {
+            if (replaced) {
+                return CompletableFuture.completedFuture(nextTryReplaced(key, knownValue, status, newValue));
+            }
+            metrics.casRetry(prefix);
+            return acceptExistingAsync(key, null, currentTimestamp);
+        });
+    }
+
+    /**
+     * Non-blocking version of {@link #release(Claim)}.
+     */
+    private CompletableFuture<Void> releaseAsync(Claim claim) {
+        leasedKeys.remove(claim.key);
+        if (claim.previousValue == null) {
+            return storeRemoveAsync(claim.key).thenApply(removed -> null);
+        }
+        return storeReplaceAsync(claim.key, claim.newValue, claim.previousValue).thenApply(replaced -> null);
+    }
+
+    /**
+     * Lease has priority over retry timeout, records without lease (e.g. written before lease was enabled)
+     * still use retry timeout.
+     */
+    private boolean isExpired(FileAcceptStatus status, long currentTimestamp) {
+        if (status.getLeaseExpiry() > 0) {
+            return currentTimestamp >= status.getLeaseExpiry();
+        }
+        return currentTimestamp - status.getLastTryTimestamp() >= retryTimeoutSeconds;
+    }
+
+    private void applyLease(FileAcceptStatus status, long currentTimestamp) {
+        if (leaseSeconds > 0) {
+            status.setOwner(nodeId);
+            status.setLeaseExpiry(currentTimestamp + leaseSeconds);
+        } else {
+            status.setOwner(null);
+            status.setLeaseExpiry(0L);
+        }
+    }
+
+    private void claimed(String key) {
+        if (leaseSeconds > 0) {
+            leasedKeys.add(key);
+        }
+    }
+
+    private boolean isLeasedByThisNode(FileAcceptStatus status) {
+        return status.getStatus() == FileAcceptStatus.IN_PROGRESS && status.getLeaseExpiry() > 0
+                && nodeId.equals(status.getOwner());
+    }
+
+    private String storeGet(String key) {
+        long start = System.nanoTime();
+        try {
+            return store.get(key);
+        } finally {
+            metrics.storeOperation(prefix, "get", System.nanoTime() - start);
+        }
+    }
+
+    private String storePutIfAbsent(String key, String value) {
+        long start = System.nanoTime();
+        try {
+            return store.putIfAbsent(key, value);
+        } finally {
+            metrics.storeOperation(prefix, "putIfAbsent", System.nanoTime() - start);
+        }
+    }
+
+    private boolean storeReplace(String key, String oldValue, String newValue) {
+        long start = System.nanoTime();
+        try {
+            return store.replace(key, oldValue, newValue);
+        } finally {
+            metrics.storeOperation(prefix, "replace", System.nanoTime() - start);
+        }
+    }
+
+    private String storeRemove(String key) {
+        long start = System.nanoTime();
+        try {
+            return store.remove(key);
+        } finally {
+            metrics.storeOperation(prefix, "remove", System.nanoTime() - start);
+        }
+    }
+
+    private CompletableFuture<String> storeGetAsync(String key) {
+        long start = System.nanoTime();
+        return asyncStore.getAsync(key).whenComplete((value, e) ->
+                metrics.storeOperation(prefix, "getAsync", System.nanoTime() - start));
+    }
+
+    private CompletableFuture<String> storePutIfAbsentAsync(String key, String value) {
+        long start = System.nanoTime();
+        return asyncStore.putIfAbsentAsync(key, value).whenComplete((oldValue, e) ->
+                metrics.storeOperation(prefix, "putIfAbsentAsync", System.nanoTime() - start));
+    }
+
+    private CompletableFuture<Boolean> storeReplaceAsync(String key, String oldValue, String newValue) {
+        long start = System.nanoTime();
+        return asyncStore.replaceAsync(key, oldValue, newValue).whenComplete((replaced, e) ->
+                metrics.storeOperation(prefix, "replaceAsync", System.nanoTime() - start));
+    }
+
+    private CompletableFuture<String> storeRemoveAsync(String key) {
+        long start = System.nanoTime();
+        return asyncStore.removeAsync(key).whenComplete((removed, e) ->
+                metrics.storeOperation(prefix, "removeAsync", System.nanoTime() - start));
+    }
+
+    private List<String> storeMultiGet(List<String> keys) {
+        long start = System.nanoTime();
+        try {
+            return batchStore.multiGet(keys);
+        } finally {
+            metrics.storeOperation(prefix, "multiGet", System.nanoTime() - start);
+        }
+    }
+
+    private Map<String, String> storePutAllIfAbsent(Map<String, String> entries) {
+        long start = System.nanoTime();
+        try {
+            return batchStore.putAllIfAbsent(entries);
+        } finally {
+            metrics.storeOperation(prefix, "putAllIfAbsent", System.nanoTime() - start);
+        }
+    }
+
+    private Set<String> storeReplaceAll(Map<String, String> oldValues, Map<String, String> newValues) {
+        long start = System.nanoTime();
+        try {
+            return batchStore.replaceAll(oldValues, newValues);
+        } finally {
+            metrics.storeOperation(prefix, "replaceAll", System.nanoTime() - start);
+        }
+    }
+
+    private List<StatusTransitionMetadataStore.Transition> storeClaimAll(List<String> keys,
+            StatusTransitionMetadataStore.ClaimPolicy policy, int limit) {
+        long start = System.nanoTime();
+        try {
+            return transitionStore.claimAll(keys, Instant.now().getEpochSecond(), policy, limit);
+        } finally {
+            metrics.storeOperation(prefix, "claimAll", System.nanoTime() - start);
+        }
+    }
+
+    private List<StatusTransitionMetadataStore.Transition> storeCommitAll(List<String> keys, long[] contentSizes,
+                                                                          String[] contentDigests) {
+        long start = System.nanoTime();
+        try {
+            return transitionStore.commitAll(keys, contentSizes, contentDigests);
+        } finally {
+            metrics.storeOperation(prefix, "commitAll", System.nanoTime() - start);
+        }
+    }
+
+    private boolean isKnownTerminal(String key) {
+        TerminalStatusCache cache = this.terminalCache;
+        return cache != null && cache.contains(key);
+    }
+
+    private void markTerminal(String key) {
+        TerminalStatusCache cache = this.terminalCache;
+        if (cache != null) {
+            cache.put(key);
+        }
+        ProcessedKeysBloomFilter bloomFilter = this.processedKeys;
+        if (bloomFilter != null && !bloomFilter.mightContain(key)) {
+            bloomFilter.put(key);
+            if (!processedKeysDirty.get()) {
+                processedKeysDirty.set(true);
+            }
+        }
+    }
+
+    private boolean mightBeProcessed(String key) {
+        ProcessedKeysBloomFilter bloomFilter = this.processedKeys;
+        return bloomFilter != null && bloomFilter.mightContain(key);
+    }
+
+    private void loadProcessedKeys() {
+        ProcessedKeysBloomFilter bloomFilter = this.processedKeys;
+        ProcessedKeysBloomFilter stored = ProcessedKeysBloomFilter.fromString(store.get(processedKeysStoreKey));
+        if (stored != null) {
+            bloomFilter.merge(stored);
+        }
+        processedKeysLoaded = true;
+    }
+
+    /**
+     * Save processed keys filter to metadata store if it has new keys, merging it with filter saved by other
+     * processes. Filter is a large value written with compare-and-set, so it is never saved by claim or commit
+     * threads: call this method periodically (e.g. from a scheduled task), it is also called on close.
+     */
+    public void persistProcessedKeys() {
+        ProcessedKeysBloomFilter bloomFilter = this.processedKeys;
+        if (bloomFilter == null || !processedKeysDirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            saveProcessedKeys(bloomFilter);
+        } catch (RuntimeException e) {
+            processedKeysDirty.set(true);
+            throw e;
+        }
+        flushIfNeeded();
+    }
+
+    private void saveProcessedKeys(ProcessedKeysBloomFilter bloomFilter) {
+        while (true) {
+            String oldValue = store.get(processedKeysStoreKey);
+            if (oldValue == null) {
+                if (store.putIfAbsent(processedKeysStoreKey, bloomFilter.toString()) == null) {
+                    break;
+                }
+                continue;
+            }
+            ProcessedKeysBloomFilter stored = ProcessedKeysBloomFilter.fromString(oldValue);
+            if (stored != null) {
+                bloomFilter.merge(stored);
+            }
+            if (store.replace(processedKeysStoreKey, oldValue, bloomFilter.toString())) {
+                break;
+            }
+        }
+    }
+
+    private String newStatusValue(long currentTimestamp) {
+        FileAcceptStatus status = new FileAcceptStatus();
+        status.setLastTryTimestamp(currentTimestamp);
+        status.setTries(1);
+        applyLease(status, currentTimestamp);
+        return StatusSerializer.toString(status);
+    }
+
+    /**
+     * Description of successful claim, enough to release it.
+     */
+    private static final class Claim {
+
+        private final String key;
+
+        private final String previousValue;
+
+        private final String newValue;
+
+        private Claim(String key, String previousValue, String newValue) {
+            this.key = key;
+            this.previousValue = previousValue;
+            this.newValue = newValue;
+        }
+    }
+
+    /**
+     * Splits range of files until it is not bigger than {@link #parallelThreshold} and claims files of the range
+     * while shared budget is not exhausted.
+     */
+    private final class ParallelClaimTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final F[] files;
+
+        private final boolean[] claimed;
+
+        private final AtomicInteger budget;
+
+        private final int from;
+
+        private final int to;
+
+        private ParallelClaimTask(F[] files, boolean[] claimed, AtomicInteger budget, int from, int to) {
+            this.files = files;
+            this.claimed = claimed;
+            this.budget = budget;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (budget.get() <= 0) {
+                return;
+            }
+            if (to - from > parallelThreshold) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParallelClaimTask(files, claimed, budget, from, middle),
+                        new ParallelClaimTask(files, claimed, budget, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to && budget.get() > 0; i++) {
+                Claim claim = claim(buildKey(files[i]), Instant.now().getEpochSecond());
+                if (claim != null) {
+                    if (budget.getAndDecrement() > 0) {
+                        claimed[i] = true;
+                    } else {
+                        // another task took the last slot while we were claiming
+                        release(claim);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims files of a single poll with {@link AsyncConcurrentMetadataStore}: up to {@link #maxInFlightClaims}
+     * claims are in flight and each completed claim starts claim of the next file, so the pipeline does not hold
+     * any thread while waiting for the store. All claims share one acceptance budget, file claimed when budget is
+     * already exhausted is released back.
+     */
+    private final class AsyncClaimPipeline {
+
+        private final F[] files;
+
+        private final boolean[] claimed;
+
+        private final AtomicInteger budget;
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        /**
+         * Number of requests to start claims, only the thread that raised it from 0 starts claims, so claims
+         * completed immediately do not recurse.
+         */
+        private final AtomicInteger drainRequests = new AtomicInteger();
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        private final CompletableFuture<List<F>> result = new CompletableFuture<List<F>>();
+
+        /**
+         * Index of the next file to claim, guarded by {@link #drainRequests}.
+         */
+        private int next;
+
+        private boolean finished;
+
+        private AsyncClaimPipeline(F[] files, int limit) {
+            this.files = files;
+            this.claimed = new boolean[files.length];
+            this.budget = new AtomicInteger(limit);
+        }
+
+        private CompletableFuture<List<F>> start() {
+            drain();
+            return result;
+        }
+
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (running.get() < maxInFlightClaims && failure.get() == null && budget.get() > 0
+                        && next < files.length) {
+                    claim(next++);
+                }
+                if (running.get() == 0 && !finished) {
+                    // nothing in flight and nothing to start
+                    finished = true;
+                    finish();
+                }
+            } while (drainRequests.decrementAndGet() != 0);
+        }
+
+        private void claim(int index) {
+            running.incrementAndGet();
+            CompletableFuture<Claim> claimFuture;
+            try {
+                claimFuture = claimAsync(buildKey(files[index]), Instant.now().getEpochSecond());
+            } catch (RuntimeException e) {
+                // store failed before returning future - complete the claim as failed one
+                claimFuture = new CompletableFuture<Claim>();
+                claimFuture.completeExceptionally(e);
+            }
+            claimFuture
+                    .thenCompose(claim -> {
+                        if (claim == null) {
+                            return CompletableFuture.completedFuture(false);
+                        }
+                        if (budget.getAndDecrement() > 0) {
+                            return CompletableFuture.completedFuture(true);
+                        }
+                        // another claim took the last slot while we were claiming
+                        return releaseAsync(claim).thenApply(released -> false);
+                    })
+                    .whenComplete((accepted, e) -> {
+                        if (e != null) {
+                            failure.compareAndSet(null, e);
+                        } else if (accepted) {
+                            claimed[index] = true;
+                        }
+                        running.decrementAndGet();
+                        drain();
+                    });
+        }
+
+        private void finish() {
+            Throwable e = failure.get();
+            if (e != null) {
+                // files claimed so far are retried after timeout, as after failure of blocking claim
+                result.completeExceptionally(e);
+                return;
+            }
+            List<F> accepted = new ArrayList<F>();
+            for (int i = 0; i < files.length; i++) {
+                if (claimed[i]) {
+                    metrics.accepted(prefix);
+                    accepted.add(files[i]);
+                }
+            }
+            result.complete(accepted);
+        }
+    }
+
+    /**
+     * Complete future by blocking operation, so callers of asynchronous methods receive failure by the future.
+     */
+    private static <T> CompletableFuture<T> blocking(Supplier<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            future.complete(operation.get());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Wait for asynchronous operation in blocking method, failure of the store is thrown as is.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        persistProcessedKeys();
+        if (this.store instanceof Closeable) {
+            ((Closeable) this.store).close();
+        }
+    }
 
-    private long retryTimeoutSeconds = 60L;
+    @Override
+    public boolean remove(F f) {
+        String key = buildKey(f);
+        TerminalStatusCache cache = this.terminalCache;
+        if (cache != null) {
+            cache.remove(key);
+        }
+        String removed = storeRemove(key);
+        flushIfNeeded();
+        return removed != null;
+    }
 
-    private int maxAcceptedFileListLength = -1;
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With {@link #setGroupCommitBatchSize(int) group commit} the call returns when the batch containing the file
+     * is written to metadata store.
+     */
+    @Override
+    public void commit(F file) {
+        commit(new Commit(buildKey(file), 0L, null));
+    }
 
-    private final Object monitor = new Object();
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Size and digest are saved in {@link FileAcceptStatus} of the file.
+     */
+    @Override
+    public void commit(F file, long contentSize, String contentDigest) {
+        Assert.isTrue(contentDigest == null || contentDigest.indexOf(':') < 0, "'contentDigest' must not contain ':'");
+        commit(new Commit(buildKey(file), contentSize, contentDigest));
+    }
 
-    public AbstractPersistentAcceptOnceRetriableFileListFilter(ConcurrentMetadataStore store, String prefix) {
-        Assert.notNull(store, "'store' cannot be null");
-        Assert.notNull(prefix, "'prefix' cannot be null");
-        this.store = store;
-        this.prefix = prefix;
-        if (store instanceof Flushable) {
-            this.flushableStore = (Flushable) store;
+    private void commit(Commit commit) {
+        leasedKeys.remove(commit.key);
+        GroupCommitter<Commit> committer = this.groupCommitter;
+        if (committer != null) {
+            committer.commit(commit);
+        } else if (serverSideTransitions) {
+            commitWithTransitions(Collections.singletonList(commit));
+        } else if (asyncStoreOperations) {
+            join(commitOneAsync(commit));
         } else {
-            this.flushableStore = null;
+            commitOne(commit);
         }
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Without {@link #setAsyncStoreOperations(boolean) asynchronous store operations} or with group commit or
+     * server-side transitions the file is committed by the calling thread.
      */
     @Override
-    public final List<F> filterFiles(F[] files) {
-        List<F> accepted = new ArrayList<F>();
-        if (files == null) {
-            return accepted;
+    public CompletableFuture<Void> commitAsync(F file, long contentSize, String contentDigest) {
+        if (!asyncStoreOperations || serverSideTransitions || groupCommitter != null) {
+            return blocking(() -> {
+                commit(file, contentSize, contentDigest);
+                return null;
+            });
         }
+        Assert.isTrue(contentDigest == null || contentDigest.indexOf(':') < 0, "'contentDigest' must not contain ':'");
+        Commit commit = new Commit(buildKey(file), contentSize, contentDigest);
+        leasedKeys.remove(commit.key);
+        return commitOneAsync(commit);
+    }
 
-        int acceptedCounter = 0;
-        for (F file : files) {
-            if (this.accept(file)) {
-                accepted.add(file);
-                acceptedCounter++;
-                if (maxAcceptedFileListLength > 0 && acceptedCounter == maxAcceptedFileListLength) {
-                    // limit number of accepted files if configured (maxAcceptedFileListLength greater than 0)
-                    break;
+    private void commitOne(Commit commit) {
+        String key = commit.key;
+        while (true) {
+            String oldValue = storeGet(key);
+            FileAcceptStatus status = new FileAcceptStatus();
+
+            if (oldValue == null) {
+                // very strange situation when file was processed without creating record in metadata store
+                if (storePutIfAbsent(key, doneValue(status, commit)) == null) {
+                    metrics.committed(prefix);
+                    markTerminal(key);
+                    return;
                 }
+                metrics.casRetry(prefix);
+                continue;
+            }
+
+            if (StatusSerializer.fromString(oldValue, status) == null) {
+                skipUnknownCommit(key, oldValue);
+                return;
             }
+            if (status.getStatus() == FileAcceptStatus.DONE) {
+                /*
+                 * another process finished processing before our process - this should be reported
+                 * with high severity and timeout value must be increased
+                 */
+                metrics.commitFoundDone(prefix);
+                markTerminal(key);
+                return;
+            }
+
+            if (storeReplace(key, oldValue, doneValue(status, commit))) {
+                metrics.committed(prefix);
+                markTerminal(key);
+                return;
+            }
+            metrics.casRetry(prefix);
         }
+    }
 
-        return accepted;
+    /**
+     * Non-blocking version of {@link #commitOne(Commit)}.
+     */
+    private CompletableFuture<Void> commitOneAsync(Commit commit) {
+        String key = commit.key;
+        return storeGetAsync(key).thenCompose(oldValue -> {
+            FileAcceptStatus status = new FileAcceptStatus();
+
+            if (oldValue == null) {
+                return storePutIfAbsentAsync(key, doneValue(status, commit)).thenCompose(existing -> {
+                    if (existing == null) {
+                        metrics.committed(prefix);
+                        markTerminal(key);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    metrics.casRetry(prefix);
+                    return commitOneAsync(commit);
+                });
+            }
+
+            if (StatusSerializer.fromString(oldValue, status) == null) {
+                skipUnknownCommit(key, oldValue);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            if (status.getStatus() == FileAcceptStatus.DONE) {
+                metrics.commitFoundDone(prefix);
+                markTerminal(key);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            return storeReplaceAsync(key, oldValue, doneValue(status, commit)).thenCompose(replaced -> {
+                if (replaced) {
+                    metrics.committed(prefix);
+                    markTerminal(key);
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+                metrics.casRetry(prefix);
+                return commitOneAsync(commit);
+            });
+        });
     }
 
-    protected boolean accept(F file) {
-        String key = buildKey(file);
-        synchronized (monitor) {
-            long currentTimestamp = Instant.now().getEpochSecond();
+    /**
+     * Value of the key can't be parsed, e.g. written by newer version - never touch it, as claim does.
+     */
+    private void skipUnknownCommit(String key, String value) {
+        logger.warn("Commit of '{}' is skipped: unknown status value '{}'", key, value);
+    }
 
-            FileAcceptStatus status = new FileAcceptStatus();
-            status.setLastTryTimestamp(currentTimestamp);
-            status.setTries(1);
+    /**
+     * Commit a batch of {@link GroupCommitter}: statuses of all keys are read and replaced with single request
+     * each if store supports batch operations. Store is flushed once per batch.
+     */
+    private void commitAll(List<Commit> commits) {
+        if (serverSideTransitions) {
+            commitWithTransitions(commits);
+            flushIfNeeded();
+            return;
+        }
+        if (batchStore == null) {
+            for (Commit commit : commits) {
+                commitOne(commit);
+            }
+            flushIfNeeded();
+            return;
+        }
 
-            String newValue = StatusSerializer.toString(status);
-            String oldValue = store.putIfAbsent(key, newValue); // try happy path
+        Map<String, Commit> remaining = new LinkedHashMap<String, Commit>();
+        for (Commit commit : commits) {
+            remaining.put(commit.key, commit);
+        }
+        while (!remaining.isEmpty()) {
+            List<String> keys = new ArrayList<String>(remaining.keySet());
+            List<String> values = storeMultiGet(keys);
 
-            if (oldValue != null) {
-                do {
-                    oldValue = store.get(key);
-                    status = StatusSerializer.fromString(oldValue);
+            Map<String, String> absent = new LinkedHashMap<String, String>();
+            Map<String, String> oldValues = new LinkedHashMap<String, String>();
+            Map<String, String> newValues = new LinkedHashMap<String, String>();
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                String oldValue = values.get(i);
+                if (oldValue == null) {
+                    // file was processed without creating record in metadata store
+                    absent.put(key, doneValue(new FileAcceptStatus(), remaining.get(key)));
+                    continue;
+                }
+                FileAcceptStatus status = StatusSerializer.fromString(oldValue, new FileAcceptStatus());
+                if (status == null) {
+                    skipUnknownCommit(key, oldValue);
+                    continue;
+                }
+                if (status.getStatus() == FileAcceptStatus.DONE) {
+                    metrics.commitFoundDone(prefix);
+                    markTerminal(key);
+                    continue;
+                }
+                oldValues.put(key, oldValue);
+                newValues.put(key, doneValue(status, remaining.get(key)));
+            }
 
-                    if (status.getStatus() == FileAcceptStatus.DONE) {
-                        return false;
-                    } else if ((currentTimestamp - status.getLastTryTimestamp()) < retryTimeoutSeconds) {
-                        return false;
-                    }
+            Map<String, Commit> retry = new LinkedHashMap<String, Commit>();
+            if (!absent.isEmpty()) {
+                Map<String, String> existing = storePutAllIfAbsent(absent);
+                for (String key : absent.keySet()) {
+                    committedOrRetry(remaining.get(key), !existing.containsKey(key), retry);
+                }
+            }
+            if (!newValues.isEmpty()) {
+                Set<String> replaced = storeReplaceAll(oldValues, newValues);
+                for (String key : newValues.keySet()) {
+                    committedOrRetry(remaining.get(key), replaced.contains(key), retry);
+                }
+            }
+            remaining = retry;
+        }
+        flushIfNeeded();
+    }
 
-                    if (status.getTries() >= maxTry) {
-                        status.setStatus(FileAcceptStatus.REJECTED);
-                    } else {
-                        status.setLastTryTimestamp(currentTimestamp);
-                        status.setTries(status.getTries() + 1);
-                    }
+    /**
+     * Commit using {@link StatusTransitionMetadataStore}, single request for all commits without retries.
+     */
+    private void commitWithTransitions(List<Commit> commits) {
+        List<String> keys = new ArrayList<String>(commits.size());
+        long[] contentSizes = new long[commits.size()];
+        String[] contentDigests = new String[commits.size()];
+        for (int i = 0; i < commits.size(); i++) {
+            Commit commit = commits.get(i);
+            keys.add(commit.key);
+            contentSizes[i] = commit.contentSize;
+            contentDigests[i] = commit.contentDigest;
+        }
 
-                    newValue = StatusSerializer.toString(status);
-                } while (!store.replace(key, oldValue, newValue));
+        List<StatusTransitionMetadataStore.Transition> transitions =
+                storeCommitAll(keys, contentSizes, contentDigests);
+        for (int i = 0; i < keys.size(); i++) {
+            if (transitions.get(i) == StatusTransitionMetadataStore.Transition.ALREADY_DONE) {
+                metrics.commitFoundDone(prefix);
+            } else {
+                metrics.committed(prefix);
             }
+            markTerminal(keys.get(i));
+        }
+    }
+
+    private void committedOrRetry(Commit commit, boolean committed, Map<String, Commit> retry) {
+        if (committed) {
+            metrics.committed(prefix);
+            markTerminal(commit.key);
+        } else {
+            metrics.casRetry(prefix);
+            retry.put(commit.key, commit);
+        }
+    }
+
+    private static String doneValue(FileAcceptStatus status, Commit commit) {
+        status.setStatus(FileAcceptStatus.DONE);
+        status.setOwner(null);
+        status.setLeaseExpiry(0L);
+        status.setTransferredBytes(0L);
+        status.setTransferChecksum(0L);
+        if (commit.contentDigest != null) {
+            status.setContentSize(commit.contentSize);
+            status.setContentDigest(commit.contentDigest);
+        }
+        return StatusSerializer.toString(status);
+    }
+
+    /**
+     * Commit of a file with optional details of its content.
+     */
+    private static final class Commit {
 
-            return status.getStatus() == FileAcceptStatus.IN_PROGRESS;
+        private final String key;
+
+        private final long contentSize;
+
+        private final String contentDigest;
+
+        private Commit(String key, long contentSize, String contentDigest) {
+            this.key = key;
+            this.contentSize = contentSize;
+            this.contentDigest = contentDigest;
         }
     }
 
+    /**
+     * Make file in progress available for the next try immediately, without waiting for lease expiry or
+     * retry timeout. Number of tries is kept, so {@link #setMaxTry(int) maxTry} still applies. File that is
+     * already done or owned by another node is not changed.
+     *
+     * @param file file which processing failed.
+     */
     @Override
-    public void close() throws IOException {
-        if (this.store instanceof Closeable) {
-            ((Closeable) this.store).close();
+    public void rollback(F file) {
+        String key = buildKey(file);
+        leasedKeys.remove(key);
+        FileAcceptStatus status = new FileAcceptStatus();
+        while (true) {
+            String oldValue = storeGet(key);
+            if (oldValue == null || StatusSerializer.fromString(oldValue, status) == null
+                    || status.getStatus() != FileAcceptStatus.IN_PROGRESS
+                    || (status.getOwner() != null && !nodeId.equals(status.getOwner()))) {
+                return;
+            }
+
+            status.setLastTryTimestamp(0L);
+            status.setOwner(null);
+            status.setLeaseExpiry(0L);
+            if (storeReplace(key, oldValue, StatusSerializer.toString(status))) {
+                flushIfNeeded();
+                return;
+            }
+            metrics.casRetry(prefix);
+        }
+    }
+
+    /**
+     * Extend lease of file claimed by this node.
+     *
+     * @param file file that is still processed.
+     * @return false if lease was lost: file was committed, rolled back or taken over by another node.
+     */
+    public boolean renewLease(F file) {
+        String key = buildKey(file);
+        if (renewLease(key, Instant.now().getEpochSecond())) {
+            return true;
+        }
+        leasedKeys.remove(key);
+        return false;
+    }
+
+    /**
+     * Extend leases of all files claimed by this node and not committed yet. Should be called periodically,
+     * several times per {@link #setLeaseSeconds(long) lease} period.
+     *
+     * @return number of renewed leases.
+     */
+    public int renewLeases() {
+        long currentTimestamp = Instant.now().getEpochSecond();
+        int renewed = 0;
+        for (String key : leasedKeys) {
+            if (renewLease(key, currentTimestamp)) {
+                renewed++;
+            } else {
+                leasedKeys.remove(key);
+            }
+        }
+        if (renewed > 0) {
+            flushIfNeeded();
         }
+        return renewed;
     }
 
     @Override
-    public boolean remove(F f) {
-        String removed = this.store.remove(buildKey(f));
-        flushIfNeeded();
-        return removed != null;
+    public FileAcceptStatus getStatus(F file) {
+        return StatusSerializer.fromString(storeGet(buildKey(file)));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Lease of the file is renewed as well, so long transfer keeps the file even without {@link #renewLeases()}.
+     */
     @Override
-    public void commit(F file) {
+    public boolean updateProgress(F file, long transferredBytes, long checksum) {
         String key = buildKey(file);
-        synchronized (monitor) {
-            String oldValue;
-            String newValue;
+        FileAcceptStatus status = new FileAcceptStatus();
+        while (true) {
+            String oldValue = storeGet(key);
+            if (oldValue == null || StatusSerializer.fromString(oldValue, status) == null
+                    || status.getStatus() != FileAcceptStatus.IN_PROGRESS
+                    || (status.getOwner() != null && !nodeId.equals(status.getOwner()))) {
+                metrics.leaseLost(prefix);
+                return false;
+            }
 
-            do {
-                oldValue = store.get(key);
-                FileAcceptStatus status;
-
-                if (oldValue != null) {
-                    status = StatusSerializer.fromString(oldValue);
-
-                    if (status.getStatus() == FileAcceptStatus.DONE) {
-                        /*
-                         * another process finished processing before our process - this should be reported
-                         * with high severity and timeout value must be increased
-                         */
-                        return;
-                    }
-                } else {
-                    // very strange situation when file was processed without creating record in metadata store
-                    status = new FileAcceptStatus();
-                }
+            status.setTransferredBytes(transferredBytes);
+            status.setTransferChecksum(checksum);
+            if (isLeasedByThisNode(status)) {
+                status.setLeaseExpiry(Instant.now().getEpochSecond() + leaseSeconds);
+            }
+            if (storeReplace(key, oldValue, StatusSerializer.toString(status))) {
+                flushIfNeeded();
+                return true;
+            }
+            metrics.casRetry(prefix);
+        }
+    }
+
+    private boolean renewLease(String key, long currentTimestamp) {
+        FileAcceptStatus status = new FileAcceptStatus();
+        while (true) {
+            String oldValue = storeGet(key);
+            if (oldValue == null || StatusSerializer.fromString(oldValue, status) == null
+                    || !isLeasedByThisNode(status)) {
+                metrics.leaseLost(prefix);
+                return false;
+            }
 
-                status.setStatus(FileAcceptStatus.DONE);
-                newValue = StatusSerializer.toString(status);
-            } while (!store.replace(key, oldValue, newValue));
+            status.setLeaseExpiry(currentTimestamp + leaseSeconds);
+            if (storeReplace(key, oldValue, StatusSerializer.toString(status))) {
+                return true;
+            }
+            metrics.casRetry(prefix);
         }
     }
 
@@ -211,6 +1657,38 @@ public abstract class AbstractPersistentAcceptOnceRetriableFileListFilter<F>
         this.retryTimeoutSeconds = retryTimeoutSeconds;
     }
 
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Id of this node stored as lease owner, random UUID by default. Must be unique in cluster and stable for
+     * lifetime of the filter.
+     *
+     * @param nodeId node id.
+     */
+    public void setNodeId(String nodeId) {
+        Assert.hasText(nodeId, "'nodeId' must not be empty");
+        Assert.isTrue(nodeId.indexOf(':') < 0, "'nodeId' must not contain ':'");
+        this.nodeId = nodeId;
+    }
+
+    public long getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    /**
+     * Enable leases: claimed file is not retried by other nodes until lease expires, owner must renew lease with
+     * {@link #renewLeases()} while file is processed. 0 (default) disables leases and
+     * {@link #setRetryTimeoutSeconds(long) retryTimeout} is used.
+     *
+     * @param leaseSeconds lease duration in seconds.
+     */
+    public void setLeaseSeconds(long leaseSeconds) {
+        Assert.isTrue(leaseSeconds >= 0, "'leaseSeconds' must not be negative");
+        this.leaseSeconds = leaseSeconds;
+    }
+
     public int getMaxAcceptedFileListLength() {
         return maxAcceptedFileListLength;
     }
@@ -218,4 +1696,200 @@ public abstract class AbstractPersistentAcceptOnceRetriableFileListFilter<F>
     public void setMaxAcceptedFileListLength(int maxAcceptedFileListLength) {
         this.maxAcceptedFileListLength = maxAcceptedFileListLength;
     }
+
+    /**
+     * Make claim and commit decisions on the store side with single request per chunk of files and no
+     * compare-and-set retries, store must implement {@link StatusTransitionMetadataStore}. Takes precedence over
+     * {@link #setClaimPool(ForkJoinPool) parallel} and batch claim, other operations (rollback, lease renewal,
+     * progress) still use compare-and-set.
+     *
+     * @param serverSideTransitions true to enable.
+     */
+    public void setServerSideTransitions(boolean serverSideTransitions) {
+        Assert.isTrue(!serverSideTransitions || transitionStore != null,
+                "'store' must implement StatusTransitionMetadataStore");
+        this.serverSideTransitions = serverSideTransitions;
+    }
+
+    /**
+     * Claim and commit files by non-blocking operations of {@link AsyncConcurrentMetadataStore}: up to
+     * {@link #setMaxInFlightClaims(int) maxInFlightClaims} claims of a poll are in flight without a thread per claim.
+     * Blocking {@link #filterFiles(Object[])} and {@link #commit(Object)} wait for the same operations, while
+     * {@link #filterFilesAsync(Object[], int)} and {@link #commitAsync(Object, long, String)} return immediately.
+     * Takes precedence over {@link #setClaimPool(ForkJoinPool) parallel} and batch claim, but not over
+     * {@link #setServerSideTransitions(boolean) server-side transitions}, store must implement
+     * {@link AsyncConcurrentMetadataStore}.
+     *
+     * @param asyncStoreOperations true to enable.
+     */
+    public void setAsyncStoreOperations(boolean asyncStoreOperations) {
+        Assert.isTrue(!asyncStoreOperations || asyncStore != null,
+                "'store' must implement AsyncConcurrentMetadataStore");
+        this.asyncStoreOperations = asyncStoreOperations;
+    }
+
+    /**
+     * Max number of claims of a single poll in flight with {@link #setAsyncStoreOperations(boolean) asynchronous
+     * store operations}, 64 by default.
+     *
+     * @param maxInFlightClaims number of claims.
+     */
+    public void setMaxInFlightClaims(int maxInFlightClaims) {
+        Assert.isTrue(maxInFlightClaims > 0, "'maxInFlightClaims' must be greater than 0");
+        this.maxInFlightClaims = maxInFlightClaims;
+    }
+
+    /**
+     * Set instrumentation callbacks, by default events are not reported.
+     *
+     * @param metrics metrics implementation.
+     */
+    public void setMetrics(FileProcessingMetrics metrics) {
+        Assert.notNull(metrics, "'metrics' cannot be null");
+        this.metrics = metrics;
+    }
+
+    /**
+     * Limit number of files accepted by each poll to the number of files this process can start processing now
+     * (e.g. free threads of processing executor), so files are not held in progress while waiting in a local queue
+     * and idle processes pick them up instead. Applied together with
+     * {@link #setMaxAcceptedFileListLength(int) maxAcceptedFileListLength}, not set by default.
+     *
+     * @param capacitySource source of available capacity, {@code null} to disable.
+     */
+    public void setCapacitySource(CapacitySource capacitySource) {
+        this.capacitySource = capacitySource;
+    }
+
+    /**
+     * Order in which files of a poll fill {@link #setMaxAcceptedFileListLength(int) limit} of accepted files
+     * (e.g. {@link FtpFilePriority#OLDEST_FIRST}), by default files are examined in listing order. Only best
+     * files are selected instead of sorting whole listing, so cost of ordering is {@code O(n log limit)} and is
+     * paid only when listing is longer than the limit.
+     *
+     * @param priorityComparator order of files, the first files have the highest priority, {@code null} for
+     *                           listing order.
+     */
+    public void setPriorityComparator(Comparator<? super F> priorityComparator) {
+        this.priorityComparator = priorityComparator;
+    }
+
+    /**
+     * Set callback that receives result of every poll, by default results are not reported.
+     *
+     * @param pollListener listener implementation.
+     */
+    public void setPollListener(FilterPollListener pollListener) {
+        Assert.notNull(pollListener, "'pollListener' cannot be null");
+        this.pollListener = pollListener;
+    }
+
+    /**
+     * Enable in-process cache of keys with terminal status ({@link FileAcceptStatus#DONE} or
+     * {@link FileAcceptStatus#REJECTED}), such keys are skipped without any request to metadata store.
+     *
+     * @param terminalCacheSize max number of cached keys, 0 or less to disable cache.
+     */
+    public void setTerminalCacheSize(int terminalCacheSize) {
+        this.terminalCache = terminalCacheSize > 0 ? new TerminalStatusCache(terminalCacheSize) : null;
+    }
+
+    /**
+     * Forget all cached terminal keys, so next poll re-reads them from metadata store.
+     */
+    public void clearTerminalCache() {
+        TerminalStatusCache cache = this.terminalCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Enable Bloom filter of processed keys: definitely new keys go straight to claim, possibly processed keys
+     * are verified first. Filter is persisted in metadata store by {@link #persistProcessedKeys()} and reloaded on
+     * first poll.
+     *
+     * @param expectedInsertions       expected number of processed keys.
+     * @param falsePositiveProbability desired false positive probability.
+     */
+    public void setProcessedKeysFilter(int expectedInsertions, double falsePositiveProbability) {
+        this.processedKeys = new ProcessedKeysBloomFilter(expectedInsertions, falsePositiveProbability);
+        this.processedKeysLoaded = false;
+    }
+
+    /**
+     * Key under which processed keys filter is saved, default is {@code processedKeysBloomFilter-} plus prefix.
+     *
+     * @param processedKeysStoreKey key in metadata store.
+     */
+    public void setProcessedKeysStoreKey(String processedKeysStoreKey) {
+        Assert.hasText(processedKeysStoreKey, "'processedKeysStoreKey' must not be empty");
+        this.processedKeysStoreKey = processedKeysStoreKey;
+    }
+
+    /**
+     * Enable parallel evaluation of listings: files are split between tasks of the pool, so several claims are
+     * in flight at the same time. Has priority over batch mode of {@link BatchConcurrentMetadataStore}.
+     *
+     * @param claimPool pool for claim tasks or {@code null} to claim files sequentially.
+     */
+    public void setClaimPool(ForkJoinPool claimPool) {
+        this.claimPool = claimPool;
+    }
+
+    /**
+     * Max number of files claimed sequentially by a single task of {@link #setClaimPool(ForkJoinPool) claimPool}.
+     *
+     * @param parallelThreshold number of files.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        Assert.isTrue(parallelThreshold > 0, "'parallelThreshold' must be greater than 0");
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Enable group commit: commits of concurrent threads are written to metadata store in batches of at most
+     * given size, each commit waits at most {@link #setGroupCommitMaxDelay(long) maxDelay} for other commits.
+     * {@link #commit} returns only when the batch is written and, if {@link #setFlushOnUpdate(boolean)
+     * flushOnUpdate} is true, store is flushed. 0 (default) disables group commit.
+     *
+     * @param groupCommitBatchSize max number of commits per batch.
+     */
+    public void setGroupCommitBatchSize(int groupCommitBatchSize) {
+        Assert.isTrue(groupCommitBatchSize >= 0, "'groupCommitBatchSize' must not be negative");
+        this.groupCommitBatchSize = groupCommitBatchSize;
+        updateGroupCommitter();
+    }
+
+    /**
+     * Max time commit waits for other commits to join its batch, 10 milliseconds by default.
+     *
+     * @param groupCommitMaxDelayMillis delay in milliseconds.
+     */
+    public void setGroupCommitMaxDelay(long groupCommitMaxDelayMillis) {
+        Assert.isTrue(groupCommitMaxDelayMillis >= 0, "'groupCommitMaxDelayMillis' must not be negative");
+        this.groupCommitMaxDelayMillis = groupCommitMaxDelayMillis;
+        updateGroupCommitter();
+    }
+
+    private void updateGroupCommitter() {
+        this.groupCommitter = groupCommitBatchSize > 0
+                ? new GroupCommitter<Commit>(this::commitAll, groupCommitBatchSize, groupCommitMaxDelayMillis)
+                : null;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Maximum number of keys sent to {@link BatchConcurrentMetadataStore} in one request.
+     * Used only if store supports batch operations.
+     *
+     * @param batchSize number of keys per request.
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "'batchSize' must be greater than 0");
+        this.batchSize = batchSize;
+    }
 }
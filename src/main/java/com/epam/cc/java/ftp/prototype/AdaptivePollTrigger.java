@@ -0,0 +1,139 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.util.Assert;
+
+import java.util.Date;
+
+/**
+ * Poller {@link Trigger} which delay between polls depends on results of the filter, register it as
+ * {@link FilterPollListener} of the filter:
+ * <ul>
+ * <li>while polls accept nothing, delay grows exponentially from {@code period} up to
+ * {@link #setMaxPeriod(long) maxPeriod}, so quiet feeds are listed rarely;</li>
+ * <li>while polls accept max number of files (more files are waiting), next poll starts after
+ * {@link #setMinPeriod(long) minPeriod}, unless {@link #setCapacitySource(CapacitySource) capacity} of the
+ * process is exhausted;</li>
+ * <li>otherwise delay is {@code period}.</li>
+ * </ul>
+ * Delay is counted from completion of previous poll (fixed delay). Result of a poll is known only after the poll,
+ * so with asynchronous poller decision is based on the latest completed poll.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class AdaptivePollTrigger implements Trigger, FilterPollListener {
+
+    private static Logger logger = LoggerFactory.getLogger(AdaptivePollTrigger.class);
+
+    private final long period;
+
+    private volatile long minPeriod = 0L;
+
+    private volatile long maxPeriod;
+
+    private volatile double backoffMultiplier = 2.0;
+
+    private volatile CapacitySource capacitySource;
+
+    /**
+     * Number of consecutive polls that accepted nothing.
+     */
+    private volatile int idlePolls;
+
+    private volatile boolean backlog;
+
+    /**
+     * @param period delay between polls in milliseconds when there is no reason to poll faster or slower.
+     */
+    public AdaptivePollTrigger(long period) {
+        Assert.isTrue(period > 0, "'period' must be greater than 0");
+        this.period = period;
+        this.maxPeriod = period * 12;
+    }
+
+    @Override
+    public Date nextExecutionTime(TriggerContext triggerContext) {
+        Date lastCompletion = triggerContext.lastCompletionTime();
+        long base = lastCompletion != null ? lastCompletion.getTime() : System.currentTimeMillis();
+        return new Date(base + currentDelay());
+    }
+
+    @Override
+    public void filtered(String prefix, int candidates, int accepted, boolean limitReached) {
+        if (accepted == 0 && !limitReached) {
+            int idle = idlePolls;
+            if (idle < Integer.MAX_VALUE) {
+                idlePolls = idle + 1;
+            }
+            if (idle == 0 && logger.isDebugEnabled()) {
+                logger.debug("Nothing accepted by filter '{}', backing off", prefix);
+            }
+        } else {
+            idlePolls = 0;
+        }
+        backlog = limitReached;
+    }
+
+    /**
+     * @return delay before next poll in milliseconds.
+     */
+    long currentDelay() {
+        if (backlog && !isSaturated()) {
+            return minPeriod;
+        }
+        int idle = idlePolls;
+        if (idle == 0) {
+            return period;
+        }
+        double delay = period * Math.pow(backoffMultiplier, idle);
+        return delay < maxPeriod ? (long) delay : maxPeriod;
+    }
+
+    private boolean isSaturated() {
+        CapacitySource capacity = this.capacitySource;
+        return capacity != null && capacity.availableCapacity() <= 0;
+    }
+
+    /**
+     * Delay before next poll when previous poll reached max accepted file list length, 0 by default.
+     *
+     * @param minPeriod delay in milliseconds.
+     */
+    public void setMinPeriod(long minPeriod) {
+        Assert.isTrue(minPeriod >= 0, "'minPeriod' must not be negative");
+        this.minPeriod = minPeriod;
+    }
+
+    /**
+     * Upper bound of delay while polls accept nothing, 12 periods by default.
+     *
+     * @param maxPeriod delay in milliseconds.
+     */
+    public void setMaxPeriod(long maxPeriod) {
+        Assert.isTrue(maxPeriod >= period, "'maxPeriod' must not be less than 'period'");
+        this.maxPeriod = maxPeriod;
+    }
+
+    /**
+     * Factor by which delay grows after each poll that accepted nothing, 2 by default.
+     *
+     * @param backoffMultiplier multiplier.
+     */
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        Assert.isTrue(backoffMultiplier >= 1.0, "'backoffMultiplier' must not be less than 1");
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    /**
+     * Capacity of the process (e.g. {@link ExecutorCapacitySource} of poller executor), immediate polls are not
+     * scheduled while it is exhausted.
+     *
+     * @param capacitySource source of available capacity.
+     */
+    public void setCapacitySource(CapacitySource capacitySource) {
+        this.capacitySource = capacitySource;
+    }
+}
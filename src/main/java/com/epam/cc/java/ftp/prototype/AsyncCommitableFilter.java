@@ -0,0 +1,43 @@
+package com.epam.cc.java.ftp.prototype;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link CommitableFilter}: files are claimed and committed by futures, so the calling
+ * thread is not blocked while metadata store is working. Blocking methods of {@link CommitableFilter} remain
+ * available and have the same effect.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface AsyncCommitableFilter<F> extends CommitableFilter<F> {
+
+    /**
+     * Non-blocking version of {@link #filterFiles(Object[], int)}.
+     *
+     * @param files       files to filter.
+     * @param maxAccepted max number of files to accept.
+     * @return future of accepted files.
+     */
+    CompletableFuture<List<F>> filterFilesAsync(F[] files, int maxAccepted);
+
+    /**
+     * Non-blocking version of {@link #commit(Object, long, String)}.
+     *
+     * @param file          file that was processed.
+     * @param contentSize   size of content in bytes.
+     * @param contentDigest digest of content as hex string, {@code null} if unknown.
+     * @return future completed when commit is written.
+     */
+    CompletableFuture<Void> commitAsync(F file, long contentSize, String contentDigest);
+
+    /**
+     * Non-blocking version of {@link #commit(Object)}.
+     *
+     * @param file file that was processed.
+     * @return future completed when commit is written.
+     */
+    default CompletableFuture<Void> commitAsync(F file) {
+        return commitAsync(file, 0L, null);
+    }
+}
@@ -0,0 +1,47 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Extension of {@link ConcurrentMetadataStore} with non-blocking versions of its operations: calling thread only
+ * submits the operation, result is delivered by the returned future. Many operations of a few threads may be in
+ * flight at the same time, so number of threads does not limit throughput of the store. Operations have the same
+ * semantics as their blocking versions.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface AsyncConcurrentMetadataStore extends ConcurrentMetadataStore {
+
+    /**
+     * @param key key.
+     * @return future of value of the key or {@code null} if key is absent.
+     * @see ConcurrentMetadataStore#get(String)
+     */
+    CompletableFuture<String> getAsync(String key);
+
+    /**
+     * @param key   key.
+     * @param value value to put.
+     * @return future of existing value or {@code null} if value was put.
+     * @see ConcurrentMetadataStore#putIfAbsent(String, String)
+     */
+    CompletableFuture<String> putIfAbsentAsync(String key, String value);
+
+    /**
+     * @param key      key.
+     * @param oldValue expected value.
+     * @param newValue value to put.
+     * @return future of {@code true} if value was replaced.
+     * @see ConcurrentMetadataStore#replace(String, String, String)
+     */
+    CompletableFuture<Boolean> replaceAsync(String key, String oldValue, String newValue);
+
+    /**
+     * @param key key.
+     * @return future of removed value or {@code null} if key was absent.
+     * @see ConcurrentMetadataStore#remove(String)
+     */
+    CompletableFuture<String> removeAsync(String key);
+}
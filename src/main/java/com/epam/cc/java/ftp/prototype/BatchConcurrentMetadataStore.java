@@ -0,0 +1,42 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extension of {@link ConcurrentMetadataStore} that is able to process a group of keys in a single request
+ * (pipeline, multi-key command or server-side script) instead of one round trip per key.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface BatchConcurrentMetadataStore extends ConcurrentMetadataStore {
+
+    /**
+     * Read values of all given keys at once.
+     *
+     * @param keys keys to read.
+     * @return values in the same order as keys, {@code null} for absent keys.
+     */
+    List<String> multiGet(List<String> keys);
+
+    /**
+     * Atomically (per key) put every entry if the key is not present yet.
+     *
+     * @param entries keys and values to put.
+     * @return current values of keys that already existed and thus were not updated.
+     */
+    Map<String, String> putAllIfAbsent(Map<String, String> entries);
+
+    /**
+     * Atomically (per key) replace value of every key of {@code newValues} if its current value equals to
+     * the value of the key in {@code oldValues}.
+     *
+     * @param oldValues expected current values.
+     * @param newValues new values.
+     * @return keys that were replaced.
+     */
+    Set<String> replaceAll(Map<String, String> oldValues, Map<String, String> newValues);
+}
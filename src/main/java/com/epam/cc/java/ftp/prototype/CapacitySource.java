@@ -0,0 +1,16 @@
+package com.epam.cc.java.ftp.prototype;
+
+/**
+ * Source of the number of files this process can start processing right now, used to avoid claiming files
+ * that would wait in a local queue (see {@link ExecutorCapacitySource}).
+ * <p>
+ * Created by Maksym Bruner.
+ */
+@FunctionalInterface
+public interface CapacitySource {
+
+    /**
+     * @return number of files that can be processed immediately, 0 or less if process is saturated.
+     */
+    int availableCapacity();
+}
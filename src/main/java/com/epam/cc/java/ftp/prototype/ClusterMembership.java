@@ -0,0 +1,201 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.util.Assert;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Live members of cluster registered in metadata store. All members are kept in a single key as
+ * {@code nodeId=expiry,nodeId=expiry}, each member extends its own expiry with {@link #heartbeat()} using
+ * {@link ConcurrentMetadataStore#replace}, members which expiry has passed are dropped by the next heartbeat of
+ * any member.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class ClusterMembership {
+
+    private static Logger logger = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final ConcurrentMetadataStore store;
+
+    private final String nodeId;
+
+    private String key = "clusterMembers";
+
+    private long memberTimeoutSeconds = 30L;
+
+    private long heartbeatIntervalSeconds = 10L;
+
+    private int virtualNodes = 64;
+
+    private volatile ConsistentHashRing ring;
+
+    private volatile long lastHeartbeat = 0L;
+
+    public ClusterMembership(ConcurrentMetadataStore store) {
+        this(store, UUID.randomUUID().toString());
+    }
+
+    public ClusterMembership(ConcurrentMetadataStore store, String nodeId) {
+        Assert.notNull(store, "'store' cannot be null");
+        Assert.hasText(nodeId, "'nodeId' must not be empty");
+        Assert.isTrue(nodeId.indexOf(',') < 0 && nodeId.indexOf('=') < 0, "'nodeId' must not contain ',' or '='");
+        this.store = store;
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Register this node (or extend its registration) and read live members.
+     *
+     * @return ring of live members including this node.
+     */
+    public ConsistentHashRing heartbeat() {
+        long currentTimestamp = Instant.now().getEpochSecond();
+        while (true) {
+            String oldValue = store.get(key);
+            Map<String, Long> members = parse(oldValue, currentTimestamp);
+            members.put(nodeId, currentTimestamp + memberTimeoutSeconds);
+
+            String newValue = format(members);
+            boolean updated = oldValue == null
+                    ? store.putIfAbsent(key, newValue) == null
+                    : store.replace(key, oldValue, newValue);
+            if (updated) {
+                lastHeartbeat = currentTimestamp;
+                return updateRing(members);
+            }
+        }
+    }
+
+    /**
+     * Remove this node from cluster, so its files are taken over by other members without waiting for timeout.
+     */
+    public void leave() {
+        long currentTimestamp = Instant.now().getEpochSecond();
+        while (true) {
+            String oldValue = store.get(key);
+            if (oldValue == null) {
+                return;
+            }
+            Map<String, Long> members = parse(oldValue, currentTimestamp);
+            if (members.remove(nodeId) == null) {
+                return;
+            }
+            if (store.replace(key, oldValue, format(members))) {
+                lastHeartbeat = 0L;
+                ring = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return ring of live members, heartbeat is sent first if {@link #setHeartbeatIntervalSeconds(long) interval}
+     * has passed since the last one.
+     */
+    public ConsistentHashRing getRing() {
+        ConsistentHashRing current = this.ring;
+        if (current == null || Instant.now().getEpochSecond() - lastHeartbeat >= heartbeatIntervalSeconds) {
+            current = heartbeat();
+        }
+        return current;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private ConsistentHashRing updateRing(Map<String, Long> members) {
+        ConsistentHashRing current = this.ring;
+        if (current != null && current.getMembers().equals(members.keySet())) {
+            return current;
+        }
+        ConsistentHashRing newRing = new ConsistentHashRing(members.keySet(), virtualNodes);
+        logger.info("Cluster members changed: {}", newRing.getMembers());
+        this.ring = newRing;
+        return newRing;
+    }
+
+    /**
+     * @return live members with their expiry.
+     */
+    private static Map<String, Long> parse(String value, long currentTimestamp) {
+        Map<String, Long> members = new LinkedHashMap<String, Long>();
+        if (value == null || value.isEmpty()) {
+            return members;
+        }
+        for (String member : value.split(",")) {
+            int separator = member.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            try {
+                long expiry = Long.parseLong(member.substring(separator + 1));
+                if (expiry > currentTimestamp) {
+                    members.put(member.substring(0, separator), expiry);
+                }
+            } catch (NumberFormatException e) {
+                // broken entry is dropped
+            }
+        }
+        return members;
+    }
+
+    private static String format(Map<String, Long> members) {
+        StringBuilder value = new StringBuilder();
+        for (Map.Entry<String, Long> member : members.entrySet()) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(member.getKey()).append('=').append(member.getValue());
+        }
+        return value.toString();
+    }
+
+    /**
+     * Key in metadata store that keeps members.
+     *
+     * @param key key.
+     */
+    public void setKey(String key) {
+        Assert.hasText(key, "'key' must not be empty");
+        this.key = key;
+    }
+
+    /**
+     * Time after which member that doesn't send heartbeats is considered dead, its files are taken over by others.
+     *
+     * @param memberTimeoutSeconds timeout in seconds.
+     */
+    public void setMemberTimeoutSeconds(long memberTimeoutSeconds) {
+        Assert.isTrue(memberTimeoutSeconds > 0, "'memberTimeoutSeconds' must be greater than 0");
+        this.memberTimeoutSeconds = memberTimeoutSeconds;
+    }
+
+    /**
+     * Min interval between heartbeats sent by {@link #getRing()}, must be less than member timeout.
+     *
+     * @param heartbeatIntervalSeconds interval in seconds.
+     */
+    public void setHeartbeatIntervalSeconds(long heartbeatIntervalSeconds) {
+        Assert.isTrue(heartbeatIntervalSeconds >= 0, "'heartbeatIntervalSeconds' must not be negative");
+        this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+    }
+
+    /**
+     * Number of ring points per member, more points give more even distribution of files.
+     *
+     * @param virtualNodes number of points.
+     */
+    public void setVirtualNodes(int virtualNodes) {
+        Assert.isTrue(virtualNodes > 0, "'virtualNodes' must be greater than 0");
+        this.virtualNodes = virtualNodes;
+        this.ring = null;
+    }
+}
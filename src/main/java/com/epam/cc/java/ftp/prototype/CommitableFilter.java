@@ -2,6 +2,8 @@ package com.epam.cc.java.ftp.prototype;
 
 import org.springframework.integration.file.filters.FileListFilter;
 
+import java.util.List;
+
 /**
  * Interface for file filters with ability to commit file after processing.
  * <p>
@@ -9,6 +11,18 @@ import org.springframework.integration.file.filters.FileListFilter;
  */
 public interface CommitableFilter<F> extends FileListFilter<F> {
 
+    /**
+     * Same as {@link #filterFiles(Object[])}, but accepts at most {@code maxAccepted} files, so caller may share
+     * a budget between several filters. The limit is ignored by default, filters that claim files must support it.
+     *
+     * @param files       files to filter.
+     * @param maxAccepted max number of files to accept.
+     * @return accepted files.
+     */
+    default List<F> filterFiles(F[] files, int maxAccepted) {
+        return filterFiles(files);
+    }
+
     /**
      * Indicate that file that was previously passed by this filter (in {@link #filterFiles(Object[])}
      * have been processed successfully.
@@ -16,4 +30,25 @@ public interface CommitableFilter<F> extends FileListFilter<F> {
      * @param file file that was processed.
      */
     void commit(F file);
+
+    /**
+     * Same as {@link #commit(Object)}, but also records size and digest of processed content, so they can be used
+     * to verify integrity or to detect duplicates without reading the content again. Details are ignored by default.
+     *
+     * @param file          file that was processed.
+     * @param contentSize   size of content in bytes.
+     * @param contentDigest digest of content as hex string.
+     */
+    default void commit(F file, long contentSize, String contentDigest) {
+        commit(file);
+    }
+
+    /**
+     * Indicate that processing of file that was previously passed by this filter failed, so the file may be
+     * retried without waiting for timeout. Does nothing by default.
+     *
+     * @param file file which processing failed.
+     */
+    default void rollback(F file) {
+    }
 }
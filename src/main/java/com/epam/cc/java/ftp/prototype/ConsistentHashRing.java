@@ -0,0 +1,50 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring of cluster members. Each member owns several points of the ring, key belongs to
+ * the member of the first point after key hash, so when a member joins or leaves only its share of keys moves.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> points = new TreeMap<Long, String>();
+
+    private final Set<String> members;
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        Assert.isTrue(virtualNodes > 0, "'virtualNodes' must be greater than 0");
+        this.members = Collections.unmodifiableSet(new TreeSet<String>(members));
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(ProcessedKeysBloomFilter.hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * @param key key to locate.
+     * @return member that owns the key or {@code null} if ring is empty.
+     */
+    public String owner(String key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(ProcessedKeysBloomFilter.hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+}
@@ -0,0 +1,57 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+/**
+ * {@link CapacitySource} backed by thread pool: capacity is number of idle threads (max pool size minus active
+ * threads) reduced by number of tasks already waiting in the queue.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class ExecutorCapacitySource implements CapacitySource {
+
+    private final Supplier<ThreadPoolExecutor> executor;
+
+    private volatile int reserved;
+
+    public ExecutorCapacitySource(ThreadPoolExecutor executor) {
+        Assert.notNull(executor, "'executor' cannot be null");
+        this.executor = () -> executor;
+    }
+
+    /**
+     * @param taskExecutor executor, may be not initialized yet.
+     */
+    public ExecutorCapacitySource(ThreadPoolTaskExecutor taskExecutor) {
+        Assert.notNull(taskExecutor, "'taskExecutor' cannot be null");
+        this.executor = taskExecutor::getThreadPoolExecutor;
+    }
+
+    @Override
+    public int availableCapacity() {
+        ThreadPoolExecutor threadPool;
+        try {
+            threadPool = executor.get();
+        } catch (IllegalStateException e) {
+            // executor is not initialized yet
+            return 0;
+        }
+        return threadPool.getMaximumPoolSize() - threadPool.getActiveCount() - threadPool.getQueue().size()
+                + reserved;
+    }
+
+    /**
+     * Number of threads added to capacity, e.g. 1 if capacity is checked from a thread of the same executor that
+     * is going to process the file itself. 0 by default.
+     *
+     * @param reserved number of threads.
+     */
+    public void setReserved(int reserved) {
+        Assert.isTrue(reserved >= 0, "'reserved' must not be negative");
+        this.reserved = reserved;
+    }
+}
@@ -0,0 +1,585 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.integration.redis.metadata.RedisMetadataStore;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Extended version of {@link RedisMetadataStore} with support of {@link BatchConcurrentMetadataStore},
+ * {@link ScannableMetadataStore}, {@link StatusTransitionMetadataStore} and {@link AsyncConcurrentMetadataStore}.
+ * Data layout is the same (single Redis hash), so the store can be used against existing data.
+ * <p>
+ * Asynchronous operations are queued and sent by a single dispatcher task: all operations queued while previous
+ * request was in flight are executed by one script call, in order of submission. So any number of operations
+ * may be in flight, while only one connection is busy with them.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class ExtendedRedisMetadataStore extends RedisMetadataStore
+        implements BatchConcurrentMetadataStore, ScannableMetadataStore, StatusTransitionMetadataStore,
+        AsyncConcurrentMetadataStore {
+
+    /**
+     * HSETNX for every field/value pair from ARGV, returns field/value pairs of already existing fields.
+     */
+    private static final String PUT_ALL_IF_ABSENT_SCRIPT =
+            "local existing = {}\n" +
+            "for i = 1, #ARGV, 2 do\n" +
+            "  if redis.call('HSETNX', KEYS[1], ARGV[i], ARGV[i + 1]) == 0 then\n" +
+            "    existing[#existing + 1] = ARGV[i]\n" +
+            "    existing[#existing + 1] = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+            "  end\n" +
+            "end\n" +
+            "return existing";
+
+    /**
+     * HGET and HSET for every field/expected/new triple from ARGV, returns replaced fields.
+     */
+    private static final String REPLACE_ALL_SCRIPT =
+            "local replaced = {}\n" +
+            "for i = 1, #ARGV, 3 do\n" +
+            "  if redis.call('HGET', KEYS[1], ARGV[i]) == ARGV[i + 1] then\n" +
+            "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 2])\n" +
+            "    replaced[#replaced + 1] = ARGV[i]\n" +
+            "  end\n" +
+            "end\n" +
+            "return replaced";
+
+    /**
+     * Lua version of {@link StatusSerializer}: status is a table of string fields, so numbers which are not
+     * changed are written back exactly as they were read. Legacy JSON values are read with cjson.
+     */
+    private static final String STATUS_FUNCTIONS =
+            "local function newStatus()\n" +
+            "  return {status = '0', tries = '0', lastTry = '0', leaseExpiry = '0', transferredBytes = '0',\n" +
+            "    transferChecksum = '0', contentSize = '0'}\n" +
+            "end\n" +
+            "local function parse(value)\n" +
+            "  local s = newStatus()\n" +
+            "  if string.sub(value, 1, 1) == '{' then\n" +
+            "    local ok, json = pcall(cjson.decode, value)\n" +
+            "    if not ok or type(json) ~= 'table' then return nil end\n" +
+            "    local function num(v) if type(v) == 'number' then return string.format('%d', v) end return '0' end\n" +
+            "    local function str(v) if type(v) == 'string' and v ~= '' then return v end return nil end\n" +
+            "    s.status = num(json.status); s.tries = num(json.tries); s.lastTry = num(json.lastTryTimestamp)\n" +
+            "    s.leaseExpiry = num(json.leaseExpiry); s.owner = str(json.owner)\n" +
+            "    s.transferredBytes = num(json.transferredBytes); s.transferChecksum = num(json.transferChecksum)\n" +
+            "    s.contentSize = num(json.contentSize); s.contentDigest = str(json.contentDigest)\n" +
+            "    return s\n" +
+            "  end\n" +
+            "  local f = {}\n" +
+            "  for field in string.gmatch(value .. ':', '([^:]*):') do f[#f + 1] = field end\n" +
+            "  local n = #f\n" +
+            "  if n ~= 3 and n ~= 5 and n ~= 7 and n ~= 9 then return nil end\n" +
+            "  for _, i in ipairs({1, 2, 3, 4, 6, 7, 8}) do\n" +
+            "    if i <= n and not string.match(f[i], '^%d+$') then return nil end\n" +
+            "  end\n" +
+            "  s.status = f[1]; s.tries = f[2]; s.lastTry = f[3]\n" +
+            "  if n >= 5 then s.leaseExpiry = f[4]; if f[5] ~= '' then s.owner = f[5] end end\n" +
+            "  if n >= 7 then s.transferredBytes = f[6]; s.transferChecksum = f[7] end\n" +
+            "  if n >= 9 then s.contentSize = f[8]; if f[9] ~= '' then s.contentDigest = f[9] end end\n" +
+            "  return s\n" +
+            "end\n" +
+            "local function serialize(s)\n" +
+            "  local value = s.status .. ':' .. s.tries .. ':' .. s.lastTry\n" +
+            "  local hasContent = s.contentDigest ~= nil\n" +
+            "  local hasProgress = hasContent or tonumber(s.transferredBytes) > 0\n" +
+            "  if hasProgress or tonumber(s.leaseExpiry) > 0 or s.owner ~= nil then\n" +
+            "    value = value .. ':' .. s.leaseExpiry .. ':' .. (s.owner or '')\n" +
+            "  end\n" +
+            "  if hasProgress then value = value .. ':' .. s.transferredBytes .. ':' .. s.transferChecksum end\n" +
+            "  if hasContent then value = value .. ':' .. s.contentSize .. ':' .. s.contentDigest end\n" +
+            "  return value\n" +
+            "end\n";
+
+    /**
+     * Claim of every key from ARGV[7..] by the same rules as the filter, ARGV[1..6] are current timestamp,
+     * retry timeout, max tries, owner, lease seconds and limit. Returns transition code of every key.
+     */
+    private static final String CLAIM_ALL_SCRIPT = STATUS_FUNCTIONS +
+            "local now = tonumber(ARGV[1])\n" +
+            "local retryTimeout = tonumber(ARGV[2])\n" +
+            "local maxTry = tonumber(ARGV[3])\n" +
+            "local leaseSeconds = tonumber(ARGV[5])\n" +
+            "local limit = tonumber(ARGV[6])\n" +
+            "local function applyLease(s)\n" +
+            "  if leaseSeconds > 0 then\n" +
+            "    s.owner = ARGV[4]; s.leaseExpiry = string.format('%d', now + leaseSeconds)\n" +
+            "  else\n" +
+            "    s.owner = nil; s.leaseExpiry = '0'\n" +
+            "  end\n" +
+            "end\n" +
+            "local claimed = 0\n" +
+            "local result = {}\n" +
+            "for i = 7, #ARGV do\n" +
+            "  local code = '-'\n" +
+            "  if claimed < limit then\n" +
+            "    local value = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+            "    local s = nil\n" +
+            "    if not value then\n" +
+            "      s = newStatus(); s.tries = '1'; s.lastTry = ARGV[1]; applyLease(s); code = 'N'\n" +
+            "    else\n" +
+            "      s = parse(value)\n" +
+            "      if not s then code = 'U'\n" +
+            "      elseif tonumber(s.status) ~= 0 then code = 'T'; s = nil\n" +
+            "      else\n" +
+            "        local expired\n" +
+            "        if tonumber(s.leaseExpiry) > 0 then expired = now >= tonumber(s.leaseExpiry)\n" +
+            "        else expired = now - tonumber(s.lastTry) >= retryTimeout end\n" +
+            "        if not expired then code = 'S'; s = nil\n" +
+            "        elseif tonumber(s.tries) >= maxTry then\n" +
+            "          s.status = '2'; s.owner = nil; s.leaseExpiry = '0'; code = 'R'\n" +
+            "        else\n" +
+            "          s.lastTry = ARGV[1]; s.tries = tostring(tonumber(s.tries) + 1); applyLease(s); code = 'C'\n" +
+            "        end\n" +
+            "      end\n" +
+            "    end\n" +
+            "    if s then redis.call('HSET', KEYS[1], ARGV[i], serialize(s)) end\n" +
+            "    if code == 'N' or code == 'C' then claimed = claimed + 1 end\n" +
+            "  end\n" +
+            "  result[#result + 1] = code\n" +
+            "end\n" +
+            "return result";
+
+    /**
+     * Commit of every key/contentSize/contentDigest triple from ARGV, empty digest means unknown content.
+     * Returns transition code of every key.
+     */
+    private static final String COMMIT_ALL_SCRIPT = STATUS_FUNCTIONS +
+            "local result = {}\n" +
+            "for i = 1, #ARGV, 3 do\n" +
+            "  local value = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+            "  local s = value and parse(value)\n" +
+            "  if s and tonumber(s.status) == 1 then\n" +
+            "    result[#result + 1] = 'F'\n" +
+            "  else\n" +
+            "    s = s or newStatus()\n" +
+            "    s.status = '1'; s.owner = nil; s.leaseExpiry = '0'; s.transferredBytes = '0'\n" +
+            "    s.transferChecksum = '0'\n" +
+            "    if ARGV[i + 2] ~= '' then s.contentSize = ARGV[i + 1]; s.contentDigest = ARGV[i + 2] end\n" +
+            "    redis.call('HSET', KEYS[1], ARGV[i], serialize(s))\n" +
+            "    result[#result + 1] = 'D'\n" +
+            "  end\n" +
+            "end\n" +
+            "return result";
+
+    /**
+     * Operations of {@link AsyncConcurrentMetadataStore} for every op/field/arg/arg quadruple from ARGV: 'G' is get,
+     * 'P' is putIfAbsent, 'R' is replace and 'D' is remove. Returns '=' followed by found value, '+' for replaced
+     * value and '-' otherwise.
+     */
+    private static final String ASYNC_BATCH_SCRIPT =
+            "local result = {}\n" +
+            "for i = 1, #ARGV, 4 do\n" +
+            "  local op, field = ARGV[i], ARGV[i + 1]\n" +
+            "  local value = redis.call('HGET', KEYS[1], field)\n" +
+            "  local code = '-'\n" +
+            "  if op == 'R' then\n" +
+            "    if value == ARGV[i + 2] then\n" +
+            "      redis.call('HSET', KEYS[1], field, ARGV[i + 3])\n" +
+            "      code = '+'\n" +
+            "    end\n" +
+            "  elseif value then\n" +
+            "    code = '=' .. value\n" +
+            "    if op == 'D' then\n" +
+            "      redis.call('HDEL', KEYS[1], field)\n" +
+            "    end\n" +
+            "  elseif op == 'P' then\n" +
+            "    redis.call('HSET', KEYS[1], field, ARGV[i + 2])\n" +
+            "  end\n" +
+            "  result[#result + 1] = code\n" +
+            "end\n" +
+            "return result";
+
+    private static final String SCAN_SCRIPT =
+            "return redis.call('HSCAN', KEYS[1], ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3])";
+
+    private static final String REMOVE_IF_EQUAL_SCRIPT =
+            "if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then\n" +
+            "  return redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "end\n" +
+            "return 0";
+
+    protected final StringRedisTemplate redisTemplate;
+
+    protected final String key;
+
+    private final RedisScript<List<String>> putAllIfAbsentScript = listScript(PUT_ALL_IF_ABSENT_SCRIPT);
+
+    private final RedisScript<List<String>> replaceAllScript = listScript(REPLACE_ALL_SCRIPT);
+
+    private final RedisScript<List<String>> claimAllScript = listScript(CLAIM_ALL_SCRIPT);
+
+    private final RedisScript<List<String>> commitAllScript = listScript(COMMIT_ALL_SCRIPT);
+
+    private final RedisScript<List<Object>> scanScript = listScript(SCAN_SCRIPT);
+
+    private final RedisScript<Long> removeIfEqualScript =
+            new DefaultRedisScript<Long>(REMOVE_IF_EQUAL_SCRIPT, Long.class);
+
+    private final RedisScript<List<String>> asyncBatchScript = listScript(ASYNC_BATCH_SCRIPT);
+
+    private final Queue<AsyncOperation> asyncOperations = new ConcurrentLinkedQueue<AsyncOperation>();
+
+    private final AtomicBoolean asyncDispatching = new AtomicBoolean();
+
+    private volatile Executor asyncExecutor = defaultAsyncExecutor();
+
+    private volatile int asyncBatchSize = 500;
+
+    public ExtendedRedisMetadataStore(RedisConnectionFactory connectionFactory) {
+        this(connectionFactory, KEY);
+    }
+
+    public ExtendedRedisMetadataStore(RedisConnectionFactory connectionFactory, String key) {
+        this(new StringRedisTemplate(connectionFactory), key);
+    }
+
+    public ExtendedRedisMetadataStore(StringRedisTemplate redisTemplate, String key) {
+        super(redisTemplate, key);
+        Assert.hasText(key, "'key' must not be empty.");
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+    }
+
+    @Override
+    public List<String> multiGet(List<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        HashOperations<String, String, String> hashOperations = this.redisTemplate.opsForHash();
+        return hashOperations.multiGet(this.key, keys);
+    }
+
+    @Override
+    public Map<String, String> putAllIfAbsent(Map<String, String> entries) {
+        if (entries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Object[] args = new Object[entries.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            args[i++] = entry.getKey();
+            args[i++] = entry.getValue();
+        }
+
+        List<String> result = this.redisTemplate.execute(this.putAllIfAbsentScript,
+                Collections.singletonList(this.key), args);
+
+        Map<String, String> existing = new HashMap<String, String>();
+        if (result != null) {
+            for (int j = 0; j + 1 < result.size(); j += 2) {
+                existing.put(result.get(j), result.get(j + 1));
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public Set<String> replaceAll(Map<String, String> oldValues, Map<String, String> newValues) {
+        if (newValues.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Object[] args = new Object[newValues.size() * 3];
+        int i = 0;
+        for (Map.Entry<String, String> entry : newValues.entrySet()) {
+            String oldValue = oldValues.get(entry.getKey());
+            Assert.notNull(oldValue, "'oldValues' must contain all keys of 'newValues'");
+            args[i++] = entry.getKey();
+            args[i++] = oldValue;
+            args[i++] = entry.getValue();
+        }
+
+        List<String> result = this.redisTemplate.execute(this.replaceAllScript,
+                Collections.singletonList(this.key), args);
+        return result != null ? new HashSet<String>(result) : Collections.<String>emptySet();
+    }
+
+    @Override
+    public List<Transition> claimAll(List<String> keys, long currentTimestamp, ClaimPolicy policy, int limit) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] args = new Object[keys.size() + 6];
+        args[0] = String.valueOf(currentTimestamp);
+        args[1] = String.valueOf(policy.getRetryTimeoutSeconds());
+        args[2] = String.valueOf(policy.getMaxTry());
+        args[3] = policy.getOwner();
+        args[4] = String.valueOf(policy.getLeaseSeconds());
+        args[5] = String.valueOf(limit);
+        int i = 6;
+        for (String key : keys) {
+            args[i++] = key;
+        }
+
+        List<String> result = this.redisTemplate.execute(this.claimAllScript,
+                Collections.singletonList(this.key), args);
+        return transitions(result);
+    }
+
+    @Override
+    public List<Transition> commitAll(List<String> keys, long[] contentSizes, String[] contentDigests) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] args = new Object[keys.size() * 3];
+        int i = 0;
+        for (int j = 0; j < keys.size(); j++) {
+            args[i++] = keys.get(j);
+            args[i++] = String.valueOf(contentSizes[j]);
+            args[i++] = contentDigests[j] != null ? contentDigests[j] : "";
+        }
+
+        List<String> result = this.redisTemplate.execute(this.commitAllScript,
+                Collections.singletonList(this.key), args);
+        return transitions(result);
+    }
+
+    /**
+     * Script returning Redis multi-bulk reply, elements are deserialized by value serializer of the template.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> RedisScript<List<T>> listScript(String script) {
+        return new DefaultRedisScript<List<T>>(script, (Class<List<T>>) (Class<?>) List.class);
+    }
+
+    private static List<Transition> transitions(List<String> codes) {
+        List<Transition> transitions = new ArrayList<Transition>(codes.size());
+        for (String code : codes) {
+            transitions.add(Transition.fromCode(code.charAt(0)));
+        }
+        return transitions;
+    }
+
+    @Override
+    public ScanChunk scan(String cursor, String keyPrefix, int count) {
+        List<Object> result = this.redisTemplate.execute(this.scanScript, Collections.singletonList(this.key),
+                cursor, escapePattern(keyPrefix) + "*", String.valueOf(count));
+
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        List<?> pairs = (List<?>) result.get(1);
+        for (int j = 0; j + 1 < pairs.size(); j += 2) {
+            entries.put((String) pairs.get(j), (String) pairs.get(j + 1));
+        }
+        return new ScanChunk((String) result.get(0), entries);
+    }
+
+    @Override
+    public boolean remove(String key, String value) {
+        Long removed = this.redisTemplate.execute(this.removeIfEqualScript, Collections.singletonList(this.key),
+                key, value);
+        return removed != null && removed > 0;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(String key) {
+        Assert.notNull(key, "'key' must not be null.");
+        return submit('G', key, "", "").thenApply(ExtendedRedisMetadataStore::foundValue);
+    }
+
+    @Override
+    public CompletableFuture<String> putIfAbsentAsync(String key, String value) {
+        Assert.notNull(key, "'key' must not be null.");
+        Assert.notNull(value, "'value' must not be null.");
+        return submit('P', key, value, "").thenApply(ExtendedRedisMetadataStore::foundValue);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> replaceAsync(String key, String oldValue, String newValue) {
+        Assert.notNull(key, "'key' must not be null.");
+        Assert.notNull(oldValue, "'oldValue' must not be null.");
+        Assert.notNull(newValue, "'newValue' must not be null.");
+        return submit('R', key, oldValue, newValue).thenApply(code -> code.charAt(0) == '+');
+    }
+
+    @Override
+    public CompletableFuture<String> removeAsync(String key) {
+        Assert.notNull(key, "'key' must not be null.");
+        return submit('D', key, "", "").thenApply(ExtendedRedisMetadataStore::foundValue);
+    }
+
+    private static String foundValue(String code) {
+        return code.charAt(0) == '=' ? code.substring(1) : null;
+    }
+
+    private CompletableFuture<String> submit(char op, String field, String arg1, String arg2) {
+        AsyncOperation operation = new AsyncOperation(op, field, arg1, arg2);
+        asyncOperations.add(operation);
+        if (asyncDispatching.compareAndSet(false, true)) {
+            try {
+                asyncExecutor.execute(this::executeQueued);
+            } catch (RejectedExecutionException e) {
+                asyncDispatching.set(false);
+                AsyncOperation queued;
+                while ((queued = asyncOperations.poll()) != null) {
+                    queued.result.completeExceptionally(e);
+                }
+            }
+        }
+        return operation.result;
+    }
+
+    /**
+     * Execute queued operations in batches until the queue is empty. Futures are completed by this task, so
+     * operations submitted by their callbacks are executed by the next batch.
+     */
+    private void executeQueued() {
+        boolean dispatching = true;
+        try {
+            while (true) {
+                List<AsyncOperation> batch = new ArrayList<AsyncOperation>();
+                AsyncOperation operation;
+                while (batch.size() < asyncBatchSize && (operation = asyncOperations.poll()) != null) {
+                    batch.add(operation);
+                }
+                if (!batch.isEmpty()) {
+                    execute(batch);
+                    continue;
+                }
+
+                dispatching = false;
+                asyncDispatching.set(false);
+                // operation could be queued after the queue was found empty, but before dispatching was reset
+                if (asyncOperations.isEmpty() || !asyncDispatching.compareAndSet(false, true)) {
+                    return;
+                }
+                dispatching = true;
+            }
+        } finally {
+            if (dispatching) {
+                // unexpected failure - operations still queued are dispatched by next submit
+                asyncDispatching.set(false);
+            }
+        }
+    }
+
+    private void execute(List<AsyncOperation> batch) {
+        Object[] args = new Object[batch.size() * 4];
+        int i = 0;
+        for (AsyncOperation operation : batch) {
+            args[i++] = String.valueOf(operation.op);
+            args[i++] = operation.field;
+            args[i++] = operation.arg1;
+            args[i++] = operation.arg2;
+        }
+
+        List<String> result;
+        try {
+            result = this.redisTemplate.execute(this.asyncBatchScript, Collections.singletonList(this.key), args);
+        } catch (Throwable e) {
+            completeExceptionally(batch, e);
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return;
+        }
+        if (result == null || result.size() != batch.size()) {
+            completeExceptionally(batch, new IllegalStateException("Unexpected reply of batch script: "
+                    + (result != null ? result.size() : null) + " results for " + batch.size() + " operations"));
+            return;
+        }
+        for (int j = 0; j < batch.size(); j++) {
+            batch.get(j).result.complete(result.get(j));
+        }
+    }
+
+    private static void completeExceptionally(List<AsyncOperation> batch, Throwable e) {
+        for (AsyncOperation operation : batch) {
+            operation.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Single daemon thread, which is stopped when there are no asynchronous operations for a minute.
+     */
+    private static Executor defaultAsyncExecutor() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("redis-metadata-async-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Executor of dispatcher task of asynchronous operations, dedicated daemon thread of this store by default.
+     * The task blocks on Redis requests, so shared pools such as common fork-join pool are not suitable.
+     *
+     * @param asyncExecutor executor.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        Assert.notNull(asyncExecutor, "'asyncExecutor' cannot be null");
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Max number of asynchronous operations executed by one script call, 500 by default.
+     *
+     * @param asyncBatchSize number of operations.
+     */
+    public void setAsyncBatchSize(int asyncBatchSize) {
+        Assert.isTrue(asyncBatchSize > 0, "'asyncBatchSize' must be greater than 0");
+        this.asyncBatchSize = asyncBatchSize;
+    }
+
+    /**
+     * Queued asynchronous operation.
+     */
+    private static final class AsyncOperation {
+
+        private final char op;
+
+        private final String field;
+
+        private final String arg1;
+
+        private final String arg2;
+
+        private final CompletableFuture<String> result = new CompletableFuture<String>();
+
+        private AsyncOperation(char op, String field, String arg1, String arg2) {
+            this.op = op;
+            this.field = field;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+    }
+
+    /**
+     * Escape glob special characters, so prefix is matched literally by MATCH option.
+     */
+    private static String escapePattern(String prefix) {
+        StringBuilder pattern = new StringBuilder(prefix.length() + 8);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.toString();
+    }
+}
@@ -19,6 +19,36 @@ public class FileAcceptStatus {
 
     private long lastTryTimestamp = 0L;
 
+    /**
+     * Id of the node that holds the lease, {@code null} if lease is not used.
+     */
+    private String owner;
+
+    /**
+     * Timestamp (seconds) when the lease expires if owner does not renew it, 0 if lease is not used.
+     */
+    private long leaseExpiry = 0L;
+
+    /**
+     * Number of bytes of the file already transferred to staging file, 0 if transfer was not started.
+     */
+    private long transferredBytes = 0L;
+
+    /**
+     * CRC32 of the first {@link #transferredBytes} bytes of the file.
+     */
+    private long transferChecksum = 0L;
+
+    /**
+     * Size of content of processed file, recorded on commit together with {@link #contentDigest}.
+     */
+    private long contentSize = 0L;
+
+    /**
+     * Hex digest of content of processed file, {@code null} if digest was not computed.
+     */
+    private String contentDigest;
+
     public int getStatus() {
         return status;
     }
@@ -42,5 +72,52 @@ public class FileAcceptStatus {
     public void setLastTryTimestamp(long lastTryTimestamp) {
         this.lastTryTimestamp = lastTryTimestamp;
     }
-}
 
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public long getLeaseExpiry() {
+        return leaseExpiry;
+    }
+
+    public void setLeaseExpiry(long leaseExpiry) {
+        this.leaseExpiry = leaseExpiry;
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    public void setTransferredBytes(long transferredBytes) {
+        this.transferredBytes = transferredBytes;
+    }
+
+    public long getTransferChecksum() {
+        return transferChecksum;
+    }
+
+    public void setTransferChecksum(long transferChecksum) {
+        this.transferChecksum = transferChecksum;
+    }
+
+    public long getContentSize() {
+        return contentSize;
+    }
+
+    public void setContentSize(long contentSize) {
+        this.contentSize = contentSize;
+    }
+
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    public void setContentDigest(String contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+}
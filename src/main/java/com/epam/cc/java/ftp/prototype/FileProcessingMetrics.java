@@ -0,0 +1,104 @@
+package com.epam.cc.java.ftp.prototype;
+
+/**
+ * Instrumentation callbacks of {@link AbstractPersistentAcceptOnceRetriableFileListFilter} and
+ * {@link FtpExtendedInboundFileSynchronizer}. All methods do nothing by default, so implementation may
+ * override only events it is interested in. Methods are called on hot paths and must not block.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface FileProcessingMetrics {
+
+    /**
+     * Metrics implementation that ignores all events.
+     */
+    FileProcessingMetrics NONE = new FileProcessingMetrics() {
+    };
+
+    /**
+     * File was claimed by this process (first or next try).
+     */
+    default void accepted(String prefix) {
+    }
+
+    /**
+     * File was skipped because another try is still in progress.
+     */
+    default void skippedInProgress(String prefix) {
+    }
+
+    /**
+     * File was claimed for one more try after timeout.
+     */
+    default void retried(String prefix) {
+    }
+
+    /**
+     * File was marked as rejected after max number of tries.
+     */
+    default void rejected(String prefix) {
+    }
+
+    /**
+     * File was marked as done.
+     */
+    default void committed(String prefix) {
+    }
+
+    /**
+     * File was already done by another process when this process tried to commit it. Means that file was
+     * processed twice and retry timeout is too small.
+     */
+    default void commitFoundDone(String prefix) {
+    }
+
+    /**
+     * Compare-and-set update of metadata store failed because of concurrent update and has to be repeated.
+     */
+    default void casRetry(String prefix) {
+    }
+
+    /**
+     * Lease of file could not be renewed because file is not owned by this process anymore.
+     */
+    default void leaseLost(String prefix) {
+    }
+
+    /**
+     * Metadata store operation was executed.
+     *
+     * @param operation    name of operation ({@code get}, {@code putIfAbsent} and etc).
+     * @param elapsedNanos operation latency.
+     */
+    default void storeOperation(String prefix, String operation, long elapsedNanos) {
+    }
+
+    /**
+     * Remote directory was listed, only changed entries are passed to the filter.
+     *
+     * @param remoteDirectory remote directory.
+     * @param total           number of entries in listing.
+     * @param changed         number of new or changed entries.
+     */
+    default void listed(String remoteDirectory, int total, int changed) {
+    }
+
+    /**
+     * Remote file was downloaded to local directory.
+     *
+     * @param remoteDirectory remote directory.
+     * @param bytes           size of file.
+     * @param elapsedNanos    download duration.
+     */
+    default void downloaded(String remoteDirectory, long bytes, long elapsedNanos) {
+    }
+
+    /**
+     * Interrupted download was resumed from staging file instead of starting from the beginning.
+     *
+     * @param remoteDirectory remote directory.
+     * @param offset          number of bytes that were not downloaded again.
+     */
+    default void downloadResumed(String remoteDirectory, long offset) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.epam.cc.java.ftp.prototype;
+
+/**
+ * Callback of {@link AbstractPersistentAcceptOnceRetriableFileListFilter} that receives result of every
+ * {@link AbstractPersistentAcceptOnceRetriableFileListFilter#filterFiles filterFiles} call, e.g. to adapt polling
+ * rate to the amount of work (see {@link AdaptivePollTrigger}). Called on polling thread and must not block.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface FilterPollListener {
+
+    /**
+     * Listener that ignores all results.
+     */
+    FilterPollListener NONE = (prefix, candidates, accepted, limitReached) -> {
+    };
+
+    /**
+     * Files of a poll were filtered.
+     *
+     * @param prefix       prefix of the filter.
+     * @param candidates   number of files passed to the filter.
+     * @param accepted     number of files claimed by this process.
+     * @param limitReached whether max accepted file list length was reached, so more files may be waiting.
+     */
+    void filtered(String prefix, int candidates, int accepted, boolean limitReached);
+}
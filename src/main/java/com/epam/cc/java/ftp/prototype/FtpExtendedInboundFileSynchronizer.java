@@ -1,24 +1,149 @@
 package com.epam.cc.java.ftp.prototype;
 
+import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
 import org.springframework.expression.common.LiteralExpression;
+import org.springframework.integration.expression.ExpressionUtils;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
 import org.springframework.integration.file.remote.session.Session;
 import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.file.remote.synchronizer.AbstractInboundFileSynchronizer;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 
 /**
  * Extended version of {link AbstractInboundFileSynchronizer} with support of {link CommitableFilter}.
  * <p>
+ * If {@link #setDownloadExecutor(Executor) downloadExecutor} is set, accepted files of a poll are downloaded
+ * concurrently, each on its own {@link Session}, and each file is committed as soon as its transfer completes.
+ * Failure of one transfer doesn't affect other files of the poll.
+ * <p>
+ * If {@link #setResumableTransfers(boolean) resumable transfers} are enabled and commitable filter is
+ * {link TransferProgressTracker}, progress of each transfer is saved in metadata store and a try that takes over
+ * the file continues from the saved offset (FTP {@code REST} command) if staging file contains the same bytes.
+ * <p>
+ * If {@link #setDigestAlgorithm(String) digest algorithm} is set, digest of content is computed while file is
+ * written and is saved with size of the file in its status on commit, so consumers can verify integrity or detect
+ * duplicate content without reading the file again. Such transfers (and resumable ones) are written through
+ * {@link FileChannel} with large direct buffer.
+ * <p>
+ * If {@link #setListingSnapshot(FtpListingSnapshot) listing snapshot} is set, processed files that were not
+ * changed since processing are dropped from listing before the filter, and {@link #setUseMlsd(boolean) MLSD}
+ * may be used for machine-readable listings with exact modification times.
+ * <p>
+ * If {@link #addRemoteDirectory(FtpRemoteDirectory) remote directories} are added, one synchronizer serves all of
+ * them with the same sessions and executor instead of remote directory set by
+ * {@link #setRemoteDirectory(String)}. Each poll gives turns to directories in round robin order, each directory
+ * accepts up to its quota with its own filter, until {@link #setMaxFilesPerPoll(int) budget} of the poll is used.
+ * Directory which turn was cut by the budget keeps the rest of its quota to the next turn (deficit round robin),
+ * so shares of busy directories are proportional to their quotas.
+ * <p>
  * Created by Maksym Bruner.
  */
 public class FtpExtendedInboundFileSynchronizer extends AbstractInboundFileSynchronizer<FTPFile> {
 
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private CommitableFilter<FTPFile> commitableFilter;
 
+    private TransferProgressTracker<FTPFile> progressTracker;
+
+    private volatile boolean resumableTransfers;
+
+    private volatile long progressIntervalBytes = 16L * 1024 * 1024;
+
+    private volatile File stagingDirectory;
+
+    private volatile String digestAlgorithm;
+
+    private volatile int transferBufferSize = 1024 * 1024;
+
+    /**
+     * Direct buffers are expensive to allocate, so each download thread keeps its own.
+     */
+    private final ThreadLocal<ByteBuffer> transferBuffers = new ThreadLocal<ByteBuffer>();
+
+    private volatile FileProcessingMetrics metrics = FileProcessingMetrics.NONE;
+
+    private final SessionFactory<FTPFile> sessionFactory;
+
+    private volatile Executor downloadExecutor;
+
+    private volatile FtpListingSnapshot listingSnapshot;
+
+    private volatile boolean useMlsd;
+
+    /**
+     * Whether server supports MLSD, {@code null} until checked with FEAT.
+     */
+    private volatile Boolean mlsdSupported;
+
+    private final List<FtpRemoteDirectory> remoteDirectories = new CopyOnWriteArrayList<FtpRemoteDirectory>();
+
+    private final Map<String, FtpRemoteDirectory> remoteDirectoriesByPath =
+            new ConcurrentHashMap<String, FtpRemoteDirectory>();
+
+    /**
+     * Guards round robin position and credits of remote directories.
+     */
+    private final Object scheduleMonitor = new Object();
+
+    private int nextDirectory;
+
+    private volatile int maxFilesPerPoll = Integer.MAX_VALUE;
+
+    /*
+     * Copies of private state of superclass required for parallel synchronization.
+     */
+    private volatile Expression remoteDirectoryExpression;
+
+    private volatile EvaluationContext evaluationContext;
+
+    private BeanFactory beanFactory;
+
+    private volatile String remoteFileSeparator = "/";
+
+    private volatile Expression localFilenameGeneratorExpression;
+
+    private volatile boolean deleteRemoteFiles;
+
+    private volatile boolean preserveTimestamp;
+
     /**
      * Create a synchronizer with the {@link SessionFactory} used to acquire {@link Session} instances.
      *
@@ -26,16 +151,603 @@ public class FtpExtendedInboundFileSynchronizer extends AbstractInboundFileSynch
      */
     public FtpExtendedInboundFileSynchronizer(SessionFactory<FTPFile> sessionFactory) {
         super(sessionFactory);
+        this.sessionFactory = sessionFactory;
         setRemoteDirectoryExpression(new LiteralExpression(null));
     }
 
+    @Override
+    public void synchronizeToLocalDirectory(File localDirectory) {
+        if (!remoteDirectories.isEmpty()) {
+            synchronizeRemoteDirectories(localDirectory);
+            return;
+        }
+
+        Executor executor = this.downloadExecutor;
+        if (executor == null && listingSnapshot == null && !useMlsd) {
+            super.synchronizeToLocalDirectory(localDirectory);
+            return;
+        }
+
+        String remoteDirectory = evaluateRemoteDirectory();
+        List<FTPFile> files = listAcceptedFiles(remoteDirectory);
+
+        if (executor == null) {
+            downloadSequentially(remoteDirectory, files, localDirectory);
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> transfers = new ArrayList<CompletableFuture<Boolean>>(files.size());
+        submitDownloads(executor, remoteDirectory, files, localDirectory, transfers);
+        awaitTransfers(transfers);
+    }
+
+    /**
+     * Serve all {@link #addRemoteDirectory(FtpRemoteDirectory) remote directories}: files of all directories
+     * accepted by this poll are downloaded together. Failure of one directory doesn't affect other directories.
+     */
+    private void synchronizeRemoteDirectories(File localDirectory) {
+        Map<FtpRemoteDirectory, List<FTPFile>> accepted = listAcceptedFilesOfDirectories();
+
+        Executor executor = this.downloadExecutor;
+        if (executor == null) {
+            MessagingException failure = null;
+            for (Map.Entry<FtpRemoteDirectory, List<FTPFile>> entry : accepted.entrySet()) {
+                try {
+                    downloadSequentially(entry.getKey().getPath(), entry.getValue(),
+                            localDirectory(localDirectory, entry.getKey()));
+                } catch (MessagingException e) {
+                    logger.warn("Failed to synchronize remote directory '" + entry.getKey().getPath() + "'", e);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> transfers = new ArrayList<CompletableFuture<Boolean>>();
+        for (Map.Entry<FtpRemoteDirectory, List<FTPFile>> entry : accepted.entrySet()) {
+            submitDownloads(executor, entry.getKey().getPath(), entry.getValue(),
+                    localDirectory(localDirectory, entry.getKey()), transfers);
+        }
+        awaitTransfers(transfers);
+    }
+
+    /**
+     * List remote directories in round robin order in a single session and claim files of each directory with
+     * its filter, up to its quota, until budget of the poll is used.
+     *
+     * @return accepted files of every directory that accepted something.
+     */
+    Map<FtpRemoteDirectory, List<FTPFile>> listAcceptedFilesOfDirectories() {
+        Map<FtpRemoteDirectory, List<FTPFile>> accepted = new LinkedHashMap<FtpRemoteDirectory, List<FTPFile>>();
+        synchronized (scheduleMonitor) {
+            int count = remoteDirectories.size();
+            int budget = maxFilesPerPoll;
+            int visited = 0;
+            Session<FTPFile> session = null;
+            try {
+                for (; visited < count && budget > 0; visited++) {
+                    FtpRemoteDirectory directory = remoteDirectories.get((nextDirectory + visited) % count);
+                    int allowance = directory.credit + directory.getQuota();
+                    int limit = Math.min(allowance, budget);
+
+                    FTPFile[] remoteFiles;
+                    try {
+                        if (session == null) {
+                            session = this.sessionFactory.getSession();
+                        }
+                        remoteFiles = listRemoteDirectory(session, directory.getPath());
+                    } catch (IOException | RuntimeException e) {
+                        logger.warn("Failed to list remote directory '" + directory.getPath() + "'", e);
+                        if (session != null) {
+                            // session may be broken - next directory is listed in a new one
+                            session.close();
+                            session = null;
+                        }
+                        continue;
+                    }
+
+                    List<FTPFile> files;
+                    try {
+                        files = acceptFiles(directory.getPath(), remoteFiles,
+                                candidates -> directory.getFilter().filterFiles(candidates, limit));
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to filter files of remote directory '" + directory.getPath() + "'", e);
+                        continue;
+                    }
+                    budget -= files.size();
+                    // directory without backlog loses its credit, directory cut by budget keeps the rest
+                    directory.credit = files.size() < limit ? 0
+                            : Math.min(allowance - files.size(), directory.getQuota());
+                    if (!files.isEmpty()) {
+                        accepted.put(directory, files);
+                    }
+                }
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
+                if (count > 0) {
+                    nextDirectory = (nextDirectory + visited) % count;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static File localDirectory(File localDirectory, FtpRemoteDirectory directory) {
+        String subdirectory = directory.getLocalSubdirectory();
+        if (subdirectory == null) {
+            return localDirectory;
+        }
+        File directoryFile = new File(localDirectory, subdirectory);
+        if (!directoryFile.exists() && !directoryFile.mkdirs() && !directoryFile.exists()) {
+            throw new MessagingException("Cannot create local directory " + directoryFile);
+        }
+        return directoryFile;
+    }
+
+    private void submitDownloads(Executor executor, String remoteDirectory, List<FTPFile> files, File localDirectory,
+                                 List<CompletableFuture<Boolean>> transfers) {
+        for (FTPFile file : files) {
+            try {
+                transfers.add(CompletableFuture.supplyAsync(
+                        () -> downloadInOwnSession(remoteDirectory, file, localDirectory), executor));
+            } catch (RejectedExecutionException e) {
+                // executor is saturated - download in the polling thread instead of leaving claimed file behind
+                transfers.add(CompletableFuture.completedFuture(
+                        downloadInOwnSession(remoteDirectory, file, localDirectory)));
+            }
+        }
+    }
+
+    private void awaitTransfers(List<CompletableFuture<Boolean>> transfers) {
+        int transferred = 0;
+        for (CompletableFuture<Boolean> transfer : transfers) {
+            if (transfer.join()) {
+                transferred++;
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(transferred + " files transferred");
+        }
+    }
+
+    String evaluateRemoteDirectory() {
+        return this.remoteDirectoryExpression.getValue(getEvaluationContext(), String.class);
+    }
+
+    /**
+     * List remote directory in a separate session and claim files with the filter, files are not downloaded.
+     */
+    List<FTPFile> listAcceptedFiles(String remoteDirectory) {
+        FTPFile[] remoteFiles;
+        try (Session<FTPFile> session = this.sessionFactory.getSession()) {
+            remoteFiles = listRemoteDirectory(session, remoteDirectory);
+        } catch (IOException e) {
+            throw new MessagingException("Problem occurred while synchronizing remote to local directory", e);
+        }
+        return acceptFiles(remoteDirectory, remoteFiles, this::filterFiles);
+    }
+
+    /**
+     * List remote directory the same way as synchronization does (MLSD if {@link #setUseMlsd(boolean) enabled}
+     * and supported), so names built from the listing match keys of the filter, e.g. for
+     * {@link MetadataRetentionSweeper}. Files are not passed to the filter.
+     *
+     * @param remoteDirectory remote directory.
+     * @return files of remote directory.
+     * @throws IOException if listing failed.
+     */
+    public FTPFile[] listRemoteFiles(String remoteDirectory) throws IOException {
+        try (Session<FTPFile> session = this.sessionFactory.getSession()) {
+            return listRemoteDirectory(session, remoteDirectory);
+        }
+    }
+
+    /**
+     * Pass listing of remote directory (only changed files if there is listing snapshot) to the filter.
+     */
+    private List<FTPFile> acceptFiles(String remoteDirectory, FTPFile[] remoteFiles,
+                                      Function<FTPFile[], List<FTPFile>> filter) {
+        if (remoteFiles == null) {
+            remoteFiles = new FTPFile[0];
+        }
+
+        // filter is called even for empty listing, so it can report idle polls
+        FtpListingSnapshot snapshot = this.listingSnapshot;
+        if (snapshot == null || remoteFiles.length == 0) {
+            return filter.apply(remoteFiles);
+        }
+        snapshot.persist(remoteDirectory, remoteFiles);
+        List<FTPFile> changed = snapshot.changedFiles(remoteDirectory, remoteFiles);
+        metrics.listed(remoteDirectory, remoteFiles.length, changed.size());
+        return filter.apply(changed.toArray(new FTPFile[changed.size()]));
+    }
+
+    private FTPFile[] listRemoteDirectory(Session<FTPFile> session, String remoteDirectory) throws IOException {
+        Object client = session.getClientInstance();
+        if (!useMlsd || !(client instanceof FTPClient) || Boolean.FALSE.equals(mlsdSupported)) {
+            return session.list(remoteDirectory);
+        }
+
+        FTPClient ftpClient = (FTPClient) client;
+        if (mlsdSupported == null) {
+            mlsdSupported = ftpClient.hasFeature("MLST");
+            if (!mlsdSupported) {
+                logger.info("Server doesn't support MLSD, LIST is used");
+                return session.list(remoteDirectory);
+            }
+        }
+        FTPFile[] files = ftpClient.mlistDir(remoteDirectory);
+        if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+            throw new IOException("MLSD of " + remoteDirectory + " failed: " + ftpClient.getReplyString());
+        }
+        // MLSD includes entries of the directory itself and its parent
+        List<FTPFile> entries = new ArrayList<FTPFile>(Arrays.asList(files));
+        entries.removeIf(file -> file == null || ".".equals(file.getName()) || "..".equals(file.getName()));
+        return entries.toArray(new FTPFile[entries.size()]);
+    }
+
+    /**
+     * Same as synchronization of superclass: first failure stops synchronization and files that were not tried
+     * are rolled back.
+     */
+    private void downloadSequentially(String remoteDirectory, List<FTPFile> files, File localDirectory) {
+        int transferred = 0;
+        try (Session<FTPFile> session = this.sessionFactory.getSession()) {
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    copyFileToLocalDirectory(remoteDirectory, files.get(i), localDirectory, session);
+                    transferred++;
+                } catch (IOException | RuntimeException e) {
+                    for (FTPFile file : files.subList(i + 1, files.size())) {
+                        rollback(remoteDirectory, file);
+                    }
+                    throw new MessagingException("Problem occurred while synchronizing remote to local directory", e);
+                }
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(transferred + " files transferred");
+        }
+    }
+
+    /**
+     * Open stream of remote file in its own session, session is released when stream is closed.
+     */
+    RemoteFileInputStream openStream(String remoteDirectory, FTPFile remoteFile) throws IOException {
+        String remoteFilePath = remoteDirectory != null
+                ? remoteDirectory + remoteFileSeparator + getFilename(remoteFile) : getFilename(remoteFile);
+        Session<FTPFile> session = this.sessionFactory.getSession();
+        try {
+            return new RemoteFileInputStream(session.readRaw(remoteFilePath), session, remoteDirectory, remoteFile);
+        } catch (IOException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    private void recordProcessed(String remoteDirectory, FTPFile remoteFile) {
+        FtpListingSnapshot snapshot = this.listingSnapshot;
+        if (snapshot != null) {
+            snapshot.recordProcessed(remoteDirectory, remoteFile);
+        }
+    }
+
+    void rollback(String remoteDirectory, FTPFile remoteFile) {
+        CommitableFilter<FTPFile> filter = commitableFilter(remoteDirectory);
+        if (filter != null) {
+            filter.rollback(remoteFile);
+        }
+    }
+
+    /**
+     * @return filter of {@link #addRemoteDirectory(FtpRemoteDirectory) remote directory} or commitable filter
+     * of the synchronizer for other directories.
+     */
+    private CommitableFilter<FTPFile> commitableFilter(String remoteDirectory) {
+        FtpRemoteDirectory directory = remoteDirectory != null ? remoteDirectoriesByPath.get(remoteDirectory) : null;
+        return directory != null ? directory.getFilter() : this.commitableFilter;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TransferProgressTracker<FTPFile> progressTracker(String remoteDirectory) {
+        FtpRemoteDirectory directory = remoteDirectory != null ? remoteDirectoriesByPath.get(remoteDirectory) : null;
+        if (directory == null) {
+            return this.progressTracker;
+        }
+        return directory.getFilter() instanceof TransferProgressTracker
+                ? (TransferProgressTracker<FTPFile>) directory.getFilter() : null;
+    }
+
+    /**
+     * Release stream opened by {@link #openStream} and commit the file if stream was consumed completely and
+     * {@code success} is true, otherwise roll it back.
+     */
+    void completeStream(RemoteFileInputStream stream, boolean success) {
+        stream.close();
+        FTPFile remoteFile = stream.getRemoteFile();
+        if (success && stream.isFullyConsumed()) {
+            metrics.downloaded(stream.getRemoteDirectory(), stream.getBytesRead(), stream.getElapsedNanos());
+            CommitableFilter<FTPFile> filter = commitableFilter(stream.getRemoteDirectory());
+            if (filter != null) {
+                filter.commit(remoteFile);
+            }
+            recordProcessed(stream.getRemoteDirectory(), remoteFile);
+        } else {
+            rollback(stream.getRemoteDirectory(), remoteFile);
+        }
+    }
+
+    /**
+     * @return false if file was not downloaded, failure is logged and doesn't affect other files.
+     */
+    private boolean downloadInOwnSession(String remoteDirectory, FTPFile file, File localDirectory) {
+        Session<FTPFile> session;
+        try {
+            session = this.sessionFactory.getSession();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to obtain session to download file '" + file.getName() + "'", e);
+            rollback(remoteDirectory, file);
+            return false;
+        }
+
+        try {
+            // commit or rollback of the file is done by copyFileToLocalDirectory
+            copyFileToLocalDirectory(remoteDirectory, file, localDirectory, session);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Failed to download file '" + file.getName() + "' from '" + remoteDirectory + "'", e);
+            return false;
+        } finally {
+            session.close();
+        }
+    }
+
     @Override
     protected void copyFileToLocalDirectory(String remoteDirectoryPath, FTPFile remoteFile, File localDirectory,
                                             Session<FTPFile> session) throws IOException {
-        super.copyFileToLocalDirectory(remoteDirectoryPath, remoteFile, localDirectory, session);
-        if (commitableFilter != null) {
-            commitableFilter.commit(remoteFile);
+        long start = System.nanoTime();
+        CommitableFilter<FTPFile> filter = commitableFilter(remoteDirectoryPath);
+        Transfer transfer = null;
+        try {
+            TransferProgressTracker<FTPFile> tracker = resumableTransfers ? progressTracker(remoteDirectoryPath) : null;
+            if (tracker != null || digestAlgorithm != null) {
+                transfer = copyFileThroughChannel(remoteDirectoryPath, remoteFile, localDirectory, session, tracker);
+            } else {
+                super.copyFileToLocalDirectory(remoteDirectoryPath, remoteFile, localDirectory, session);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (filter != null) {
+                // let the file be retried right away instead of waiting for lease expiry
+                filter.rollback(remoteFile);
+            }
+            throw e;
         }
+        metrics.downloaded(remoteDirectoryPath, transfer != null ? transfer.bytes : remoteFile.getSize(),
+                System.nanoTime() - start);
+        if (filter != null) {
+            if (transfer != null && transfer.digest != null) {
+                filter.commit(remoteFile, transfer.bytes, transfer.digest);
+            } else {
+                filter.commit(remoteFile);
+            }
+        }
+        recordProcessed(remoteDirectoryPath, remoteFile);
+    }
+
+    /**
+     * Same as {@link AbstractInboundFileSynchronizer#copyFileToLocalDirectory}, but file is written to staging
+     * file through {@link FileChannel} and digest is computed on the fly. If transfer is resumable, staging file is
+     * kept on failure and progress is saved every {@link #setProgressIntervalBytes(long)} bytes.
+     *
+     * @param tracker tracker of progress or {@code null} if transfer is not resumable.
+     * @return description of completed transfer or {@code null} if file was not transferred.
+     */
+    private Transfer copyFileThroughChannel(String remoteDirectoryPath, FTPFile remoteFile, File localDirectory,
+                                            Session<FTPFile> session, TransferProgressTracker<FTPFile> tracker)
+            throws IOException {
+        boolean resumable = tracker != null;
+        String remoteFileName = getFilename(remoteFile);
+        if (!isFile(remoteFile)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("cannot copy, not a file: " + remoteFileName);
+            }
+            return null;
+        }
+        String remoteFilePath = remoteDirectoryPath != null
+                ? remoteDirectoryPath + remoteFileSeparator + remoteFileName : remoteFileName;
+        File localFile = new File(localDirectory, generateLocalFileName(remoteFileName));
+        if (localFile.exists()) {
+            return null;
+        }
+
+        File stagingDir = stagingDirectory != null ? stagingDirectory : localDirectory;
+        if (!stagingDir.exists() && !stagingDir.mkdirs() && !stagingDir.exists()) {
+            throw new IOException("Cannot create staging directory " + stagingDir);
+        }
+        File stagingFile = new File(stagingDir, localFile.getName() + getTemporaryFileSuffix());
+        Object client = session.getClientInstance();
+        CRC32 checksum = resumable ? new CRC32() : null;
+        MessageDigest digest = newDigest();
+        long offset = resumable && client instanceof FTPClient
+                ? resumeOffset(tracker, remoteFile, stagingFile, checksum, digest) : 0L;
+
+        long transferred;
+        try (FileChannel output = FileChannel.open(stagingFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            output.truncate(offset);
+            output.position(offset);
+            if (offset > 0) {
+                ((FTPClient) client).setRestartOffset(offset);
+                metrics.downloadResumed(remoteDirectoryPath, offset);
+                if (logger.isInfoEnabled()) {
+                    logger.info("Resuming transfer of " + remoteFilePath + " from offset " + offset);
+                }
+            }
+
+            InputStream input = session.readRaw(remoteFilePath);
+            boolean finalized;
+            try {
+                transferred = transfer(tracker, remoteFile, remoteFilePath, input, output, offset, checksum, digest);
+            } finally {
+                input.close();
+                // must be called to complete FTP command even if transfer failed
+                finalized = session.finalizeRaw();
+            }
+            if (!finalized) {
+                throw new IOException("Failed to complete transfer of " + remoteFilePath);
+            }
+        }
+
+        Files.move(stagingFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (preserveTimestamp) {
+            localFile.setLastModified(getModified(remoteFile));
+        }
+        if (deleteRemoteFiles) {
+            session.remove(remoteFilePath);
+        }
+        return new Transfer(transferred, digest != null ? toHex(digest.digest()) : null);
+    }
+
+    /**
+     * Copy remote stream to staging file: buffer is filled completely before it is written, so the channel
+     * gets large writes even if the stream returns small chunks.
+     *
+     * @param checksum checksum for progress or {@code null} if transfer is not resumable.
+     * @param digest   digest of content or {@code null}.
+     * @return size of the file.
+     */
+    private long transfer(TransferProgressTracker<FTPFile> tracker, FTPFile remoteFile, String remoteFilePath,
+                          InputStream input, FileChannel output, long offset, CRC32 checksum, MessageDigest digest)
+            throws IOException {
+        ReadableByteChannel source = Channels.newChannel(input);
+        ByteBuffer buffer = transferBuffer();
+        long written = offset;
+        long reported = offset;
+        boolean eof = false;
+        while (!eof) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (source.read(buffer) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+            buffer.flip();
+            if (checksum != null) {
+                checksum.update(buffer);
+                buffer.rewind();
+            }
+            if (digest != null) {
+                digest.update(buffer);
+                buffer.rewind();
+            }
+            while (buffer.hasRemaining()) {
+                written += output.write(buffer);
+            }
+
+            if (checksum != null && written - reported >= progressIntervalBytes) {
+                // saved progress must never be ahead of data on disk
+                output.force(false);
+                if (!tracker.updateProgress(remoteFile, written, checksum.getValue())) {
+                    throw new IOException("Transfer of " + remoteFilePath + " was taken over by another process");
+                }
+                reported = written;
+            }
+        }
+        return written;
+    }
+
+    private ByteBuffer transferBuffer() {
+        ByteBuffer buffer = transferBuffers.get();
+        if (buffer == null || buffer.capacity() != transferBufferSize) {
+            buffer = ByteBuffer.allocateDirect(transferBufferSize);
+            transferBuffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    private MessageDigest newDigest() {
+        String algorithm = this.digestAlgorithm;
+        if (algorithm == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // checked by setter
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Verify staging file left by previous try against progress saved in metadata store.
+     *
+     * @return offset to continue transfer from, {@code checksum} and {@code digest} contain bytes before offset.
+     */
+    private long resumeOffset(TransferProgressTracker<FTPFile> tracker, FTPFile remoteFile, File stagingFile,
+                              CRC32 checksum, MessageDigest digest) throws IOException {
+        FileAcceptStatus status = tracker.getStatus(remoteFile);
+        if (status == null || status.getTransferredBytes() <= 0
+                || (remoteFile.getSize() >= 0 && status.getTransferredBytes() > remoteFile.getSize())
+                || stagingFile.length() < status.getTransferredBytes()) {
+            return 0L;
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = status.getTransferredBytes();
+        try (InputStream input = new FileInputStream(stagingFile)) {
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                checksum.update(buffer, 0, read);
+                if (digest != null) {
+                    digest.update(buffer, 0, read);
+                }
+                remaining -= read;
+            }
+        }
+        if (remaining > 0 || checksum.getValue() != status.getTransferChecksum()) {
+            logger.warn("Staging file " + stagingFile + " doesn't match saved progress, transfer is started over");
+            checksum.reset();
+            if (digest != null) {
+                digest.reset();
+            }
+            return 0L;
+        }
+        return status.getTransferredBytes();
+    }
+
+    private String generateLocalFileName(String remoteFileName) {
+        Expression expression = this.localFilenameGeneratorExpression;
+        if (expression != null) {
+            return expression.getValue(getEvaluationContext(), remoteFileName, String.class);
+        }
+        return remoteFileName;
+    }
+
+    private EvaluationContext getEvaluationContext() {
+        if (this.evaluationContext == null) {
+            this.evaluationContext = ExpressionUtils.createStandardEvaluationContext(this.beanFactory);
+        }
+        return this.evaluationContext;
     }
 
     @Override
@@ -53,8 +765,207 @@ public class FtpExtendedInboundFileSynchronizer extends AbstractInboundFileSynch
         return file.getTimestamp().getTimeInMillis();
     }
 
+    @Override
+    public void setRemoteDirectory(String remoteDirectory) {
+        setRemoteDirectoryExpression(new LiteralExpression(remoteDirectory));
+    }
+
+    @Override
+    public void setRemoteDirectoryExpression(Expression remoteDirectoryExpression) {
+        super.setRemoteDirectoryExpression(remoteDirectoryExpression);
+        this.remoteDirectoryExpression = remoteDirectoryExpression;
+    }
+
+    @Override
+    public void setIntegrationEvaluationContext(EvaluationContext evaluationContext) {
+        super.setIntegrationEvaluationContext(evaluationContext);
+        this.evaluationContext = evaluationContext;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        super.setBeanFactory(beanFactory);
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    protected void doInit() {
+        super.doInit();
+        getEvaluationContext();
+    }
+
+    @Override
+    public void setRemoteFileSeparator(String remoteFileSeparator) {
+        super.setRemoteFileSeparator(remoteFileSeparator);
+        this.remoteFileSeparator = remoteFileSeparator;
+    }
+
+    @Override
+    public void setLocalFilenameGeneratorExpression(Expression localFilenameGeneratorExpression) {
+        super.setLocalFilenameGeneratorExpression(localFilenameGeneratorExpression);
+        this.localFilenameGeneratorExpression = localFilenameGeneratorExpression;
+    }
+
+    @Override
+    public void setDeleteRemoteFiles(boolean deleteRemoteFiles) {
+        super.setDeleteRemoteFiles(deleteRemoteFiles);
+        this.deleteRemoteFiles = deleteRemoteFiles;
+    }
+
+    @Override
+    public void setPreserveTimestamp(boolean preserveTimestamp) {
+        super.setPreserveTimestamp(preserveTimestamp);
+        this.preserveTimestamp = preserveTimestamp;
+    }
+
+    /**
+     * Enable resumable transfers, requires commitable filter that is {@link TransferProgressTracker}.
+     *
+     * @param resumableTransfers true to save progress and resume interrupted transfers.
+     */
+    public void setResumableTransfers(boolean resumableTransfers) {
+        this.resumableTransfers = resumableTransfers;
+    }
+
+    /**
+     * Number of bytes after which transfer progress is saved, 16MB by default. Smaller interval means less data
+     * to transfer again after failover, but more updates of metadata store.
+     *
+     * @param progressIntervalBytes number of bytes.
+     */
+    public void setProgressIntervalBytes(long progressIntervalBytes) {
+        Assert.isTrue(progressIntervalBytes > 0, "'progressIntervalBytes' must be greater than 0");
+        this.progressIntervalBytes = progressIntervalBytes;
+    }
+
+    /**
+     * Directory for partially transferred files. To resume transfer on another node after failover it must be
+     * shared by all nodes (e.g. network file system) and leases should be enabled in the filter, so two nodes
+     * never write the same staging file. By default local directory is used and only transfers retried by the
+     * same node are resumed.
+     *
+     * @param stagingDirectory directory for staging files.
+     */
+    public void setStagingDirectory(File stagingDirectory) {
+        this.stagingDirectory = stagingDirectory;
+    }
+
+    /**
+     * Compute digest of each downloaded file while it's written and save it with file size in status of the file
+     * on commit (requires commitable filter that supports it, e.g.
+     * {@link AbstractPersistentAcceptOnceRetriableFileListFilter}). Digest is saved as lowercase hex string.
+     *
+     * @param digestAlgorithm name of {@link MessageDigest} algorithm (e.g. {@code SHA-256}) or {@code null}
+     *                        to disable.
+     */
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        if (digestAlgorithm != null) {
+            try {
+                MessageDigest.getInstance(digestAlgorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unsupported digest algorithm: " + digestAlgorithm, e);
+            }
+        }
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * Size of direct buffer used to write files through {@link FileChannel}, 1MB by default. Each download
+     * thread allocates its own buffer.
+     *
+     * @param transferBufferSize size in bytes.
+     */
+    public void setTransferBufferSize(int transferBufferSize) {
+        Assert.isTrue(transferBufferSize > 0, "'transferBufferSize' must be greater than 0");
+        this.transferBufferSize = transferBufferSize;
+    }
+
+    /**
+     * Enable parallel downloads: each accepted file is downloaded by a task of the executor in a separate session.
+     * Number of concurrent transfers is limited by the executor and by {@link SessionFactory}, so it's recommended
+     * to use {@link CachingSessionFactory} with session cache size equal to number of executor threads.
+     *
+     * @param downloadExecutor executor for transfers or {@code null} to download files one by one in single session.
+     */
+    public void setDownloadExecutor(Executor downloadExecutor) {
+        this.downloadExecutor = downloadExecutor;
+    }
+
+    /**
+     * Enable incremental listing: processed files which size and modification time did not change are not passed
+     * to the filter.
+     *
+     * @param listingSnapshot snapshot of processed files or {@code null} to pass whole listing to the filter.
+     */
+    public void setListingSnapshot(FtpListingSnapshot listingSnapshot) {
+        this.listingSnapshot = listingSnapshot;
+    }
+
+    /**
+     * Use MLSD command instead of LIST if server supports it (checked with FEAT). MLSD output has fixed format
+     * and exact modification times, so it's cheaper to parse and gives stable fingerprints for listing snapshot.
+     *
+     * @param useMlsd true to use MLSD.
+     */
+    public void setUseMlsd(boolean useMlsd) {
+        this.useMlsd = useMlsd;
+    }
+
+    /**
+     * Serve one more remote directory with this synchronizer, see class description. Remote directory set by
+     * {@link #setRemoteDirectory(String)} and filter set by {@link #setFilter} are not used when there are remote
+     * directories.
+     *
+     * @param remoteDirectory remote directory with its filter and quota.
+     */
+    public void addRemoteDirectory(FtpRemoteDirectory remoteDirectory) {
+        Assert.notNull(remoteDirectory, "'remoteDirectory' cannot be null");
+        Assert.isTrue(remoteDirectoriesByPath.putIfAbsent(remoteDirectory.getPath(), remoteDirectory) == null,
+                "Remote directory '" + remoteDirectory.getPath() + "' is already added");
+        remoteDirectories.add(remoteDirectory);
+    }
+
+    public List<FtpRemoteDirectory> getRemoteDirectories() {
+        return Collections.unmodifiableList(remoteDirectories);
+    }
+
+    /**
+     * Max number of files accepted from all {@link #addRemoteDirectory(FtpRemoteDirectory) remote directories}
+     * by one poll, not limited by default. Directories that didn't get their turn because the budget was used
+     * are served first by the next poll.
+     *
+     * @param maxFilesPerPoll number of files.
+     */
+    public void setMaxFilesPerPoll(int maxFilesPerPoll) {
+        Assert.isTrue(maxFilesPerPoll > 0, "'maxFilesPerPoll' must be greater than 0");
+        this.maxFilesPerPoll = maxFilesPerPoll;
+    }
+
+    /**
+     * Result of completed transfer.
+     */
+    private static final class Transfer {
+
+        private final long bytes;
+
+        private final String digest;
+
+        private Transfer(long bytes, String digest) {
+            this.bytes = bytes;
+            this.digest = digest;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
     public void setCommitableFilter(CommitableFilter<FTPFile> commitableFilter) {
         this.commitableFilter = commitableFilter;
+        this.progressTracker = commitableFilter instanceof TransferProgressTracker
+                ? (TransferProgressTracker<FTPFile>) commitableFilter : null;
+    }
+
+    public void setMetrics(FileProcessingMetrics metrics) {
+        Assert.notNull(metrics, "'metrics' cannot be null");
+        this.metrics = metrics;
     }
 
 }
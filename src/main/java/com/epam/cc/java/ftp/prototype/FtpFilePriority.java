@@ -0,0 +1,42 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+
+import java.util.Calendar;
+import java.util.Comparator;
+
+/**
+ * Priorities of remote files for
+ * {@link AbstractPersistentAcceptOnceRetriableFileListFilter#setPriorityComparator(Comparator)}, based only on
+ * listing, so ordering costs no requests to the server or metadata store.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public enum FtpFilePriority implements Comparator<FTPFile> {
+
+    /**
+     * Files with the oldest modification time first, so old files are not starved by new ones. Files without
+     * timestamp go last.
+     */
+    OLDEST_FIRST {
+        @Override
+        public int compare(FTPFile file1, FTPFile file2) {
+            return Long.compare(timestamp(file1), timestamp(file2));
+        }
+    },
+
+    /**
+     * Smallest files first, so a few huge files do not hold the whole poll.
+     */
+    SMALLEST_FIRST {
+        @Override
+        public int compare(FTPFile file1, FTPFile file2) {
+            return Long.compare(file1.getSize(), file2.getSize());
+        }
+    };
+
+    private static long timestamp(FTPFile file) {
+        Calendar timestamp = file.getTimestamp();
+        return timestamp != null ? timestamp.getTimeInMillis() : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,435 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.util.Assert;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Snapshot of processed entries of remote directories shared by all processes through metadata store. Entry is
+ * recorded with its size and modification time when file is committed, so on next polls unchanged processed files
+ * are dropped from listing before they reach the filter. New, changed and not yet committed (e.g. in progress
+ * by another process) files are always passed to the filter, so retry and failover are not affected.
+ * <p>
+ * Snapshot of a directory is stored as a log of numbered change sets: each {@link #persist} writes only entries
+ * that changed since the snapshot it has seen (and names that disappeared from listing) under the next number with
+ * {@link ConcurrentMetadataStore#putIfAbsent}, so concurrent writers never overwrite each other, and advances
+ * the pointer key to this number. Each poll reads only the pointer, change sets are read only if another process
+ * wrote them. Every {@link #setCompactionInterval(int) compactionInterval} change sets the writer saves full base
+ * snapshot and removes change sets included in it; process that is behind the base reads the base instead.
+ * Change sets and bases left by a process that crashed in between are removed by
+ * {@link MetadataRetentionSweeper#addListingSnapshot(FtpListingSnapshot)}.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class FtpListingSnapshot {
+
+    private static final char FIELD_SEPARATOR = '/';
+
+    private static final char ENTRY_SEPARATOR = '\n';
+
+    private static final char KEY_SEPARATOR = '@';
+
+    private static final String BASE = "base";
+
+    private final ConcurrentMetadataStore store;
+
+    private final String keyPrefix;
+
+    private final Flushable flushableStore;
+
+    private volatile boolean flushOnUpdate;
+
+    private volatile int compactionInterval = 100;
+
+    private final ConcurrentMap<String, DirectoryState> directories = new ConcurrentHashMap<String, DirectoryState>();
+
+    public FtpListingSnapshot(ConcurrentMetadataStore store) {
+        this(store, "listingSnapshot-");
+    }
+
+    public FtpListingSnapshot(ConcurrentMetadataStore store, String keyPrefix) {
+        Assert.notNull(store, "'store' cannot be null");
+        Assert.notNull(keyPrefix, "'keyPrefix' cannot be null");
+        this.store = store;
+        this.keyPrefix = keyPrefix;
+        this.flushableStore = store instanceof Flushable ? (Flushable) store : null;
+    }
+
+    /**
+     * Drop processed files that were not changed since they were processed.
+     *
+     * @param remoteDirectory remote directory.
+     * @param files           full listing of the directory.
+     * @return new or changed files in listing order.
+     */
+    public List<FTPFile> changedFiles(String remoteDirectory, FTPFile[] files) {
+        DirectoryState state = state(remoteDirectory);
+        Map<String, String> processed = currentEntries(remoteDirectory, state);
+
+        List<FTPFile> changed = new ArrayList<FTPFile>(files.length);
+        for (FTPFile file : files) {
+            String fingerprint = fingerprint(file);
+            if (!fingerprint.equals(processed.get(file.getName()))
+                    && !fingerprint.equals(state.pending.get(file.getName()))) {
+                changed.add(file);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Remember that file was processed, it's saved to metadata store by next {@link #persist}.
+     *
+     * @param remoteDirectory remote directory.
+     * @param file            processed file.
+     */
+    public void recordProcessed(String remoteDirectory, FTPFile file) {
+        if (file.getName().indexOf(ENTRY_SEPARATOR) < 0) {
+            state(remoteDirectory).pending.put(file.getName(), fingerprint(file));
+        }
+    }
+
+    /**
+     * Save processed files recorded since last call as a change set of snapshot stored in metadata store. Entries
+     * of files that are not in listing anymore are removed by the same change set.
+     *
+     * @param remoteDirectory remote directory.
+     * @param files           full listing of the directory.
+     */
+    public void persist(String remoteDirectory, FTPFile[] files) {
+        DirectoryState state = state(remoteDirectory);
+        if (state.pending.isEmpty()) {
+            return;
+        }
+        Map<String, String> pending = new HashMap<String, String>(state.pending);
+        Set<String> names = new HashSet<String>();
+        for (FTPFile file : files) {
+            names.add(file.getName());
+        }
+
+        while (true) {
+            // change sets written by others after the pointer are read as well
+            Snapshot current = catchUp(remoteDirectory, state.snapshot, Long.MAX_VALUE);
+            state.snapshot = current;
+
+            Map<String, String> changes = new HashMap<String, String>();
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                if (names.contains(entry.getKey()) && !entry.getValue().equals(current.entries.get(entry.getKey()))) {
+                    changes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (String name : current.entries.keySet()) {
+                if (!names.contains(name)) {
+                    changes.put(name, "");
+                }
+            }
+
+            if (!changes.isEmpty()) {
+                long sequence = current.sequence + 1;
+                if (store.putIfAbsent(changeSetKey(remoteDirectory, sequence), serialize(changes)) != null) {
+                    // another process wrote this change set first
+                    continue;
+                }
+                current = new Snapshot(sequence, apply(current.entries, changes));
+                state.snapshot = current;
+                advancePointer(remoteDirectory, sequence);
+                if (sequence % compactionInterval == 0) {
+                    compact(remoteDirectory, current);
+                }
+            }
+
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                state.pending.remove(entry.getKey(), entry.getValue());
+            }
+            if (!changes.isEmpty()) {
+                flushIfNeeded();
+            }
+            return;
+        }
+    }
+
+    /**
+     * Check if key is a change set or base of directory snapshot that is already included in current base, e.g.
+     * left by a process that crashed while compacting the snapshot.
+     *
+     * @param key key in metadata store.
+     * @return true if key may be removed.
+     */
+    public boolean isStale(String key) {
+        int separator = key.lastIndexOf(KEY_SEPARATOR);
+        if (!key.startsWith(keyPrefix) || separator < keyPrefix.length()) {
+            return false;
+        }
+        String suffix = key.substring(separator + 1);
+        boolean base = suffix.startsWith(BASE + '-');
+        long sequence = parseSequence(base ? suffix.substring(BASE.length() + 1) : suffix);
+        if (sequence <= 0) {
+            // pointer to base or unknown format (e.g. '@' in name of directory)
+            return false;
+        }
+        long baseSequence = parseSequence(store.get(key.substring(0, separator + 1) + BASE));
+        return base ? sequence < baseSequence : sequence <= baseSequence;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * Determine whether the metadataStore should be flushed on each update (if {@link Flushable}).
+     *
+     * @param flushOnUpdate true to flush.
+     */
+    public void setFlushOnUpdate(boolean flushOnUpdate) {
+        this.flushOnUpdate = flushOnUpdate;
+    }
+
+    /**
+     * Number of change sets after which full snapshot of directory is saved and change sets are removed, 100 by
+     * default. Bigger interval means less writes of full snapshot, but more reads for a process that starts.
+     *
+     * @param compactionInterval number of change sets.
+     */
+    public void setCompactionInterval(int compactionInterval) {
+        Assert.isTrue(compactionInterval > 0, "'compactionInterval' must be greater than 0");
+        this.compactionInterval = compactionInterval;
+    }
+
+    private Map<String, String> currentEntries(String remoteDirectory, DirectoryState state) {
+        long pointer = parseSequence(store.get(keyPrefix + remoteDirectory));
+        Snapshot current = state.snapshot;
+        if (pointer == current.sequence) {
+            return current.entries;
+        }
+        if (pointer < current.sequence) {
+            // snapshot was removed from store
+            current = Snapshot.EMPTY;
+        }
+        current = catchUp(remoteDirectory, current, pointer);
+        state.snapshot = current;
+        return current.entries;
+    }
+
+    /**
+     * Apply change sets written after the snapshot, starting from base if change sets were already compacted.
+     *
+     * @param pointer last sequence known to exist, change sets after it are read while they exist.
+     */
+    private Snapshot catchUp(String remoteDirectory, Snapshot snapshot, long pointer) {
+        Map<String, String> entries = null;
+        long sequence = snapshot.sequence;
+        while (true) {
+            String changes = store.get(changeSetKey(remoteDirectory, sequence + 1));
+            if (changes != null) {
+                if (entries == null) {
+                    entries = new HashMap<String, String>(snapshot.entries);
+                }
+                applyTo(entries, deserialize(changes));
+                sequence++;
+                continue;
+            }
+            if (sequence >= pointer) {
+                break;
+            }
+            long baseSequence = parseSequence(store.get(baseKey(remoteDirectory)));
+            if (pointer == Long.MAX_VALUE && baseSequence <= sequence) {
+                // the last change set is read
+                break;
+            }
+            String base = baseSequence > sequence ? store.get(baseKey(remoteDirectory) + '-' + baseSequence) : null;
+            if (base == null) {
+                // data is lost - continue after it, lost entries are passed to the filter again
+                sequence = Math.max(baseSequence, pointer != Long.MAX_VALUE ? pointer : sequence);
+                break;
+            }
+            entries = deserialize(base);
+            sequence = baseSequence;
+        }
+        if (entries == null && sequence == snapshot.sequence) {
+            return snapshot;
+        }
+        return new Snapshot(sequence,
+                Collections.unmodifiableMap(entries != null ? entries : snapshot.entries));
+    }
+
+    private void advancePointer(String remoteDirectory, long sequence) {
+        String pointerKey = keyPrefix + remoteDirectory;
+        while (true) {
+            String pointer = store.get(pointerKey);
+            if (pointer == null) {
+                if (store.putIfAbsent(pointerKey, String.valueOf(sequence)) == null) {
+                    return;
+                }
+            } else if (parseSequence(pointer) >= sequence
+                    || store.replace(pointerKey, pointer, String.valueOf(sequence))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Save full snapshot as base, then remove previous base and change sets included in the new one.
+     */
+    private void compact(String remoteDirectory, Snapshot snapshot) {
+        String baseKey = baseKey(remoteDirectory);
+        store.put(baseKey + '-' + snapshot.sequence, serialize(snapshot.entries));
+        long previous;
+        while (true) {
+            String value = store.get(baseKey);
+            previous = parseSequence(value);
+            if (previous >= snapshot.sequence) {
+                // newer base is already saved
+                store.remove(baseKey + '-' + snapshot.sequence);
+                return;
+            }
+            boolean swapped = value == null
+                    ? store.putIfAbsent(baseKey, String.valueOf(snapshot.sequence)) == null
+                    : store.replace(baseKey, value, String.valueOf(snapshot.sequence));
+            if (swapped) {
+                break;
+            }
+        }
+        if (previous > 0) {
+            store.remove(baseKey + '-' + previous);
+        }
+        for (long sequence = snapshot.sequence; sequence > previous; sequence--) {
+            store.remove(changeSetKey(remoteDirectory, sequence));
+        }
+    }
+
+    private DirectoryState state(String remoteDirectory) {
+        DirectoryState state = directories.get(remoteDirectory);
+        if (state == null) {
+            DirectoryState newState = new DirectoryState();
+            state = directories.putIfAbsent(remoteDirectory, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    private String changeSetKey(String remoteDirectory, long sequence) {
+        return keyPrefix + remoteDirectory + KEY_SEPARATOR + sequence;
+    }
+
+    private String baseKey(String remoteDirectory) {
+        return keyPrefix + remoteDirectory + KEY_SEPARATOR + BASE;
+    }
+
+    /**
+     * @return sequence or 0 if value is absent or has unknown format.
+     */
+    private static long parseSequence(String value) {
+        if (value == null || value.isEmpty() || value.length() > 18) {
+            return 0L;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return 0L;
+            }
+        }
+        return Long.parseLong(value);
+    }
+
+    private static Map<String, String> apply(Map<String, String> entries, Map<String, String> changes) {
+        Map<String, String> applied = new HashMap<String, String>(entries);
+        applyTo(applied, changes);
+        return Collections.unmodifiableMap(applied);
+    }
+
+    /**
+     * Empty fingerprint in change set means the entry was removed.
+     */
+    private static void applyTo(Map<String, String> entries, Map<String, String> changes) {
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue().isEmpty()) {
+                entries.remove(change.getKey());
+            } else {
+                entries.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    private void flushIfNeeded() {
+        if (flushOnUpdate && flushableStore != null) {
+            try {
+                flushableStore.flush();
+            } catch (IOException e) {
+                // store's responsibility to log
+            }
+        }
+    }
+
+    static String fingerprint(FTPFile file) {
+        long timestamp = file.getTimestamp() != null ? file.getTimestamp().getTimeInMillis() : -1L;
+        return file.getSize() + "@" + timestamp;
+    }
+
+    /**
+     * Entries are written as {@code fingerprint/name} lines, '/' is never part of file name.
+     */
+    private static String serialize(Map<String, String> entries) {
+        StringBuilder value = new StringBuilder(entries.size() * 48);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            value.append(entry.getValue()).append(FIELD_SEPARATOR).append(entry.getKey()).append(ENTRY_SEPARATOR);
+        }
+        return value.toString();
+    }
+
+    private static Map<String, String> deserialize(String value) {
+        Map<String, String> entries = new HashMap<String, String>();
+        int start = 0;
+        while (start < value.length()) {
+            int end = value.indexOf(ENTRY_SEPARATOR, start);
+            if (end < 0) {
+                end = value.length();
+            }
+            int separator = value.indexOf(FIELD_SEPARATOR, start);
+            if (separator >= start && separator < end) {
+                entries.put(value.substring(separator + 1, end), value.substring(start, separator));
+            }
+            start = end + 1;
+        }
+        return entries;
+    }
+
+    /**
+     * Immutable snapshot of a directory with sequence of the last change set included in it.
+     */
+    private static final class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(0L, Collections.<String, String>emptyMap());
+
+        private final long sequence;
+
+        private final Map<String, String> entries;
+
+        private Snapshot(long sequence, Map<String, String> entries) {
+            this.sequence = sequence;
+            this.entries = entries;
+        }
+    }
+
+    private static final class DirectoryState {
+
+        private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+        /**
+         * Files processed by this process and not saved to metadata store yet.
+         */
+        private final ConcurrentMap<String, String> pending = new ConcurrentHashMap<String, String>();
+    }
+}
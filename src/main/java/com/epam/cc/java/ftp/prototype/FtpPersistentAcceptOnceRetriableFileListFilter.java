@@ -3,20 +3,81 @@ package com.epam.cc.java.ftp.prototype;
 import org.apache.commons.net.ftp.FTPFile;
 import org.springframework.integration.metadata.ConcurrentMetadataStore;
 
+import java.util.Calendar;
+
 /**
  * Implementation for {link FTPFile} filter.
  * <p>
+ * With {@link #setFingerprintKeys(boolean) fingerprint keys} size and modification date reported by listing are
+ * part of the key, so re-uploaded file with new content is processed as a new version while unchanged file stays
+ * skipped.
+ * <p>
  * Created by minim on 9/15/16.
  */
 public class FtpPersistentAcceptOnceRetriableFileListFilter extends AbstractPersistentAcceptOnceRetriableFileListFilter<FTPFile> {
 
+    private volatile boolean fingerprintKeys;
+
     public FtpPersistentAcceptOnceRetriableFileListFilter(ConcurrentMetadataStore store, String prefix) {
         super(store, prefix);
     }
 
     @Override
     protected String fileName(FTPFile file) {
-        return file.getName();
+        return versionedName(file);
+    }
+
+    /**
+     * Name of the file as it's used in key (without prefix): file name or, with fingerprint keys,
+     * {@code name/size@yyyyMMdd} ('/' is never part of file name). Can be used to build listing for
+     * {@link MetadataRetentionSweeper}, so records of previous versions are removed as disappeared.
+     *
+     * @param file remote file.
+     * @return name used in key.
+     */
+    public String versionedName(FTPFile file) {
+        if (!fingerprintKeys) {
+            return file.getName();
+        }
+        StringBuilder name = new StringBuilder(file.getName().length() + 32);
+        name.append(file.getName()).append('/').append(file.getSize());
+        Calendar timestamp = file.getTimestamp();
+        if (timestamp != null) {
+            name.append('@');
+            appendPadded(name, timestamp.get(Calendar.YEAR), 4);
+            appendPadded(name, timestamp.get(Calendar.MONTH) + 1, 2);
+            appendPadded(name, timestamp.get(Calendar.DAY_OF_MONTH), 2);
+        }
+        return name.toString();
+    }
+
+    private static void appendPadded(StringBuilder builder, int value, int width) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        builder.append(value);
+    }
+
+    /**
+     * Include size and modification date of the file in its key, so changed file is accepted again. Costs nothing
+     * on the wire, both are part of listing.
+     * <p>
+     * Modification time is normalized to date in time zone of the listing: LIST reports minutes for files younger
+     * than about 6 months and date only for older files, so exact time would change the key of an unchanged file
+     * when it gets older and the file would be processed again. As a consequence re-upload with the same size on
+     * the same day is not detected. Keys don't depend on listing command, so LIST and MLSD (see
+     * {@link FtpExtendedInboundFileSynchronizer#setUseMlsd(boolean)}) can be switched without reprocessing, as long as
+     * both report the same time zone.
+     * <p>
+     * Keys are changed, so enabling it on existing metadata store makes files that are still in remote directory
+     * new for the filter.
+     *
+     * @param fingerprintKeys true to include fingerprint in keys.
+     */
+    public void setFingerprintKeys(boolean fingerprintKeys) {
+        this.fingerprintKeys = fingerprintKeys;
     }
 
 }
@@ -0,0 +1,78 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.springframework.util.Assert;
+
+/**
+ * Remote directory served by {@link FtpExtendedInboundFileSynchronizer} together with other directories
+ * (see {@link FtpExtendedInboundFileSynchronizer#addRemoteDirectory(FtpRemoteDirectory)}). Each directory has
+ * its own filter, so its files are tracked under its own key prefix, and its own quota: max number of files
+ * accepted from the directory per turn, directories with bigger quota get proportionally bigger share of
+ * the synchronizer when all of them have backlog.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class FtpRemoteDirectory {
+
+    private final String path;
+
+    private final CommitableFilter<FTPFile> filter;
+
+    private volatile int quota = 10;
+
+    private volatile String localSubdirectory;
+
+    /**
+     * Files this directory may still accept on its next turn because its previous turn was cut by budget of
+     * the poll, guarded by the synchronizer.
+     */
+    int credit;
+
+    /**
+     * @param path   path of remote directory.
+     * @param filter filter of files of the directory, e.g. {@link FtpPersistentAcceptOnceRetriableFileListFilter}
+     *               with prefix unique for the directory.
+     */
+    public FtpRemoteDirectory(String path, CommitableFilter<FTPFile> filter) {
+        Assert.hasText(path, "'path' must not be empty");
+        Assert.notNull(filter, "'filter' cannot be null");
+        this.path = path;
+        this.filter = filter;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public CommitableFilter<FTPFile> getFilter() {
+        return filter;
+    }
+
+    public int getQuota() {
+        return quota;
+    }
+
+    /**
+     * Max number of files accepted from the directory per turn, 10 by default.
+     *
+     * @param quota number of files.
+     */
+    public void setQuota(int quota) {
+        Assert.isTrue(quota > 0, "'quota' must be greater than 0");
+        this.quota = quota;
+    }
+
+    public String getLocalSubdirectory() {
+        return localSubdirectory;
+    }
+
+    /**
+     * Subdirectory of local directory for files of this directory, so files with the same name from different
+     * directories don't collide. By default files are written to local directory itself.
+     *
+     * @param localSubdirectory name of subdirectory.
+     */
+    public void setLocalSubdirectory(String localSubdirectory) {
+        this.localSubdirectory = localSubdirectory;
+    }
+}
@@ -0,0 +1,111 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.springframework.context.Lifecycle;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.endpoint.AbstractMessageSource;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Message source that emits content of remote files as {@link RemoteFileInputStream} without writing them
+ * to local directory. Remote directory, session factory and {@link CommitableFilter} are taken from
+ * {@link FtpExtendedInboundFileSynchronizer}: files claimed by a listing are emitted one per message.
+ * <p>
+ * File is committed by {@link StreamingTransactionSynchronizationProcessor} when transaction of the poller commits
+ * and the stream was read to the end, so the poller must be transactional ({@code PseudoTransactionManager} is
+ * enough). Otherwise file is rolled back and may be retried. Files claimed but not emitted yet are rolled back
+ * when the source is stopped (together with its channel adapter), so other nodes don't wait for their timeout.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class FtpStreamingInboundMessageSource extends AbstractMessageSource<InputStream> implements Lifecycle {
+
+    private final FtpExtendedInboundFileSynchronizer synchronizer;
+
+    private final Queue<PendingFile> toBeReceived = new ConcurrentLinkedQueue<PendingFile>();
+
+    private volatile boolean running;
+
+    public FtpStreamingInboundMessageSource(FtpExtendedInboundFileSynchronizer synchronizer) {
+        Assert.notNull(synchronizer, "'synchronizer' cannot be null");
+        this.synchronizer = synchronizer;
+    }
+
+    @Override
+    public String getComponentType() {
+        return "ftp:extended-streaming-inbound-channel-adapter";
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Roll back files that were claimed but not emitted.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        PendingFile pending;
+        while ((pending = toBeReceived.poll()) != null) {
+            synchronizer.rollback(pending.remoteDirectory, pending.file);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    protected Object doReceive() {
+        PendingFile pending = toBeReceived.poll();
+        if (pending == null) {
+            String remoteDirectory = synchronizer.evaluateRemoteDirectory();
+            for (FTPFile file : synchronizer.listAcceptedFiles(remoteDirectory)) {
+                toBeReceived.add(new PendingFile(remoteDirectory, file));
+            }
+            pending = toBeReceived.poll();
+            if (pending == null) {
+                return null;
+            }
+        }
+
+        RemoteFileInputStream stream;
+        try {
+            stream = synchronizer.openStream(pending.remoteDirectory, pending.file);
+        } catch (IOException | RuntimeException e) {
+            synchronizer.rollback(pending.remoteDirectory, pending.file);
+            throw new MessagingException("Failed to open stream of remote file " + pending.file.getName(), e);
+        }
+
+        return getMessageBuilderFactory().withPayload((InputStream) stream)
+                                         .setHeader(FileHeaders.REMOTE_DIRECTORY, pending.remoteDirectory)
+                                         .setHeader(FileHeaders.REMOTE_FILE, pending.file.getName())
+                                         .setHeader(IntegrationMessageHeaderAccessor.CLOSEABLE_RESOURCE, stream)
+                                         .build();
+    }
+
+    /**
+     * Claimed file that was not emitted yet.
+     */
+    private static final class PendingFile {
+
+        private final String remoteDirectory;
+
+        private final FTPFile file;
+
+        private PendingFile(String remoteDirectory, FTPFile file) {
+            this.remoteDirectory = remoteDirectory;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Groups commits of many threads into batches written by a single call of the writer. Committing thread is
+ * blocked until its commit is written, so it is acknowledged only when it is durable, but waits at most
+ * {@code maxDelay} for other commits to join the batch: after the delay or when {@code maxBatchSize} commits are
+ * pending, the thread writes all pending commits itself.
+ * <p>
+ * There is no background thread: batches are written by committing threads under a lock, one batch at a time.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class GroupCommitter<T> {
+
+    private final Consumer<List<T>> writer;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayMillis;
+
+    private final Queue<PendingCommit<T>> pending = new ConcurrentLinkedQueue<PendingCommit<T>>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final Lock writeLock = new ReentrantLock();
+
+    /**
+     * @param writer         writes a batch of commits, throws exception if batch is not written.
+     * @param maxBatchSize   max number of commits passed to the writer at once.
+     * @param maxDelayMillis max time a commit waits for other commits before it is written.
+     */
+    public GroupCommitter(Consumer<List<T>> writer, int maxBatchSize, long maxDelayMillis) {
+        Assert.notNull(writer, "'writer' cannot be null");
+        Assert.isTrue(maxBatchSize > 0, "'maxBatchSize' must be greater than 0");
+        Assert.isTrue(maxDelayMillis >= 0, "'maxDelayMillis' must not be negative");
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Commit item as part of a batch, returns when the batch is written.
+     *
+     * @param item item to commit.
+     * @throws RuntimeException exception of the writer if batch with the item was not written.
+     */
+    public void commit(T item) {
+        PendingCommit<T> commit = new PendingCommit<T>(item);
+        pending.add(commit);
+        if (pendingCount.incrementAndGet() >= maxBatchSize) {
+            writePending();
+        }
+
+        boolean written;
+        try {
+            written = commit.written.await(maxDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            written = false;
+        }
+        if (!written) {
+            // nobody has written the batch in time - write it ourselves
+            writePending();
+        }
+
+        if (commit.failure != null) {
+            throw commit.failure;
+        }
+    }
+
+    /**
+     * Write all pending commits. When it returns, every commit added before the call is written or failed.
+     */
+    private void writePending() {
+        writeLock.lock();
+        try {
+            while (true) {
+                List<PendingCommit<T>> batch = new ArrayList<PendingCommit<T>>(maxBatchSize);
+                PendingCommit<T> commit;
+                while (batch.size() < maxBatchSize && (commit = pending.poll()) != null) {
+                    batch.add(commit);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                pendingCount.addAndGet(-batch.size());
+                write(batch);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write(List<PendingCommit<T>> batch) {
+        List<T> items = new ArrayList<T>(batch.size());
+        for (PendingCommit<T> commit : batch) {
+            items.add(commit.item);
+        }
+
+        RuntimeException failure = null;
+        try {
+            writer.accept(items);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        for (PendingCommit<T> commit : batch) {
+            commit.failure = failure;
+            commit.written.countDown();
+        }
+    }
+
+    private static final class PendingCommit<T> {
+
+        private final T item;
+
+        private final CountDownLatch written = new CountDownLatch(1);
+
+        /**
+         * Published by {@link #written} latch.
+         */
+        private RuntimeException failure;
+
+        private PendingCommit(T item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,762 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded {@link ConcurrentMetadataStore} for single node deployments, where a shared store is not needed and
+ * network round trip of each filter decision is not wanted.
+ * <p>
+ * Every update is appended to a log file that is memory-mapped in chunks of {@code chunkSize} bytes, so write is
+ * a memory copy. Keys are located with off-heap hash index that keeps only hash and log offset of each key, values
+ * are read from the log. Index is split into stripes, each with its own lock: {@link #putIfAbsent},
+ * {@link #replace} and {@link #remove} are atomic per key and updates of keys in different stripes are done in
+ * parallel, only copying of record bytes to the log is serialized.
+ * <p>
+ * Records are protected by CRC32. On open the log is replayed to rebuild the index, and replay stops at first
+ * incomplete or corrupted record, which may be the tail written before crash. Written records survive crash of
+ * the process (they are in page cache), {@link #flush()} forces them to disk to survive crash of the machine, so
+ * durability is controlled with {@code flushOnUpdate} of the filters.
+ * <p>
+ * Log grows with every update, {@link #compactIfNeeded()} should be called periodically to rewrite it with live
+ * records only when ratio of garbage exceeds {@link #setCompactionGarbageRatio(double)}. Compaction blocks all
+ * operations while it runs.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class MappedFileMetadataStore implements ConcurrentMetadataStore, Flushable, Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(MappedFileMetadataStore.class);
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    private static final byte PADDING = 3;
+
+    /**
+     * Record is {@code length:int crc:int type:byte keyLength:int key value}, crc covers everything after it.
+     */
+    private static final int HEADER_SIZE = 13;
+
+    private static final int CRC_OFFSET = 4;
+
+    private static final int TYPE_OFFSET = 8;
+
+    private static final int KEY_LENGTH_OFFSET = 9;
+
+    private static final int STRIPES = 64;
+
+    /**
+     * Index slot is {@code fingerprint:int offset:long}, fingerprint 0 means empty slot.
+     */
+    private static final int SLOT_SIZE = 12;
+
+    private static final int INITIAL_SLOTS = 256;
+
+    private static final long TOMBSTONE = -1L;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final File file;
+
+    private final int chunkSize;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * Serializes flushes, so flush returns only after chunks taken by a concurrent flush are forced as well.
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private RandomAccessFile randomAccessFile;
+
+    private volatile MappedByteBuffer[] chunks;
+
+    private volatile long writePosition;
+
+    /**
+     * First chunk with records that were not forced to disk yet, guarded by {@link #appendLock}.
+     */
+    private int firstDirtyChunk;
+
+    private volatile boolean closed;
+
+    private volatile double compactionGarbageRatio = 0.5;
+
+    private volatile long compactionMinBytes = 16L * 1024 * 1024;
+
+    public MappedFileMetadataStore(File file) throws IOException {
+        this(file, 64 * 1024 * 1024);
+    }
+
+    /**
+     * @param file      log file, created if it doesn't exist.
+     * @param chunkSize size of mapped chunk, limits size of single record.
+     * @throws IOException if log cannot be opened or read.
+     */
+    public MappedFileMetadataStore(File file, int chunkSize) throws IOException {
+        Assert.notNull(file, "'file' cannot be null");
+        Assert.isTrue(chunkSize >= 4096, "'chunkSize' must be at least 4096");
+        this.file = file;
+        this.chunkSize = chunkSize;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(INITIAL_SLOTS);
+        }
+
+        File compactionFile = compactionFile();
+        if (compactionFile.exists() && !compactionFile.delete()) {
+            throw new IOException("Cannot delete unfinished compaction file " + compactionFile);
+        }
+        open();
+        recover();
+    }
+
+    @Override
+    public void put(String key, String value) {
+        Assert.notNull(key, "'key' cannot be null");
+        Assert.notNull(value, "'value' cannot be null");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = ProcessedKeysBloomFilter.hash(key);
+        Stripe stripe = stripe(hash);
+        stripe.lock.lock();
+        try {
+            checkOpen();
+            int slot = stripe.find(this, fingerprint(hash), keyBytes);
+            long offset = append(PUT, keyBytes, value.getBytes(StandardCharsets.UTF_8));
+            setLive(stripe, slot, hash, offset);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        Assert.notNull(key, "'key' cannot be null");
+        Assert.notNull(value, "'value' cannot be null");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = ProcessedKeysBloomFilter.hash(key);
+        Stripe stripe = stripe(hash);
+        stripe.lock.lock();
+        try {
+            checkOpen();
+            int slot = stripe.find(this, fingerprint(hash), keyBytes);
+            if (slot >= 0) {
+                return readValue(stripe.offset(slot));
+            }
+            long offset = append(PUT, keyBytes, value.getBytes(StandardCharsets.UTF_8));
+            setLive(stripe, slot, hash, offset);
+            return null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(String key, String oldValue, String newValue) {
+        Assert.notNull(key, "'key' cannot be null");
+        Assert.notNull(oldValue, "'oldValue' cannot be null");
+        Assert.notNull(newValue, "'newValue' cannot be null");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = ProcessedKeysBloomFilter.hash(key);
+        Stripe stripe = stripe(hash);
+        stripe.lock.lock();
+        try {
+            checkOpen();
+            int slot = stripe.find(this, fingerprint(hash), keyBytes);
+            if (slot < 0 || !oldValue.equals(readValue(stripe.offset(slot)))) {
+                return false;
+            }
+            long offset = append(PUT, keyBytes, newValue.getBytes(StandardCharsets.UTF_8));
+            setLive(stripe, slot, hash, offset);
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        Assert.notNull(key, "'key' cannot be null");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = ProcessedKeysBloomFilter.hash(key);
+        Stripe stripe = stripe(hash);
+        stripe.lock.lock();
+        try {
+            checkOpen();
+            int slot = stripe.find(this, fingerprint(hash), keyBytes);
+            return slot >= 0 ? readValue(stripe.offset(slot)) : null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public String remove(String key) {
+        Assert.notNull(key, "'key' cannot be null");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = ProcessedKeysBloomFilter.hash(key);
+        Stripe stripe = stripe(hash);
+        stripe.lock.lock();
+        try {
+            checkOpen();
+            int slot = stripe.find(this, fingerprint(hash), keyBytes);
+            if (slot < 0) {
+                return null;
+            }
+            long oldOffset = stripe.offset(slot);
+            String oldValue = readValue(oldOffset);
+            append(REMOVE, keyBytes, EMPTY);
+            liveBytes.addAndGet(-recordLength(oldOffset));
+            stripe.remove(slot);
+            return oldValue;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Force records written since previous flush to disk.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushLock.lock();
+        try {
+            MappedByteBuffer[] mapped;
+            int from;
+            int to;
+            appendLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                mapped = this.chunks;
+                from = firstDirtyChunk;
+                to = Math.min(chunkIndex(writePosition), mapped.length - 1);
+                firstDirtyChunk = to;
+            } finally {
+                appendLock.unlock();
+            }
+            // appends continue while chunks are forced
+            for (int i = from; i <= to; i++) {
+                mapped[i].force();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lockAll();
+        try {
+            if (closed) {
+                return;
+            }
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+            closed = true;
+            randomAccessFile.close();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Compact the log if it is big enough and ratio of garbage (overwritten and removed records) exceeds
+     * {@link #setCompactionGarbageRatio(double) garbage ratio}. Should be called periodically.
+     *
+     * @return true if log was compacted.
+     * @throws IOException if compaction failed, the store is still usable with old log.
+     */
+    public boolean compactIfNeeded() throws IOException {
+        long written = writePosition;
+        long garbage = written - liveBytes.get();
+        if (closed || written < compactionMinBytes || garbage <= written * compactionGarbageRatio) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    /**
+     * Rewrite the log with live records only. New log is written to a separate file and atomically replaces
+     * the old one, so crash during compaction leaves the old log intact. All operations wait for compaction.
+     *
+     * @throws IOException if compaction failed, the store is still usable with old log.
+     */
+    public void compact() throws IOException {
+        lockAll();
+        try {
+            checkOpen();
+            long oldSize = writePosition;
+            File compactionFile = compactionFile();
+            long[][] newOffsets = new long[STRIPES][];
+            long position = 0L;
+            long live = 0L;
+
+            try (RandomAccessFile output = new RandomAccessFile(compactionFile, "rw")) {
+                output.setLength(0L);
+                FileChannel channel = output.getChannel();
+                for (int s = 0; s < STRIPES; s++) {
+                    Stripe stripe = stripes[s];
+                    newOffsets[s] = new long[stripe.capacity];
+                    for (int slot = 0; slot < stripe.capacity; slot++) {
+                        long offset = stripe.liveOffset(slot);
+                        if (offset < 0) {
+                            continue;
+                        }
+                        ByteBuffer record = record(offset);
+                        int length = record.remaining();
+                        int remaining = chunkSize - (int) (position % chunkSize);
+                        if (remaining < length) {
+                            if (remaining >= HEADER_SIZE) {
+                                channel.write(padding(remaining), position);
+                            }
+                            position += remaining;
+                        }
+                        while (record.hasRemaining()) {
+                            channel.write(record, position + length - record.remaining());
+                        }
+                        newOffsets[s][slot] = position;
+                        position += length;
+                        live += length;
+                    }
+                }
+                output.setLength(Math.max(1, chunkIndex(position) + 1) * (long) chunkSize);
+                channel.force(true);
+            }
+
+            Files.move(compactionFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            randomAccessFile.close();
+            open();
+
+            for (int s = 0; s < STRIPES; s++) {
+                stripes[s].relocate(newOffsets[s]);
+            }
+            writePosition = position;
+            firstDirtyChunk = chunkIndex(position);
+            liveBytes.set(live);
+            logger.info("Metadata log {} compacted from {} to {} bytes", file, oldSize, position);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Compaction is started by {@link #compactIfNeeded()} when this part of the log is garbage, 0.5 by default.
+     *
+     * @param compactionGarbageRatio ratio between 0 and 1.
+     */
+    public void setCompactionGarbageRatio(double compactionGarbageRatio) {
+        Assert.isTrue(compactionGarbageRatio > 0 && compactionGarbageRatio < 1,
+                "'compactionGarbageRatio' must be in (0, 1)");
+        this.compactionGarbageRatio = compactionGarbageRatio;
+    }
+
+    /**
+     * Log smaller than this size is never compacted by {@link #compactIfNeeded()}, 16MB by default.
+     *
+     * @param compactionMinBytes size in bytes.
+     */
+    public void setCompactionMinBytes(long compactionMinBytes) {
+        Assert.isTrue(compactionMinBytes >= 0, "'compactionMinBytes' must not be negative");
+        this.compactionMinBytes = compactionMinBytes;
+    }
+
+    /**
+     * Map whole file, its length is always a multiple of chunk size.
+     */
+    private void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        long length = randomAccessFile.length();
+        int chunkCount = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+        if (length != chunkCount * (long) chunkSize) {
+            randomAccessFile.setLength(chunkCount * (long) chunkSize);
+        }
+        MappedByteBuffer[] mapped = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            mapped[i] = map(i);
+        }
+        chunks = mapped;
+    }
+
+    private MappedByteBuffer map(int chunkIndex) throws IOException {
+        return randomAccessFile.getChannel()
+                               .map(FileChannel.MapMode.READ_WRITE, chunkIndex * (long) chunkSize, chunkSize);
+    }
+
+    /**
+     * Replay the log to rebuild index. Everything after the last valid record is erased, so later appends never
+     * mix with remains of records that were not written completely.
+     */
+    private void recover() throws IOException {
+        MappedByteBuffer[] mapped = this.chunks;
+        long position = 0L;
+        long end = mapped.length * (long) chunkSize;
+        int records = 0;
+        boolean corrupted = false;
+        CRC32 crc = new CRC32();
+
+        while (position < end) {
+            int chunkIndex = chunkIndex(position);
+            int offset = (int) (position % chunkSize);
+            if (chunkSize - offset < HEADER_SIZE) {
+                position += chunkSize - offset;
+                continue;
+            }
+            MappedByteBuffer chunk = mapped[chunkIndex];
+            int length = chunk.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER_SIZE || length > chunkSize - offset) {
+                corrupted = true;
+                break;
+            }
+            byte type = chunk.get(offset + TYPE_OFFSET);
+            if (type == PADDING) {
+                position += length;
+                continue;
+            }
+            ByteBuffer body = chunk.duplicate();
+            body.limit(offset + length).position(offset + TYPE_OFFSET);
+            crc.reset();
+            crc.update(body);
+            int keyLength = chunk.getInt(offset + KEY_LENGTH_OFFSET);
+            if ((int) crc.getValue() != chunk.getInt(offset + CRC_OFFSET)
+                    || (type != PUT && type != REMOVE) || keyLength < 0 || keyLength > length - HEADER_SIZE) {
+                corrupted = true;
+                break;
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer keyBuffer = chunk.duplicate();
+            keyBuffer.position(offset + HEADER_SIZE);
+            keyBuffer.get(keyBytes);
+            long hash = ProcessedKeysBloomFilter.hash(new String(keyBytes, StandardCharsets.UTF_8));
+            Stripe stripe = stripe(hash);
+            int slot = stripe.find(this, fingerprint(hash), keyBytes);
+            if (type == PUT) {
+                setLive(stripe, slot, hash, position);
+            } else if (slot >= 0) {
+                liveBytes.addAndGet(-recordLength(stripe.offset(slot)));
+                stripe.remove(slot);
+            }
+            position += length;
+            records++;
+        }
+
+        if (corrupted) {
+            logger.warn("Metadata log {} has incomplete or corrupted record at {}, following data is discarded",
+                    file, position);
+        }
+        erase(position);
+        writePosition = position;
+        firstDirtyChunk = chunkIndex(position);
+        logger.info("Metadata log {} recovered: {} records, {} bytes", file, records, position);
+    }
+
+    /**
+     * Zero the rest of the chunk starting from position and cut all following chunks.
+     */
+    private void erase(long position) throws IOException {
+        MappedByteBuffer[] mapped = this.chunks;
+        int chunkIndex = Math.min(chunkIndex(position), mapped.length - 1);
+        MappedByteBuffer chunk = mapped[chunkIndex];
+        for (int i = (int) (position - chunkIndex * (long) chunkSize); i < chunkSize; i++) {
+            if (chunk.get(i) != 0) {
+                chunk.put(i, (byte) 0);
+            }
+        }
+        if (chunkIndex < mapped.length - 1) {
+            chunks = Arrays.copyOf(mapped, chunkIndex + 1);
+            randomAccessFile.setLength((chunkIndex + 1) * (long) chunkSize);
+        }
+    }
+
+    /**
+     * Append record to the log.
+     *
+     * @return offset of the record.
+     */
+    private long append(byte type, byte[] key, byte[] value) {
+        int length = HEADER_SIZE + key.length + value.length;
+        Assert.isTrue(length <= chunkSize, "Record of " + length + " bytes doesn't fit into chunk");
+
+        appendLock.lock();
+        try {
+            long position = writePosition;
+            int remaining = chunkSize - (int) (position % chunkSize);
+            if (remaining < length) {
+                if (remaining >= HEADER_SIZE) {
+                    ByteBuffer target = chunks[chunkIndex(position)].duplicate();
+                    target.position((int) (position % chunkSize));
+                    target.put(padding(remaining));
+                }
+                position += remaining;
+            }
+            int chunkIndex = chunkIndex(position);
+            if (chunkIndex >= chunks.length) {
+                extend(chunkIndex);
+            }
+
+            ByteBuffer target = chunks[chunkIndex].duplicate();
+            int offset = (int) (position % chunkSize);
+            target.position(offset + TYPE_OFFSET);
+            target.put(type).putInt(key.length).put(key).put(value);
+
+            CRC32 crc = new CRC32();
+            target.limit(offset + length).position(offset + TYPE_OFFSET);
+            crc.update(target);
+            target.putInt(offset + CRC_OFFSET, (int) crc.getValue());
+            target.putInt(offset, length);
+
+            writePosition = position + length;
+            return position;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void extend(int chunkIndex) {
+        try {
+            randomAccessFile.setLength((chunkIndex + 1) * (long) chunkSize);
+            MappedByteBuffer[] mapped = Arrays.copyOf(chunks, chunkIndex + 1);
+            for (int i = chunks.length; i <= chunkIndex; i++) {
+                mapped[i] = map(i);
+            }
+            chunks = mapped;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot extend metadata log " + file, e);
+        }
+    }
+
+    private static ByteBuffer padding(int length) {
+        ByteBuffer padding = ByteBuffer.allocate(HEADER_SIZE);
+        padding.putInt(length).putInt(0).put(PADDING).putInt(0).flip();
+        return padding;
+    }
+
+    private void setLive(Stripe stripe, int slot, long hash, long offset) {
+        if (slot >= 0) {
+            liveBytes.addAndGet(-recordLength(stripe.offset(slot)));
+            stripe.setOffset(slot, offset);
+        } else {
+            stripe.insert(fingerprint(hash), offset);
+        }
+        liveBytes.addAndGet(recordLength(offset));
+    }
+
+    /**
+     * @return bytes of the record, buffer is positioned at start of the record.
+     */
+    private ByteBuffer record(long offset) {
+        MappedByteBuffer chunk = chunks[chunkIndex(offset)];
+        int position = (int) (offset % chunkSize);
+        ByteBuffer record = chunk.duplicate();
+        record.limit(position + chunk.getInt(position)).position(position);
+        return record;
+    }
+
+    private int recordLength(long offset) {
+        return chunks[chunkIndex(offset)].getInt((int) (offset % chunkSize));
+    }
+
+    private boolean keyEquals(long offset, byte[] key) {
+        MappedByteBuffer chunk = chunks[chunkIndex(offset)];
+        int position = (int) (offset % chunkSize);
+        if (chunk.getInt(position + KEY_LENGTH_OFFSET) != key.length) {
+            return false;
+        }
+        position += HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (chunk.get(position + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readValue(long offset) {
+        MappedByteBuffer chunk = chunks[chunkIndex(offset)];
+        int position = (int) (offset % chunkSize);
+        int keyLength = chunk.getInt(position + KEY_LENGTH_OFFSET);
+        byte[] value = new byte[chunk.getInt(position) - HEADER_SIZE - keyLength];
+        ByteBuffer source = chunk.duplicate();
+        source.position(position + HEADER_SIZE + keyLength);
+        source.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private int chunkIndex(long position) {
+        return (int) (position / chunkSize);
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> 58)];
+    }
+
+    private static int fingerprint(long hash) {
+        int fingerprint = (int) (hash >>> 32);
+        return fingerprint != 0 ? fingerprint : 1;
+    }
+
+    private File compactionFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    private void checkOpen() {
+        Assert.state(!closed, "Metadata store is closed");
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        appendLock.lock();
+    }
+
+    private void unlockAll() {
+        appendLock.unlock();
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Part of the index: open addressing hash table with linear probing in direct memory, guarded by own lock.
+     */
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private ByteBuffer table;
+
+        private int capacity;
+
+        /**
+         * Number of live and removed slots.
+         */
+        private int used;
+
+        private int size;
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            this.table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        }
+
+        /**
+         * @return slot of the key or -1 if key is absent.
+         */
+        private int find(MappedFileMetadataStore store, int fingerprint, byte[] key) {
+            int mask = capacity - 1;
+            for (int i = 0, slot = fingerprint & mask; i < capacity; i++, slot = (slot + 1) & mask) {
+                int slotFingerprint = table.getInt(slot * SLOT_SIZE);
+                if (slotFingerprint == 0) {
+                    return -1;
+                }
+                if (slotFingerprint == fingerprint) {
+                    long offset = offset(slot);
+                    if (offset != TOMBSTONE && store.keyEquals(offset, key)) {
+                        return slot;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Insert key that is known to be absent.
+         */
+        private void insert(int fingerprint, long offset) {
+            if ((used + 1) * 2 > capacity) {
+                rehash(size * 4 > capacity ? capacity * 2 : capacity);
+            }
+            int mask = capacity - 1;
+            int slot = fingerprint & mask;
+            while (table.getInt(slot * SLOT_SIZE) != 0 && offset(slot) != TOMBSTONE) {
+                slot = (slot + 1) & mask;
+            }
+            if (table.getInt(slot * SLOT_SIZE) == 0) {
+                used++;
+            }
+            table.putInt(slot * SLOT_SIZE, fingerprint);
+            setOffset(slot, offset);
+            size++;
+        }
+
+        private void remove(int slot) {
+            setOffset(slot, TOMBSTONE);
+            size--;
+        }
+
+        private long offset(int slot) {
+            return table.getLong(slot * SLOT_SIZE + 4);
+        }
+
+        /**
+         * @return offset of the record in the slot or -1 if slot is empty or removed.
+         */
+        private long liveOffset(int slot) {
+            return table.getInt(slot * SLOT_SIZE) != 0 ? offset(slot) : TOMBSTONE;
+        }
+
+        private void setOffset(int slot, long offset) {
+            table.putLong(slot * SLOT_SIZE + 4, offset);
+        }
+
+        /**
+         * Apply offsets of records in compacted log, indexed by slot.
+         */
+        private void relocate(long[] newOffsets) {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (liveOffset(slot) >= 0) {
+                    setOffset(slot, newOffsets[slot]);
+                }
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            ByteBuffer oldTable = table;
+            int oldCapacity = capacity;
+            table = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE);
+            capacity = newCapacity;
+            used = 0;
+            size = 0;
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                int fingerprint = oldTable.getInt(slot * SLOT_SIZE);
+                long offset = oldTable.getLong(slot * SLOT_SIZE + 4);
+                if (fingerprint != 0 && offset != TOMBSTONE) {
+                    insert(fingerprint, offset);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.support.locks.DefaultLockRegistry;
+import org.springframework.integration.support.locks.LockRegistry;
+import org.springframework.util.Assert;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * Background component that removes records of files in terminal status ({@link FileAcceptStatus#DONE} or
+ * {@link FileAcceptStatus#REJECTED}) from metadata store, so the store does not grow forever. Record is removed
+ * if it is older than {@link #setMaxAgeSeconds(long) maxAge} or if file no longer appears in the listing supplied
+ * for the prefix. Stale change sets of {@link FtpListingSnapshot} are removed as well, see
+ * {@link #addListingSnapshot(FtpListingSnapshot)}.
+ * <p>
+ * Store is walked incrementally: each {@link #run()} processes at most {@link #setMaxChunksPerRun(int)} chunks
+ * and continues from the same cursor next time. Runs are coordinated with {@link LockRegistry} (use distributed
+ * one, e.g. {@code RedisLockRegistry}, in cluster), so only one node sweeps at a time.
+ * <p>
+ * Note that a removed record means "never seen" for filters: {@code maxAge} must be bigger than the time files
+ * stay in the remote directory, otherwise they are processed again.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class MetadataRetentionSweeper implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(MetadataRetentionSweeper.class);
+
+    private final ScannableMetadataStore store;
+
+    private final LockRegistry lockRegistry;
+
+    private final ConcurrentMap<String, Supplier<Collection<String>>> prefixes =
+            new ConcurrentHashMap<String, Supplier<Collection<String>>>();
+
+    private final ConcurrentMap<String, String> cursors = new ConcurrentHashMap<String, String>();
+
+    private final Set<FtpListingSnapshot> snapshots = ConcurrentHashMap.newKeySet();
+
+    private String lockKey = "metadataRetentionSweeper";
+
+    private long maxAgeSeconds = 30L * 24 * 60 * 60;
+
+    private int chunkSize = 500;
+
+    private int maxChunksPerRun = 20;
+
+    public MetadataRetentionSweeper(ScannableMetadataStore store) {
+        this(store, new DefaultLockRegistry());
+    }
+
+    public MetadataRetentionSweeper(ScannableMetadataStore store, LockRegistry lockRegistry) {
+        Assert.notNull(store, "'store' cannot be null");
+        Assert.notNull(lockRegistry, "'lockRegistry' cannot be null");
+        this.store = store;
+        this.lockRegistry = lockRegistry;
+    }
+
+    /**
+     * Sweep records of filter with given prefix by age only.
+     *
+     * @param prefix prefix of filter keys.
+     */
+    public void addPrefix(String prefix) {
+        addPrefix(prefix, null);
+    }
+
+    /**
+     * Sweep records of filter with given prefix by age and by presence in listing.
+     *
+     * @param prefix  prefix of filter keys.
+     * @param listing supplier of current file names (e.g. remote directory listing), may be {@code null}. Empty
+     *                listing is ignored, as directory which is missing or unavailable for a moment may be listed
+     *                without error.
+     */
+    public void addPrefix(String prefix, Supplier<Collection<String>> listing) {
+        Assert.hasText(prefix, "'prefix' must not be empty");
+        prefixes.put(prefix, listing != null ? listing : () -> null);
+    }
+
+    /**
+     * Remove change sets and bases of listing snapshot which are already included in its current base, see
+     * {@link FtpListingSnapshot#isStale(String)}. Key prefix of the snapshot must not be a prefix of filter keys.
+     *
+     * @param snapshot listing snapshot.
+     */
+    public void addListingSnapshot(FtpListingSnapshot snapshot) {
+        Assert.notNull(snapshot, "'snapshot' cannot be null");
+        Assert.hasText(snapshot.getKeyPrefix(), "key prefix of 'snapshot' must not be empty");
+        snapshots.add(snapshot);
+    }
+
+    /**
+     * Process next chunks of every prefix if no other node is sweeping now.
+     */
+    @Override
+    public void run() {
+        Lock lock = lockRegistry.obtain(lockKey);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, Supplier<Collection<String>>> entry : prefixes.entrySet()) {
+                sweep(entry.getKey(), entry.getValue());
+            }
+            for (FtpListingSnapshot snapshot : snapshots) {
+                sweep(snapshot);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of removed records.
+     */
+    private int sweep(String prefix, Supplier<Collection<String>> listingSupplier) {
+        long currentTimestamp = Instant.now().getEpochSecond();
+        Set<String> listing = null;
+        boolean listingLoaded = false;
+        FileAcceptStatus status = new FileAcceptStatus();
+
+        String cursor = cursors.getOrDefault(prefix, ScannableMetadataStore.INITIAL_CURSOR);
+        int removed = 0;
+        for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+            ScannableMetadataStore.ScanChunk scanChunk = store.scan(cursor, prefix, chunkSize);
+
+            for (Map.Entry<String, String> entry : scanChunk.getEntries().entrySet()) {
+                if (StatusSerializer.fromString(entry.getValue(), status) == null
+                        || status.getStatus() == FileAcceptStatus.IN_PROGRESS) {
+                    continue;
+                }
+
+                // records without timestamp (older formats) have unknown age, only listing may remove them
+                boolean expired = status.getLastTryTimestamp() > 0
+                        && currentTimestamp - status.getLastTryTimestamp() > maxAgeSeconds;
+                if (!expired && !listingLoaded) {
+                    listing = loadListing(prefix, listingSupplier);
+                    listingLoaded = true;
+                }
+                boolean disappeared = listing != null
+                        && !listing.contains(entry.getKey().substring(prefix.length()));
+
+                if ((expired || disappeared) && store.remove(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+
+            cursor = scanChunk.getCursor();
+            if (scanChunk.isLast()) {
+                break;
+            }
+        }
+        cursors.put(prefix, cursor);
+
+        if (removed > 0) {
+            logger.info("Removed {} terminal records with prefix '{}'", removed, prefix);
+        }
+        return removed;
+    }
+
+    /**
+     * @return number of removed keys.
+     */
+    private int sweep(FtpListingSnapshot snapshot) {
+        String prefix = snapshot.getKeyPrefix();
+
+        String cursor = cursors.getOrDefault(prefix, ScannableMetadataStore.INITIAL_CURSOR);
+        int removed = 0;
+        for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+            ScannableMetadataStore.ScanChunk scanChunk = store.scan(cursor, prefix, chunkSize);
+
+            for (Map.Entry<String, String> entry : scanChunk.getEntries().entrySet()) {
+                if (snapshot.isStale(entry.getKey()) && store.remove(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+
+            cursor = scanChunk.getCursor();
+            if (scanChunk.isLast()) {
+                break;
+            }
+        }
+        cursors.put(prefix, cursor);
+
+        if (removed > 0) {
+            logger.info("Removed {} stale listing snapshot keys with prefix '{}'", removed, prefix);
+        }
+        return removed;
+    }
+
+    private Set<String> loadListing(String prefix, Supplier<Collection<String>> listingSupplier) {
+        try {
+            Collection<String> names = listingSupplier.get();
+            if (names != null && names.isEmpty()) {
+                // listing of missing or unavailable directory is usually empty without error
+                logger.warn("Listing for prefix '{}' is empty, only age is used", prefix);
+                return null;
+            }
+            return names != null ? new HashSet<String>(names) : null;
+        } catch (RuntimeException e) {
+            // without listing only age is used
+            logger.warn("Cannot get listing for prefix '{}'", prefix, e);
+            return null;
+        }
+    }
+
+    /**
+     * Key of the lock obtained from {@link LockRegistry} for each run.
+     *
+     * @param lockKey lock key.
+     */
+    public void setLockKey(String lockKey) {
+        Assert.hasText(lockKey, "'lockKey' must not be empty");
+        this.lockKey = lockKey;
+    }
+
+    /**
+     * Age (since last try) after which terminal record is removed, 30 days by default.
+     *
+     * @param maxAgeSeconds age in seconds.
+     */
+    public void setMaxAgeSeconds(long maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Number of entries requested from store at once.
+     *
+     * @param chunkSize number of entries.
+     */
+    public void setChunkSize(int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "'chunkSize' must be greater than 0");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Max number of chunks processed by single run for each prefix.
+     *
+     * @param maxChunksPerRun number of chunks.
+     */
+    public void setMaxChunksPerRun(int maxChunksPerRun) {
+        Assert.isTrue(maxChunksPerRun > 0, "'maxChunksPerRun' must be greater than 0");
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+}
@@ -0,0 +1,112 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.file.filters.ResettableFileListFilter;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wrapper of {@link AbstractPersistentAcceptOnceRetriableFileListFilter} that passes to the filter only files which
+ * belong to this node: files are distributed between live members of {@link ClusterMembership} by
+ * {@link ConsistentHashRing}, so each file is claimed by one node instead of all nodes racing for it. When a member
+ * leaves or stops sending heartbeats its files are distributed between remaining members.
+ * <p>
+ * Partitioning only reduces contention, consistency is still provided by the wrapped filter: during membership
+ * change two nodes may consider the same file and only one of them claims it.
+ * <p>
+ * When own files do not fill the limit of the poll (given one or max accepted file list length and capacity of
+ * the wrapped filter), the rest of the limit is filled with files of other members, so files of a member that
+ * stopped polling but did not expire yet are not stuck while this node is idle. Without any limit only own files
+ * are accepted.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class PartitionedFileListFilter<F>
+        implements ResettableFileListFilter<F>, CommitableFilter<F>, TransferProgressTracker<F>, Closeable {
+
+    private final AbstractPersistentAcceptOnceRetriableFileListFilter<F> delegate;
+
+    private final ClusterMembership membership;
+
+    public PartitionedFileListFilter(AbstractPersistentAcceptOnceRetriableFileListFilter<F> delegate,
+                                     ClusterMembership membership) {
+        Assert.notNull(delegate, "'delegate' cannot be null");
+        Assert.notNull(membership, "'membership' cannot be null");
+        this.delegate = delegate;
+        this.membership = membership;
+    }
+
+    @Override
+    public List<F> filterFiles(F[] files) {
+        return filterFiles(files, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<F> filterFiles(F[] files, int maxAccepted) {
+        if (files == null || files.length == 0) {
+            return delegate.filterFiles(files, maxAccepted);
+        }
+        ConsistentHashRing ring = membership.getRing();
+        String nodeId = membership.getNodeId();
+
+        F[] ownFiles = Arrays.copyOf(files, files.length);
+        F[] otherFiles = Arrays.copyOf(files, files.length);
+        int count = 0;
+        int otherCount = 0;
+        for (F file : files) {
+            if (nodeId.equals(ring.owner(delegate.buildKey(file)))) {
+                ownFiles[count++] = file;
+            } else {
+                otherFiles[otherCount++] = file;
+            }
+        }
+        return delegate.filterFiles(Arrays.copyOf(ownFiles, count), Arrays.copyOf(otherFiles, otherCount),
+                maxAccepted);
+    }
+
+    @Override
+    public void commit(F file) {
+        delegate.commit(file);
+    }
+
+    @Override
+    public void commit(F file, long contentSize, String contentDigest) {
+        delegate.commit(file, contentSize, contentDigest);
+    }
+
+    @Override
+    public void rollback(F file) {
+        delegate.rollback(file);
+    }
+
+    @Override
+    public boolean remove(F file) {
+        return delegate.remove(file);
+    }
+
+    @Override
+    public FileAcceptStatus getStatus(F file) {
+        return delegate.getStatus(file);
+    }
+
+    @Override
+    public boolean updateProgress(F file, long transferredBytes, long checksum) {
+        return delegate.updateProgress(file, transferredBytes, checksum);
+    }
+
+    /**
+     * Leave cluster, so files of this node are taken over immediately, and close wrapped filter.
+     */
+    @Override
+    public void close() throws IOException {
+        membership.leave();
+        delegate.close();
+    }
+
+    public AbstractPersistentAcceptOnceRetriableFileListFilter<F> getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,179 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of keys which reached terminal status. Answer "no" means that key was definitely never processed,
+ * answer "yes" is just a hint that key should be verified in metadata store. Memory usage is fixed and doesn't
+ * depend on number of processed keys, only false positive probability grows.
+ * <p>
+ * Thread-safe: bits are set with atomic operations, so concurrent {@link #put(String)} calls never lose updates.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class ProcessedKeysBloomFilter {
+
+    private static final String FORMAT = "bloom";
+
+    private static final char SEPARATOR = ':';
+
+    private final int numBits;
+
+    private final int numHashes;
+
+    private final AtomicLongArray bits;
+
+    /**
+     * Create filter sized for given number of keys.
+     *
+     * @param expectedInsertions        expected number of keys.
+     * @param falsePositiveProbability  desired false positive probability when filter holds expected number of keys.
+     */
+    public ProcessedKeysBloomFilter(int expectedInsertions, double falsePositiveProbability) {
+        this(optimalNumBits(expectedInsertions, falsePositiveProbability),
+                optimalNumHashes(expectedInsertions, optimalNumBits(expectedInsertions, falsePositiveProbability)));
+    }
+
+    private ProcessedKeysBloomFilter(int numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = new AtomicLongArray((numBits + 63) / 64);
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            int combined = h1 + i * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            int bit = combined % numBits;
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            int combined = h1 + i * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            setBit(combined % numBits);
+        }
+    }
+
+    /**
+     * Add all keys of another filter with the same configuration into this one.
+     *
+     * @param other filter to merge.
+     * @return false if filters are not compatible and nothing was merged.
+     */
+    public boolean merge(ProcessedKeysBloomFilter other) {
+        if (other.numBits != numBits || other.numHashes != numHashes) {
+            return false;
+        }
+        for (int i = 0; i < bits.length(); i++) {
+            long otherWord = other.bits.get(i);
+            long word;
+            do {
+                word = bits.get(i);
+            } while ((word | otherWord) != word && !bits.compareAndSet(i, word, word | otherWord));
+        }
+        return true;
+    }
+
+    /**
+     * Serialize filter to string to save it in metadata store.
+     *
+     * @return serialized filter in form {@code bloom:numBits:numHashes:base64Bits}.
+     */
+    @Override
+    public String toString() {
+        ByteBuffer buffer = ByteBuffer.allocate(bits.length() * 8);
+        for (int i = 0; i < bits.length(); i++) {
+            buffer.putLong(bits.get(i));
+        }
+        return FORMAT + SEPARATOR + numBits + SEPARATOR + numHashes + SEPARATOR
+                + Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    /**
+     * Read filter saved by {@link #toString()}.
+     *
+     * @param value serialized filter.
+     * @return filter or {@code null} if value cannot be parsed.
+     */
+    public static ProcessedKeysBloomFilter fromString(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(String.valueOf(SEPARATOR), 4);
+        if (parts.length != 4 || !FORMAT.equals(parts[0])) {
+            return null;
+        }
+        try {
+            ProcessedKeysBloomFilter filter =
+                    new ProcessedKeysBloomFilter(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(parts[3]));
+            if (buffer.remaining() != filter.bits.length() * 8) {
+                return null;
+            }
+            for (int i = 0; i < filter.bits.length(); i++) {
+                filter.bits.set(i, buffer.getLong());
+            }
+            return filter;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void setBit(int bit) {
+        int index = bit >>> 6;
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = bits.get(index);
+        } while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask));
+    }
+
+    /**
+     * 64-bit FNV-1a hash of key chars with final avalanche mixing (from MurmurHash3).
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int optimalNumBits(int expectedInsertions, double falsePositiveProbability) {
+        Assert.isTrue(expectedInsertions > 0, "'expectedInsertions' must be greater than 0");
+        Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                "'falsePositiveProbability' must be in (0, 1)");
+        double bits = -expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+        return (int) Math.max(64, Math.min(Integer.MAX_VALUE - 64, bits));
+    }
+
+    private static int optimalNumHashes(int expectedInsertions, int numBits) {
+        return Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+    }
+}
@@ -0,0 +1,130 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.file.remote.session.Session;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stream of remote file content that holds its own {@link Session}. Tracks number of bytes read, so it's known
+ * whether the file was consumed completely. Session is released on {@link #close()}.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class RemoteFileInputStream extends FilterInputStream {
+
+    private static Logger logger = LoggerFactory.getLogger(RemoteFileInputStream.class);
+
+    private final Session<FTPFile> session;
+
+    private final String remoteDirectory;
+
+    private final FTPFile remoteFile;
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile long bytesRead;
+
+    private volatile boolean endOfStream;
+
+    private volatile boolean failed;
+
+    private volatile long elapsedNanos;
+
+    RemoteFileInputStream(InputStream in, Session<FTPFile> session, String remoteDirectory, FTPFile remoteFile) {
+        super(in);
+        this.session = session;
+        this.remoteDirectory = remoteDirectory;
+        this.remoteFile = remoteFile;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b < 0) {
+            endOfStream = true;
+        } else {
+            bytesRead++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            bytesRead += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        bytesRead += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // reset would break counting of bytes read
+        return false;
+    }
+
+    /**
+     * Close stream, complete transfer command and release session. Can be called several times.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        elapsedNanos = System.nanoTime() - startNanos;
+        try {
+            in.close();
+            if (!session.finalizeRaw()) {
+                failed = true;
+            }
+        } catch (IOException e) {
+            failed = true;
+            logger.warn("Failed to complete transfer of '{}' from '{}'", remoteFile.getName(), remoteDirectory, e);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * @return true if whole file was read and transfer completed successfully.
+     */
+    public boolean isFullyConsumed() {
+        if (failed) {
+            return false;
+        }
+        return endOfStream || (remoteFile.getSize() >= 0 && bytesRead >= remoteFile.getSize());
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public String getRemoteDirectory() {
+        return remoteDirectory;
+    }
+
+    public FTPFile getRemoteFile() {
+        return remoteFile;
+    }
+
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
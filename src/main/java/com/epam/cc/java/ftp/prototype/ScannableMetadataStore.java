@@ -0,0 +1,65 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+
+import java.util.Map;
+
+/**
+ * Extension of {@link ConcurrentMetadataStore} that is able to iterate over its keys incrementally
+ * (cursor based, like Redis SCAN) without loading the whole store, and to remove a key conditionally.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface ScannableMetadataStore extends ConcurrentMetadataStore {
+
+    /**
+     * Cursor value that starts a new iteration and is returned when iteration is complete.
+     */
+    String INITIAL_CURSOR = "0";
+
+    /**
+     * Read next chunk of entries which keys start with given prefix.
+     *
+     * @param cursor    cursor returned by previous call or {@link #INITIAL_CURSOR}.
+     * @param keyPrefix prefix of keys.
+     * @param count     hint for number of entries to examine.
+     * @return chunk of entries and cursor to continue iteration.
+     */
+    ScanChunk scan(String cursor, String keyPrefix, int count);
+
+    /**
+     * Remove key only if it is currently mapped to given value.
+     *
+     * @param key   key to remove.
+     * @param value expected value.
+     * @return true if key was removed.
+     */
+    boolean remove(String key, String value);
+
+    /**
+     * Result of single {@link #scan(String, String, int)} call.
+     */
+    class ScanChunk {
+
+        private final String cursor;
+
+        private final Map<String, String> entries;
+
+        public ScanChunk(String cursor, Map<String, String> entries) {
+            this.cursor = cursor;
+            this.entries = entries;
+        }
+
+        public String getCursor() {
+            return cursor;
+        }
+
+        public Map<String, String> getEntries() {
+            return entries;
+        }
+
+        public boolean isLast() {
+            return INITIAL_CURSOR.equals(cursor);
+        }
+    }
+}
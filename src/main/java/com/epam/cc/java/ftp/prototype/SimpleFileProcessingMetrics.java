@@ -0,0 +1,191 @@
+package com.epam.cc.java.ftp.prototype;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link FileProcessingMetrics}: counters per prefix and event, latency histograms with power-of-two
+ * microsecond buckets per operation. Values can be exported by {@link #snapshot()} to any monitoring system.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class SimpleFileProcessingMetrics implements FileProcessingMetrics {
+
+    private static final int BUCKETS = 32;
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    @Override
+    public void accepted(String prefix) {
+        increment(prefix + ".accepted", 1L);
+    }
+
+    @Override
+    public void skippedInProgress(String prefix) {
+        increment(prefix + ".skippedInProgress", 1L);
+    }
+
+    @Override
+    public void retried(String prefix) {
+        increment(prefix + ".retried", 1L);
+    }
+
+    @Override
+    public void rejected(String prefix) {
+        increment(prefix + ".rejected", 1L);
+    }
+
+    @Override
+    public void committed(String prefix) {
+        increment(prefix + ".committed", 1L);
+    }
+
+    @Override
+    public void commitFoundDone(String prefix) {
+        increment(prefix + ".commitFoundDone", 1L);
+    }
+
+    @Override
+    public void casRetry(String prefix) {
+        increment(prefix + ".casRetry", 1L);
+    }
+
+    @Override
+    public void leaseLost(String prefix) {
+        increment(prefix + ".leaseLost", 1L);
+    }
+
+    @Override
+    public void storeOperation(String prefix, String operation, long elapsedNanos) {
+        histogram(prefix + ".store." + operation).record(elapsedNanos);
+    }
+
+    @Override
+    public void listed(String remoteDirectory, int total, int changed) {
+        increment(remoteDirectory + ".listedEntries", total);
+        increment(remoteDirectory + ".changedEntries", changed);
+    }
+
+    @Override
+    public void downloaded(String remoteDirectory, long bytes, long elapsedNanos) {
+        increment(remoteDirectory + ".downloadedFiles", 1L);
+        increment(remoteDirectory + ".downloadedBytes", bytes);
+        histogram(remoteDirectory + ".download").record(elapsedNanos);
+    }
+
+    @Override
+    public void downloadResumed(String remoteDirectory, long offset) {
+        increment(remoteDirectory + ".resumedDownloads", 1L);
+        increment(remoteDirectory + ".resumedBytes", offset);
+    }
+
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0L;
+    }
+
+    public Histogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * @return current values of all counters and histogram summaries (count, mean and 99th percentile in
+     * microseconds) sorted by name.
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            snapshot.put(entry.getKey() + ".count", entry.getValue().getCount());
+            snapshot.put(entry.getKey() + ".meanMicros", entry.getValue().getMeanMicros());
+            snapshot.put(entry.getKey() + ".p99Micros", entry.getValue().getPercentileMicros(0.99));
+        }
+        return snapshot;
+    }
+
+    private void increment(String name, long delta) {
+        LongAdder counter = counters.get(name);
+        if (counter == null) {
+            LongAdder newCounter = new LongAdder();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.add(delta);
+    }
+
+    private Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Lock-free latency histogram: bucket {@code i} counts values in {@code [2^(i-1), 2^i)} microseconds.
+     */
+    public static class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalMicros = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long elapsedNanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets[bucket].increment();
+            count.increment();
+            totalMicros.add(micros);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMeanMicros() {
+            long total = count.sum();
+            return total > 0 ? totalMicros.sum() / total : 0L;
+        }
+
+        /**
+         * @return upper bound of bucket that contains given percentile.
+         */
+        public long getPercentileMicros(double percentile) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0L;
+            }
+            long threshold = (long) Math.ceil(total * percentile);
+            long seen = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= threshold) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+}
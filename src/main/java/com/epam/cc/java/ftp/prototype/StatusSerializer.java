@@ -1,37 +1,193 @@
 package com.epam.cc.java.ftp.prototype;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
 
 /**
- * Example of serializer for {link FileAcceptStatus}.
+ * Serializer for {link FileAcceptStatus}.
+ * <p>
+ * Status is written in compact form {@code status:tries:lastTryTimestamp} (e.g. {@code 0:1:1474020000}) without
+ * any intermediate objects. Leased statuses have two more fields: {@code status:tries:lastTryTimestamp:leaseExpiry:owner},
+ * statuses with transfer progress have two more: {@code ...:leaseExpiry:owner:transferredBytes:transferChecksum}
+ * and statuses with content digest have two more: {@code ...:transferChecksum:contentSize:contentDigest}.
+ * Values written by previous versions as JSON are still readable, so existing records are migrated transparently
+ * on their next update.
  * <p>
  * Created by Maksym Bruner.
  */
 public class StatusSerializer {
 
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Used only to read legacy JSON values, {@link ObjectMapper} is thread-safe after configuration.
+     */
+    private static final ObjectMapper LEGACY_MAPPER = new ObjectMapper();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(32);
+        }
+    };
+
     public static String toString(FileAcceptStatus status) {
-        ObjectMapper mapper = new ObjectMapper();
-        String value = "";
-        try {
-            value = mapper.writeValueAsString(status);
-        } catch (JsonProcessingException e) {
-            // handle exception
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        buffer.append(status.getStatus())
+              .append(SEPARATOR).append(status.getTries())
+              .append(SEPARATOR).append(status.getLastTryTimestamp());
+        boolean hasContent = status.getContentDigest() != null;
+        boolean hasProgress = hasContent || status.getTransferredBytes() > 0;
+        if (hasProgress || status.getLeaseExpiry() > 0 || status.getOwner() != null) {
+            buffer.append(SEPARATOR).append(status.getLeaseExpiry())
+                  .append(SEPARATOR).append(status.getOwner() != null ? status.getOwner() : "");
+        }
+        if (hasProgress) {
+            buffer.append(SEPARATOR).append(status.getTransferredBytes())
+                  .append(SEPARATOR).append(status.getTransferChecksum());
         }
-        return value;
+        if (hasContent) {
+            buffer.append(SEPARATOR).append(status.getContentSize())
+                  .append(SEPARATOR).append(status.getContentDigest());
+        }
+        return buffer.toString();
     }
 
     public static FileAcceptStatus fromString(String value) {
-        ObjectMapper mapper = new ObjectMapper();
-        FileAcceptStatus status = null;
+        if (value == null) {
+            return null;
+        }
+        return fromString(value, new FileAcceptStatus());
+    }
+
+    /**
+     * Read value into existing status object, so caller may reuse it.
+     *
+     * @param value  serialized status.
+     * @param target status to fill.
+     * @return target or {@code null} if value cannot be parsed.
+     */
+    public static FileAcceptStatus fromString(String value, FileAcceptStatus target) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value.charAt(0) == '{') {
+            return fromLegacyString(value, target);
+        }
+
+        int end = value.indexOf(SEPARATOR);
+        if (end < 0) {
+            return null;
+        }
+        long status = parseLong(value, 0, end);
+        int start = end + 1;
+
+        end = value.indexOf(SEPARATOR, start);
+        if (end < 0) {
+            return null;
+        }
+        long tries = parseLong(value, start, end);
+        start = end + 1;
+
+        end = value.indexOf(SEPARATOR, start);
+        long lastTryTimestamp = parseLong(value, start, end < 0 ? value.length() : end);
+
+        long leaseExpiry = 0L;
+        String owner = null;
+        if (end >= 0) {
+            start = end + 1;
+            end = value.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                return null;
+            }
+            leaseExpiry = parseLong(value, start, end);
+            start = end + 1;
+
+            end = value.indexOf(SEPARATOR, start);
+            owner = value.substring(start, end < 0 ? value.length() : end);
+        }
+
+        long transferredBytes = 0L;
+        long transferChecksum = 0L;
+        if (end >= 0) {
+            start = end + 1;
+            end = value.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                return null;
+            }
+            transferredBytes = parseLong(value, start, end);
+            start = end + 1;
+
+            end = value.indexOf(SEPARATOR, start);
+            transferChecksum = parseLong(value, start, end < 0 ? value.length() : end);
+        }
+
+        long contentSize = 0L;
+        String contentDigest = null;
+        if (end >= 0) {
+            start = end + 1;
+            end = value.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                return null;
+            }
+            contentSize = parseLong(value, start, end);
+            contentDigest = value.substring(end + 1);
+        }
+
+        if (status < 0 || tries < 0 || lastTryTimestamp < 0 || leaseExpiry < 0
+                || transferredBytes < 0 || transferChecksum < 0 || contentSize < 0) {
+            return null;
+        }
+        target.setStatus((int) status);
+        target.setTries((int) tries);
+        target.setLastTryTimestamp(lastTryTimestamp);
+        target.setLeaseExpiry(leaseExpiry);
+        target.setOwner(owner == null || owner.isEmpty() ? null : owner);
+        target.setTransferredBytes(transferredBytes);
+        target.setTransferChecksum(transferChecksum);
+        target.setContentSize(contentSize);
+        target.setContentDigest(contentDigest == null || contentDigest.isEmpty() ? null : contentDigest);
+        return target;
+    }
+
+    private static FileAcceptStatus fromLegacyString(String value, FileAcceptStatus target) {
         try {
-            status = mapper.readValue(value, FileAcceptStatus.class);
+            FileAcceptStatus status = LEGACY_MAPPER.readValue(value, FileAcceptStatus.class);
+            target.setStatus(status.getStatus());
+            target.setTries(status.getTries());
+            target.setLastTryTimestamp(status.getLastTryTimestamp());
+            target.setLeaseExpiry(status.getLeaseExpiry());
+            target.setOwner(status.getOwner());
+            target.setTransferredBytes(status.getTransferredBytes());
+            target.setTransferChecksum(status.getTransferChecksum());
+            target.setContentSize(status.getContentSize());
+            target.setContentDigest(status.getContentDigest());
+            return target;
         } catch (IOException e) {
-            // handle exception
+            return null;
+        }
+    }
+
+    /**
+     * Parse non-negative decimal number.
+     *
+     * @return parsed number or -1 if range does not contain valid number.
+     */
+    private static long parseLong(String value, int start, int end) {
+        if (start >= end || end - start > 18) {
+            return -1L;
+        }
+        long result = 0L;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1L;
+            }
+            result = result * 10 + (c - '0');
         }
-        return status;
+        return result;
     }
 
 }
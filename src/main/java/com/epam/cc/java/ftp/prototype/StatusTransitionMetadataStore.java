@@ -0,0 +1,153 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+/**
+ * Extension of {@link ConcurrentMetadataStore} that performs transitions of {@link FileAcceptStatus} atomically
+ * on the store side (e.g. server-side script): status is read, decided and written in a single request, so
+ * there are no compare-and-set retries under contention. Values are read and written in {@link StatusSerializer}
+ * format, so the same records may be updated by regular operations as well.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface StatusTransitionMetadataStore extends ConcurrentMetadataStore {
+
+    /**
+     * Claim keys one by one until {@code limit} keys are claimed: absent key is created in progress, key in
+     * progress which lease or retry timeout is expired is retried or rejected after {@code maxTry} tries.
+     *
+     * @param keys             keys to claim.
+     * @param currentTimestamp current timestamp in seconds.
+     * @param policy           retry and lease settings.
+     * @param limit            max number of keys to claim.
+     * @return result for every key in the same order as keys.
+     */
+    List<Transition> claimAll(List<String> keys, long currentTimestamp, ClaimPolicy policy, int limit);
+
+    /**
+     * Mark keys as {@link FileAcceptStatus#DONE}, absent keys are created done.
+     *
+     * @param keys           keys to commit.
+     * @param contentSizes   size of content of every key.
+     * @param contentDigests digest of content of every key, {@code null} if unknown.
+     * @return result for every key in the same order as keys.
+     */
+    List<Transition> commitAll(List<String> keys, long[] contentSizes, String[] contentDigests);
+
+    /**
+     * Result of transition of a single key.
+     */
+    enum Transition {
+
+        /**
+         * Key was absent and is created in progress.
+         */
+        CLAIMED('N'),
+
+        /**
+         * Key in progress was expired and is claimed for one more try.
+         */
+        RETRIED('C'),
+
+        /**
+         * Key in progress was expired after max number of tries and is rejected.
+         */
+        REJECTED('R'),
+
+        /**
+         * Key is in progress and not expired.
+         */
+        IN_PROGRESS('S'),
+
+        /**
+         * Key already has terminal status.
+         */
+        TERMINAL('T'),
+
+        /**
+         * Value of the key cannot be parsed, it is not changed.
+         */
+        UNKNOWN('U'),
+
+        /**
+         * Key was not examined because limit of claimed keys was reached.
+         */
+        NOT_EXAMINED('-'),
+
+        /**
+         * Key is committed.
+         */
+        COMMITTED('D'),
+
+        /**
+         * Key was already committed.
+         */
+        ALREADY_DONE('F');
+
+        private final char code;
+
+        Transition(char code) {
+            this.code = code;
+        }
+
+        public char getCode() {
+            return code;
+        }
+
+        public static Transition fromCode(char code) {
+            for (Transition transition : values()) {
+                if (transition.code == code) {
+                    return transition;
+                }
+            }
+            throw new IllegalArgumentException("Unknown transition code '" + code + "'");
+        }
+    }
+
+    /**
+     * Settings of the filter used to decide on claim of existing key.
+     */
+    final class ClaimPolicy {
+
+        private final long retryTimeoutSeconds;
+
+        private final int maxTry;
+
+        private final String owner;
+
+        private final long leaseSeconds;
+
+        /**
+         * @param retryTimeoutSeconds timeout before retry of key without lease.
+         * @param maxTry              max number of tries.
+         * @param owner               id of the node stored as lease owner.
+         * @param leaseSeconds        lease duration, 0 if leases are not used.
+         */
+        public ClaimPolicy(long retryTimeoutSeconds, int maxTry, String owner, long leaseSeconds) {
+            Assert.hasText(owner, "'owner' must not be empty");
+            this.retryTimeoutSeconds = retryTimeoutSeconds;
+            this.maxTry = maxTry;
+            this.owner = owner;
+            this.leaseSeconds = leaseSeconds;
+        }
+
+        public long getRetryTimeoutSeconds() {
+            return retryTimeoutSeconds;
+        }
+
+        public int getMaxTry() {
+            return maxTry;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public long getLeaseSeconds() {
+            return leaseSeconds;
+        }
+    }
+}
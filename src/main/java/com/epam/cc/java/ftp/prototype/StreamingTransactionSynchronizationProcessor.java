@@ -0,0 +1,52 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.transaction.IntegrationResourceHolder;
+import org.springframework.integration.transaction.TransactionSynchronizationProcessor;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Completes messages emitted by {@link FtpStreamingInboundMessageSource}: after commit of poller transaction
+ * remote file is committed if its stream was read to the end, after rollback (or if stream was not consumed)
+ * the file is rolled back. Stream and its session are closed in both cases.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class StreamingTransactionSynchronizationProcessor implements TransactionSynchronizationProcessor {
+
+    private final FtpExtendedInboundFileSynchronizer synchronizer;
+
+    public StreamingTransactionSynchronizationProcessor(FtpExtendedInboundFileSynchronizer synchronizer) {
+        Assert.notNull(synchronizer, "'synchronizer' cannot be null");
+        this.synchronizer = synchronizer;
+    }
+
+    @Override
+    public void processBeforeCommit(IntegrationResourceHolder holder) {
+        // Do nothing
+    }
+
+    @Override
+    public void processAfterCommit(IntegrationResourceHolder holder) {
+        RemoteFileInputStream stream = getStream(holder);
+        if (stream != null) {
+            synchronizer.completeStream(stream, true);
+        }
+    }
+
+    @Override
+    public void processAfterRollback(IntegrationResourceHolder holder) {
+        RemoteFileInputStream stream = getStream(holder);
+        if (stream != null) {
+            synchronizer.completeStream(stream, false);
+        }
+    }
+
+    private static RemoteFileInputStream getStream(IntegrationResourceHolder holder) {
+        Message<?> message = holder != null ? holder.getMessage() : null;
+        if (message == null || !(message.getPayload() instanceof RemoteFileInputStream)) {
+            return null;
+        }
+        return (RemoteFileInputStream) message.getPayload();
+    }
+}
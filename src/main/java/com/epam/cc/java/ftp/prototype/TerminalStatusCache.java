@@ -0,0 +1,134 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.util.Assert;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded cache of keys which reached terminal status ({@link FileAcceptStatus#DONE} or
+ * {@link FileAcceptStatus#REJECTED}). Terminal status never changes, so such keys don't need to be
+ * checked in metadata store again.
+ * <p>
+ * Lookups don't take any lock, so claims of many threads do not contend on the cache. Eviction is approximate LRU
+ * (CLOCK): a key that was looked up since the hand passed it gets a second chance, otherwise the oldest key is
+ * evicted. Only one thread evicts at a time, so the cache may briefly exceed its size under concurrent puts.
+ * Removed keys stay in the clock until the hand passes them, when the clock grows twice bigger than max size it's
+ * cleaned from removed keys.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class TerminalStatusCache {
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, Entry> keys = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Entries in order of insertion, the clock hand is at the head.
+     */
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * Number of entries in {@link #clock}, size of the queue itself is not constant time.
+     */
+    private final AtomicInteger clockSize = new AtomicInteger();
+
+    private final Lock evictionLock = new ReentrantLock();
+
+    public TerminalStatusCache(int maxSize) {
+        Assert.isTrue(maxSize > 0, "'maxSize' must be greater than 0");
+        this.maxSize = maxSize;
+    }
+
+    public boolean contains(String key) {
+        Entry entry = keys.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (!entry.referenced) {
+            // write only when needed, so hot keys are read without invalidating cache lines of other cores
+            entry.referenced = true;
+        }
+        return true;
+    }
+
+    public void put(String key) {
+        Entry entry = new Entry(key);
+        if (keys.putIfAbsent(key, entry) == null) {
+            clock.add(entry);
+            if (clockSize.incrementAndGet() > 2 * maxSize || keys.size() > maxSize) {
+                evict();
+            }
+        }
+    }
+
+    public void remove(String key) {
+        keys.remove(key);
+    }
+
+    public void clear() {
+        keys.clear();
+        clock.clear();
+        clockSize.set(0);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    int clockSize() {
+        return clockSize.get();
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            // another thread is evicting until the cache fits its size
+            return;
+        }
+        try {
+            // when cache fits its size, entries of removed keys are dropped during one turn of the clock
+            int cleanupBudget = clockSize.get();
+            while (true) {
+                boolean overSize = keys.size() > maxSize;
+                if (!overSize && (clockSize.get() <= maxSize || cleanupBudget-- <= 0)) {
+                    return;
+                }
+                Entry entry = clock.poll();
+                if (entry == null) {
+                    return;
+                }
+                if (keys.get(entry.key) != entry) {
+                    // removed meanwhile
+                    clockSize.decrementAndGet();
+                } else if (!overSize) {
+                    clock.add(entry);
+                } else if (entry.referenced) {
+                    entry.referenced = false;
+                    clock.add(entry);
+                } else {
+                    keys.remove(entry.key, entry);
+                    clockSize.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+
+        private volatile boolean referenced;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.epam.cc.java.ftp.prototype;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Selection of {@code k} best elements without sorting all of them: bounded heap keeps {@code k} best elements seen
+ * so far and its worst element is replaced by a better one, so selection takes {@code O(n log k)}.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+final class TopKSelector {
+
+    private TopKSelector() {
+    }
+
+    /**
+     * Select indexes of {@code k} smallest elements according to comparator, equal elements keep their order.
+     *
+     * @param items      elements.
+     * @param count      number of elements to look at, from the start of array.
+     * @param k          number of elements to select.
+     * @param comparator order of elements, smallest first.
+     * @return indexes of selected elements ordered by priority.
+     */
+    static <T> int[] select(T[] items, int count, int k, Comparator<? super T> comparator) {
+        int size = Math.min(k, count);
+        if (size <= 0) {
+            return new int[0];
+        }
+        Comparator<Integer> order = (a, b) -> {
+            int result = comparator.compare(items[a], items[b]);
+            return result != 0 ? result : Integer.compare(a, b);
+        };
+
+        // max-heap: the worst of selected elements is on top
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(size, order.reversed());
+        for (int i = 0; i < count; i++) {
+            if (heap.size() < size) {
+                heap.add(i);
+            } else if (order.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+
+        int[] selected = new int[heap.size()];
+        for (int i = selected.length - 1; i >= 0; i--) {
+            selected[i] = heap.poll();
+        }
+        return selected;
+    }
+}
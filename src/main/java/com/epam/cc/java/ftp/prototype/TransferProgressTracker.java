@@ -0,0 +1,28 @@
+package com.epam.cc.java.ftp.prototype;
+
+/**
+ * Interface for filters able to store progress of file transfer, so transfer interrupted by failure of a node can be
+ * resumed by the node that takes the file over.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public interface TransferProgressTracker<F> {
+
+    /**
+     * Read current status of the file including transfer progress saved by previous try.
+     *
+     * @param file file previously passed by the filter.
+     * @return status or {@code null} if file is unknown.
+     */
+    FileAcceptStatus getStatus(F file);
+
+    /**
+     * Save progress of transfer of file that is in progress by this process.
+     *
+     * @param file             file previously passed by the filter.
+     * @param transferredBytes number of bytes durably written to staging file.
+     * @param checksum         CRC32 of written bytes.
+     * @return false if file is not in progress by this process anymore and transfer should be stopped.
+     */
+    boolean updateProgress(F file, long transferredBytes, long checksum);
+}
@@ -1,9 +1,17 @@
 package com.epam.cc.java.ftp.prototype.demo;
 
-import com.epam.cc.java.ftp.prototype.CommitableFilter;
+import com.epam.cc.java.ftp.prototype.AdaptivePollTrigger;
+import com.epam.cc.java.ftp.prototype.ClusterMembership;
+import com.epam.cc.java.ftp.prototype.ExecutorCapacitySource;
+import com.epam.cc.java.ftp.prototype.ExtendedRedisMetadataStore;
 import com.epam.cc.java.ftp.prototype.FilePersistentAcceptOnceRetriableFileListFilter;
 import com.epam.cc.java.ftp.prototype.FtpExtendedInboundFileSynchronizer;
+import com.epam.cc.java.ftp.prototype.FtpFilePriority;
+import com.epam.cc.java.ftp.prototype.FtpListingSnapshot;
 import com.epam.cc.java.ftp.prototype.FtpPersistentAcceptOnceRetriableFileListFilter;
+import com.epam.cc.java.ftp.prototype.MetadataRetentionSweeper;
+import com.epam.cc.java.ftp.prototype.PartitionedFileListFilter;
+import com.epam.cc.java.ftp.prototype.SimpleFileProcessingMetrics;
 import org.apache.commons.net.ftp.FTPFile;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -20,20 +28,26 @@ import org.springframework.integration.dsl.core.Pollers;
 import org.springframework.integration.file.filters.CompositeFileListFilter;
 import org.springframework.integration.file.remote.session.CachingSessionFactory;
 import org.springframework.integration.file.remote.session.SessionFactory;
-import org.springframework.integration.file.remote.synchronizer.AbstractInboundFileSynchronizer;
 import org.springframework.integration.ftp.inbound.FtpInboundFileSynchronizingMessageSource;
 import org.springframework.integration.ftp.session.DefaultFtpSessionFactory;
-import org.springframework.integration.metadata.ConcurrentMetadataStore;
-import org.springframework.integration.redis.metadata.RedisMetadataStore;
+import org.springframework.integration.redis.util.RedisLockRegistry;
 import org.springframework.integration.scheduling.PollerMetadata;
+import org.springframework.integration.support.locks.LockRegistry;
 import org.springframework.integration.transaction.*;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Example of Java Configuration for demo application.
@@ -42,6 +56,7 @@ import java.util.Optional;
  */
 @Configuration
 @EnableIntegration
+@EnableScheduling
 @ImportResource("classpath:spring-integration-beans.xml")
 public class FtpChannelConfig {
 
@@ -56,16 +71,24 @@ public class FtpChannelConfig {
     private String remoteDirectory = "/in";
     private String localProcessingDirectory = "./build/tmp/ftpInbound";
     private int filePollingRate = 5000;
+    private int maxFilePollingRate = 60000;
     private int maxMessagesPerPoll = 1;
     private int corePoolSize = 2;
     private int maxPoolSize = 2;
+    private int downloadThreads = 2;
     private int maxTries = 3;
     private int maxAcceptedFilesListLength = 2;
+    private int terminalCacheSize = 10000;
+    private long leaseSeconds = 15L;
+    private int groupCommitBatchSize = 32;
+    private long groupCommitMaxDelayMillis = 10L;
+    private String nodeId = UUID.randomUUID().toString();
 
 
     private String redisHost = "localhost";
     private int redisPort = 6379;
     private String redisKey = "si";
+    private long metadataMaxAgeSeconds = 30L * 24 * 60 * 60;
 
 
     @Bean
@@ -79,12 +102,18 @@ public class FtpChannelConfig {
     }
 
     @Bean
-    public AbstractInboundFileSynchronizer ftpInboundFileSynchronizer() {
+    public FtpExtendedInboundFileSynchronizer ftpInboundFileSynchronizer() {
         FtpExtendedInboundFileSynchronizer fileSynchronizer = new FtpExtendedInboundFileSynchronizer(ftpSessionFactory());
         fileSynchronizer.setDeleteRemoteFiles(deleteRemoteFiles);
         fileSynchronizer.setRemoteDirectory(remoteDirectory);
         fileSynchronizer.setFilter(ftpRemoteCompositeFilter());
-        fileSynchronizer.setCommitableFilter(ftpPersistentFilter());
+        fileSynchronizer.setCommitableFilter(ftpPartitionedFilter());
+        fileSynchronizer.setMetrics(metrics());
+        fileSynchronizer.setDownloadExecutor(downloadExecutor());
+        fileSynchronizer.setResumableTransfers(true);
+        fileSynchronizer.setDigestAlgorithm("SHA-256");
+        fileSynchronizer.setListingSnapshot(listingSnapshot());
+        fileSynchronizer.setUseMlsd(true);
         return fileSynchronizer;
     }
 
@@ -108,19 +137,40 @@ public class FtpChannelConfig {
 
     @Bean
     public CompositeFileListFilter<FTPFile> ftpRemoteCompositeFilter() {
-        return new CompositeFileListFilter<>(Arrays.asList(ftpPersistentFilter()));
+        return new CompositeFileListFilter<>(Arrays.asList(ftpPartitionedFilter()));
     }
 
     @Bean
-    public CommitableFilter<FTPFile> ftpPersistentFilter() {
+    public FtpPersistentAcceptOnceRetriableFileListFilter ftpPersistentFilter() {
         FtpPersistentAcceptOnceRetriableFileListFilter persistentAcceptOnceFilter =
                 new FtpPersistentAcceptOnceRetriableFileListFilter(metadataStore(), REMOTE_FILTER_PREFIX);
 
         persistentAcceptOnceFilter.setMaxAcceptedFileListLength(maxAcceptedFilesListLength);
+        persistentAcceptOnceFilter.setTerminalCacheSize(terminalCacheSize);
+        persistentAcceptOnceFilter.setLeaseSeconds(leaseSeconds);
+        persistentAcceptOnceFilter.setNodeId(nodeId);
+        persistentAcceptOnceFilter.setFingerprintKeys(true);
+        persistentAcceptOnceFilter.setGroupCommitBatchSize(groupCommitBatchSize);
+        persistentAcceptOnceFilter.setGroupCommitMaxDelay(groupCommitMaxDelayMillis);
+        persistentAcceptOnceFilter.setServerSideTransitions(true);
+        persistentAcceptOnceFilter.setPriorityComparator(FtpFilePriority.OLDEST_FIRST);
+        persistentAcceptOnceFilter.setMetrics(metrics());
+        persistentAcceptOnceFilter.setPollListener(pollTrigger());
+        persistentAcceptOnceFilter.setCapacitySource(pollerCapacitySource());
 
         return persistentAcceptOnceFilter;
     }
 
+    @Bean
+    public PartitionedFileListFilter<FTPFile> ftpPartitionedFilter() {
+        return new PartitionedFileListFilter<>(ftpPersistentFilter(), clusterMembership());
+    }
+
+    @Bean
+    public ClusterMembership clusterMembership() {
+        return new ClusterMembership(metadataStore(), nodeId);
+    }
+
     @Bean
     public CompositeFileListFilter<File> ftpLocalCompositeFilter() {
         return new CompositeFileListFilter<>(Arrays.asList(fileLocalAcceptOnceRetriableFilter()));
@@ -133,13 +183,34 @@ public class FtpChannelConfig {
 
         filter.setMaxTry(maxTries);
         filter.setMaxAcceptedFileListLength(maxAcceptedFilesListLength);
+        filter.setTerminalCacheSize(terminalCacheSize);
+        filter.setLeaseSeconds(leaseSeconds);
+        filter.setGroupCommitBatchSize(groupCommitBatchSize);
+        filter.setGroupCommitMaxDelay(groupCommitMaxDelayMillis);
+        filter.setServerSideTransitions(true);
+        filter.setMetrics(metrics());
 
         return filter;
     }
 
+    /**
+     * Heartbeat of cluster membership and files in progress, interval should be several times less than lease.
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void renewLeases() {
+        clusterMembership().heartbeat();
+        ftpPersistentFilter().renewLeases();
+        fileLocalAcceptOnceRetriableFilter().renewLeases();
+    }
+
+    @Bean
+    public SimpleFileProcessingMetrics metrics() {
+        return new SimpleFileProcessingMetrics();
+    }
+
     @Bean
     public PollerMetadata poller() {
-        return Pollers.fixedRate(filePollingRate)
+        return Pollers.trigger(pollTrigger())
                       .maxMessagesPerPoll(maxMessagesPerPoll)
                       .transactional(transactionManager())
                       .transactionSynchronizationFactory(customTransactionSynchronizationFactory())
@@ -147,6 +218,29 @@ public class FtpChannelConfig {
                       .get();
     }
 
+    @Bean
+    public AdaptivePollTrigger pollTrigger() {
+        AdaptivePollTrigger trigger = new AdaptivePollTrigger(filePollingRate);
+
+        trigger.setMaxPeriod(maxFilePollingRate);
+        trigger.setCapacitySource(pollerCapacitySource());
+
+        return trigger;
+    }
+
+    /**
+     * Capacity of the poller executor. Poll itself runs on a thread of the executor and this thread processes
+     * the messages it produces, so it's not counted as busy.
+     */
+    @Bean
+    public ExecutorCapacitySource pollerCapacitySource() {
+        ExecutorCapacitySource capacitySource = new ExecutorCapacitySource(executor());
+
+        capacitySource.setReserved(1);
+
+        return capacitySource;
+    }
+
     @Bean
     public ThreadPoolTaskExecutor executor() {
         ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
@@ -157,6 +251,17 @@ public class FtpChannelConfig {
         return threadPoolTaskExecutor;
     }
 
+    @Bean
+    public ThreadPoolTaskExecutor downloadExecutor() {
+        ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
+
+        threadPoolTaskExecutor.setCorePoolSize(downloadThreads);
+        threadPoolTaskExecutor.setMaxPoolSize(downloadThreads);
+        threadPoolTaskExecutor.setThreadNamePrefix("ftp-download-");
+
+        return threadPoolTaskExecutor;
+    }
+
     @Bean
     public TransactionSynchronizationProcessor customTransactionSynchronizationProcessor() {
         return new CustomTransactionSynchronizationProcessor(fileLocalAcceptOnceRetriableFilter());
@@ -180,12 +285,54 @@ public class FtpChannelConfig {
         ftpSessionFactory.setUsername(user);
         ftpSessionFactory.setPassword(password);
         ftpSessionFactory.setClientMode(2);
-        return new CachingSessionFactory<>(ftpSessionFactory);
+        return new CachingSessionFactory<>(ftpSessionFactory, downloadThreads);
     }
 
     @Bean
-    public ConcurrentMetadataStore metadataStore() {
-        return new RedisMetadataStore(redisConnectionFactory(), redisKey);
+    public ExtendedRedisMetadataStore metadataStore() {
+        return new ExtendedRedisMetadataStore(redisConnectionFactory(), redisKey);
+    }
+
+    @Bean
+    public FtpListingSnapshot listingSnapshot() {
+        return new FtpListingSnapshot(metadataStore());
+    }
+
+    @Bean
+    public LockRegistry lockRegistry() {
+        return new RedisLockRegistry(redisConnectionFactory(), redisKey + "-locks");
+    }
+
+    @Bean
+    public MetadataRetentionSweeper metadataRetentionSweeper() {
+        MetadataRetentionSweeper sweeper = new MetadataRetentionSweeper(metadataStore(), lockRegistry());
+
+        sweeper.setMaxAgeSeconds(metadataMaxAgeSeconds);
+        sweeper.addPrefix(REMOTE_FILTER_PREFIX, this::listRemoteVersionedNames);
+        sweeper.addPrefix(LOCAL_FILTER_PREFIX);
+        sweeper.addListingSnapshot(listingSnapshot());
+
+        return sweeper;
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void sweepMetadata() {
+        metadataRetentionSweeper().run();
+    }
+
+    /**
+     * Names of remote files as they are used in keys of remote filter, so records of previous versions of
+     * re-uploaded files are swept as well. Listing is done by synchronizer, so it uses the same command (MLSD).
+     */
+    private Collection<String> listRemoteVersionedNames() {
+        try {
+            FtpPersistentAcceptOnceRetriableFileListFilter filter = ftpPersistentFilter();
+            return Arrays.stream(ftpInboundFileSynchronizer().listRemoteFiles(remoteDirectory))
+                         .map(filter::versionedName)
+                         .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Bean
@@ -228,7 +375,13 @@ public class FtpChannelConfig {
 
         @Override
         public void processAfterRollback(IntegrationResourceHolder holder) {
-            // Do nothing for now
+            Object payload = Optional.ofNullable(holder).map(IntegrationResourceHolder::getMessage)
+                                     .map(Message::getPayload).orElse(null);
+            if (payload == null || !(payload instanceof File)) {
+                return;
+            }
+
+            filePersistentAcceptOnceRetriableFileListFilter.rollback((File) payload);
         }
     }
 }
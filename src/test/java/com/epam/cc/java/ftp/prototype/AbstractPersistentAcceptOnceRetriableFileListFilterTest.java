@@ -7,11 +7,24 @@ import org.mockito.Mockito;
 import org.springframework.integration.metadata.ConcurrentMetadataStore;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class AbstractPersistentAcceptOnceRetriableFileListFilterTest {
@@ -184,6 +197,551 @@ public class AbstractPersistentAcceptOnceRetriableFileListFilterTest {
         verify(store, times(2)).get(FILE_A);
     }
 
+    @Test
+    public void testCommitMetricsCase() {
+        SimpleFileProcessingMetrics metrics = new SimpleFileProcessingMetrics();
+        filter.setMetrics(metrics);
+        DummyFile file1 = new DummyFile(FILE_A);
+
+        long timestamp = currentTimestamp();
+        String fileStatus = fileInProgressStatus(1, timestamp);
+        String fileDoneStatus = fileDoneStatus();
+
+        when(store.get(eq(FILE_A))).thenReturn(fileStatus, fileDoneStatus);
+        when(store.replace(eq(FILE_A), eq(fileStatus), Mockito.anyString())).thenReturn(false);
+
+        filter.commit(file1);
+
+        assertThat(metrics.getCounter(".casRetry"), equalTo(1L));
+        assertThat(metrics.getCounter(".commitFoundDone"), equalTo(1L));
+        assertThat(metrics.getCounter(".committed"), equalTo(0L));
+        assertThat(metrics.getHistogram(".store.get").getCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testBatchClaimCase() {
+        BatchConcurrentMetadataStore batchStore = Mockito.mock(BatchConcurrentMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter batchFilter = batchFilter(batchStore);
+
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+        DummyFile file3 = new DummyFile(FILE_C);
+        DummyFile file4 = new DummyFile(FILE_D);
+
+        when(batchStore.multiGet(Mockito.anyListOf(String.class)))
+                .thenReturn(Arrays.asList(null, fileDoneStatus(), null, null));
+        when(batchStore.putAllIfAbsent(Mockito.anyMapOf(String.class, String.class)))
+                .thenReturn(Collections.<String, String>emptyMap());
+
+        List<DummyFile> result = batchFilter.filterFiles(files(file1, file2, file3, file4));
+
+        assertThat(result, contains(file1, file3, file4));
+        verify(batchStore, times(1)).multiGet(Mockito.anyListOf(String.class));
+        verify(batchStore, times(1)).putAllIfAbsent(Mockito.anyMapOf(String.class, String.class));
+        verify(batchStore, never()).putIfAbsent(Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testBatchClaimConcurrentCase() {
+        BatchConcurrentMetadataStore batchStore = Mockito.mock(BatchConcurrentMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter batchFilter = batchFilter(batchStore);
+
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+        DummyFile file3 = new DummyFile(FILE_C);
+        DummyFile file4 = new DummyFile(FILE_D);
+
+        when(batchStore.multiGet(Mockito.anyListOf(String.class)))
+                .thenReturn(Arrays.asList(null, null, null, null));
+        // file A was claimed by another process between read and claim
+        when(batchStore.putAllIfAbsent(Mockito.anyMapOf(String.class, String.class)))
+                .thenReturn(Collections.singletonMap(FILE_A, fileInProgressStatus(1, currentTimestamp())),
+                        Collections.<String, String>emptyMap());
+
+        List<DummyFile> result = batchFilter.filterFiles(files(file1, file2, file3, file4));
+
+        assertThat(result, contains(file2, file3, file4));
+        verify(batchStore, times(2)).putAllIfAbsent(Mockito.anyMapOf(String.class, String.class));
+        verify(batchStore, never()).replace(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testTerminalCacheCase() {
+        DummyFile file1 = new DummyFile(FILE_A);
+
+        mockStatus(FILE_A, fileDoneStatus());
+        filter.setTerminalCacheSize(10);
+
+        assertThat(filter.filterFiles(files(file1)), empty());
+        assertThat(filter.filterFiles(files(file1)), empty());
+
+        verify(store, times(1)).putIfAbsent(eq(FILE_A), Mockito.anyString());
+        verifyNoConcurrentFlow(FILE_A);
+    }
+
+    @Test
+    public void testTerminalCacheRemoveCase() {
+        DummyFile file1 = new DummyFile(FILE_A);
+
+        mockStatus(FILE_A, fileDoneStatus());
+        filter.setTerminalCacheSize(10);
+
+        assertThat(filter.filterFiles(files(file1)), empty());
+        filter.remove(file1);
+        mockStatus(FILE_A, null);
+
+        assertThat(filter.filterFiles(files(file1)), contains(file1));
+        verify(store, times(2)).putIfAbsent(eq(FILE_A), Mockito.anyString());
+    }
+
+    @Test
+    public void testProcessedKeysPersistCase() {
+        filter.setProcessedKeysFilter(100, 0.01);
+        when(store.get(eq(FILE_A))).thenReturn(fileInProgressStatus(1, currentTimestamp()));
+        when(store.replace(eq(FILE_A), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+
+        // commit only marks the filter as changed
+        filter.commit(new DummyFile(FILE_A));
+        verify(store, never()).putIfAbsent(eq("processedKeysBloomFilter-"), Mockito.anyString());
+
+        filter.persistProcessedKeys();
+        verify(store, times(1)).putIfAbsent(eq("processedKeysBloomFilter-"), Mockito.anyString());
+
+        // nothing new - nothing to save
+        filter.persistProcessedKeys();
+        verify(store, times(1)).putIfAbsent(eq("processedKeysBloomFilter-"), Mockito.anyString());
+    }
+
+    @Test
+    public void testProcessedKeysFilterCase() {
+        BatchConcurrentMetadataStore batchStore = Mockito.mock(BatchConcurrentMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter batchFilter = batchFilter(batchStore);
+        batchFilter.setProcessedKeysFilter(100, 0.01);
+
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+
+        // file A was committed before, so only it has to be verified
+        when(batchStore.get(eq(FILE_A))).thenReturn(fileInProgressStatus(1, currentTimestamp()));
+        when(batchStore.replace(eq(FILE_A), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        batchFilter.commit(file1);
+
+        when(batchStore.multiGet(Collections.singletonList(FILE_A)))
+                .thenReturn(Collections.singletonList(fileDoneStatus()));
+        when(batchStore.putAllIfAbsent(Mockito.anyMapOf(String.class, String.class)))
+                .thenReturn(Collections.<String, String>emptyMap());
+
+        List<DummyFile> result = batchFilter.filterFiles(files(file1, file2));
+
+        assertThat(result, contains(file2));
+        verify(batchStore).multiGet(Collections.singletonList(FILE_A));
+    }
+
+    @Test
+    public void testLeaseCase() {
+        filter.setLeaseSeconds(30L);
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+
+        // A is processed for a long time but its owner keeps lease alive, lease of B expired
+        mockStatus(FILE_A, fileLeasedStatus("other", currentTimestamp() - TIMEOUT_RETRY, currentTimestamp() + 30L));
+        mockStatus(FILE_B, fileLeasedStatus("other", currentTimestamp(), currentTimestamp() - 1L));
+        mockConcurrentSuccess(FILE_B, true);
+
+        List<DummyFile> result = filter.filterFiles(files(file1, file2));
+
+        assertThat(result, contains(file2));
+        verify(store).replace(eq(FILE_B), Mockito.anyString(), statusCapture.capture());
+        assertThat(StatusSerializer.fromString(statusCapture.getValue()).getOwner(), equalTo(filter.getNodeId()));
+    }
+
+    @Test
+    public void testRenewLeasesCase() {
+        filter.setLeaseSeconds(30L);
+        DummyFile file1 = new DummyFile(FILE_A);
+
+        mockStatus(FILE_A, null);
+        assertThat(filter.filterFiles(files(file1)), contains(file1));
+        verify(store).putIfAbsent(eq(FILE_A), statusCapture.capture());
+
+        when(store.get(eq(FILE_A))).thenReturn(statusCapture.getValue());
+        mockConcurrentSuccess(FILE_A, true);
+        assertThat(filter.renewLeases(), equalTo(1));
+
+        // file was taken over by another node, so lease is not renewed anymore
+        when(store.get(eq(FILE_A))).thenReturn(fileLeasedStatus("other", currentTimestamp(), currentTimestamp() + 30L));
+        assertThat(filter.renewLeases(), equalTo(0));
+        assertThat(filter.renewLeases(), equalTo(0));
+        verify(store, times(2)).get(FILE_A);
+    }
+
+    @Test
+    public void testRollbackCase() {
+        filter.setLeaseSeconds(30L);
+        DummyFile file1 = new DummyFile(FILE_A);
+
+        when(store.get(eq(FILE_A))).thenReturn(
+                fileLeasedStatus(filter.getNodeId(), currentTimestamp(), currentTimestamp() + 30L));
+        mockConcurrentSuccess(FILE_A, true);
+
+        filter.rollback(file1);
+
+        verify(store).replace(eq(FILE_A), Mockito.anyString(), statusCapture.capture());
+        FileAcceptStatus status = StatusSerializer.fromString(statusCapture.getValue());
+        assertThat(status.getStatus(), equalTo(FileAcceptStatus.IN_PROGRESS));
+        assertThat(status.getLeaseExpiry(), equalTo(0L));
+        assertThat(status.getLastTryTimestamp(), equalTo(0L));
+    }
+
+    @Test
+    public void testCapacityLimitCase() {
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+
+        mockStatus(FILE_A, null);
+        mockStatus(FILE_B, null);
+
+        filter.setCapacitySource(() -> 1);
+        List<DummyFile> result = filter.filterFiles(files(file1, file2));
+
+        assertThat(result, contains(file1));
+        verify(store, never()).putIfAbsent(eq(FILE_B), Mockito.anyString());
+
+        filter.setCapacitySource(() -> 0);
+        result = filter.filterFiles(files(file2));
+
+        assertThat(result, empty());
+        verify(store, never()).putIfAbsent(eq(FILE_B), Mockito.anyString());
+    }
+
+    @Test
+    public void testGroupCommitCase() throws Exception {
+        BatchConcurrentMetadataStore batchStore = Mockito.mock(BatchConcurrentMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter batchFilter = batchFilter(batchStore);
+        batchFilter.setGroupCommitBatchSize(3);
+        batchFilter.setGroupCommitMaxDelay(TimeUnit.MINUTES.toMillis(1));
+
+        String inProgress = fileInProgressStatus(1, currentTimestamp());
+        when(batchStore.multiGet(Mockito.anyListOf(String.class)))
+                .thenReturn(Arrays.asList(inProgress, inProgress, inProgress));
+        when(batchStore.replaceAll(Mockito.anyMapOf(String.class, String.class),
+                Mockito.anyMapOf(String.class, String.class)))
+                .thenReturn(new HashSet<String>(Arrays.asList(FILE_A, FILE_B, FILE_C)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<?>> commits = new ArrayList<Future<?>>();
+        for (String name : Arrays.asList(FILE_A, FILE_B, FILE_C)) {
+            commits.add(executor.submit(() -> batchFilter.commit(new DummyFile(name))));
+        }
+        for (Future<?> commit : commits) {
+            commit.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        verify(batchStore, times(1)).multiGet(Mockito.anyListOf(String.class));
+        verify(batchStore, times(1)).replaceAll(Mockito.anyMapOf(String.class, String.class),
+                Mockito.anyMapOf(String.class, String.class));
+        verify(batchStore, never()).replace(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testCommitUnknownValueCase() {
+        when(store.get(eq(FILE_A))).thenReturn("unknown");
+
+        filter.commit(new DummyFile(FILE_A));
+
+        verify(store, never()).replace(eq(FILE_A), Mockito.anyString(), Mockito.anyString());
+        verify(store, never()).putIfAbsent(eq(FILE_A), Mockito.anyString());
+    }
+
+    @Test
+    public void testGroupCommitUnknownValueCase() throws Exception {
+        SimpleFileProcessingMetrics metrics = new SimpleFileProcessingMetrics();
+        BatchConcurrentMetadataStore batchStore = Mockito.mock(BatchConcurrentMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter batchFilter = batchFilter(batchStore);
+        batchFilter.setMetrics(metrics);
+        batchFilter.setGroupCommitBatchSize(2);
+        batchFilter.setGroupCommitMaxDelay(TimeUnit.MINUTES.toMillis(1));
+
+        String doneStatus = fileDoneStatus();
+        when(batchStore.multiGet(Mockito.anyListOf(String.class))).thenAnswer(invocation -> {
+            List<String> values = new ArrayList<String>();
+            for (Object key : (List<?>) invocation.getArguments()[0]) {
+                values.add(FILE_A.equals(key) ? doneStatus : "unknown");
+            }
+            return values;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<?>> commits = new ArrayList<Future<?>>();
+        for (String name : Arrays.asList(FILE_A, FILE_B)) {
+            commits.add(executor.submit(() -> batchFilter.commit(new DummyFile(name))));
+        }
+        for (Future<?> commit : commits) {
+            commit.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // unknown value is neither committed nor reported as done by another process
+        assertThat(metrics.getCounter(".commitFoundDone"), equalTo(1L));
+        verify(batchStore, never()).replaceAll(Mockito.anyMapOf(String.class, String.class),
+                Mockito.anyMapOf(String.class, String.class));
+        verify(batchStore, never()).putAllIfAbsent(Mockito.anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testGroupCommitRetryCase() {
+        BatchConcurrentMetadataStore batchStore = Mockito.mock(BatchConcurrentMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter batchFilter = batchFilter(batchStore);
+        batchFilter.setGroupCommitBatchSize(10);
+        batchFilter.setGroupCommitMaxDelay(0L);
+
+        String inProgress = fileInProgressStatus(1, currentTimestamp());
+        when(batchStore.multiGet(Mockito.anyListOf(String.class)))
+                .thenReturn(Collections.singletonList(inProgress), Collections.singletonList(fileDoneStatus()));
+        // status was renewed concurrently, so first replace fails
+        when(batchStore.replaceAll(Mockito.anyMapOf(String.class, String.class),
+                Mockito.anyMapOf(String.class, String.class)))
+                .thenReturn(Collections.<String>emptySet());
+
+        batchFilter.commit(new DummyFile(FILE_A));
+
+        verify(batchStore, times(2)).multiGet(Collections.singletonList(FILE_A));
+        verify(batchStore, times(1)).replaceAll(Mockito.anyMapOf(String.class, String.class),
+                Mockito.anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testPriorityCase() {
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+        DummyFile file3 = new DummyFile(FILE_C);
+        DummyFile file4 = new DummyFile(FILE_D);
+
+        mockStatus(FILE_A, null);
+        mockStatus(FILE_B, null);
+        mockStatus(FILE_C, null);
+        // the best file is already processed, next best files are taken instead
+        mockStatus(FILE_D, fileDoneStatus());
+        filter.setPriorityComparator(Comparator.comparing(DummyFile::getName).reversed());
+
+        List<DummyFile> result = filter.filterFiles(files(file1, file2, file3, file4));
+
+        assertThat(result, contains(file3, file2, file1));
+    }
+
+    @Test
+    public void testPriorityWithinLimitCase() {
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+
+        mockStatus(FILE_A, null);
+        mockStatus(FILE_B, null);
+        filter.setPriorityComparator(Comparator.comparing(DummyFile::getName).reversed());
+
+        // listing is not longer than limit - no reason to order it
+        List<DummyFile> result = filter.filterFiles(files(file1, file2));
+
+        assertThat(result, contains(file1, file2));
+    }
+
+    @Test
+    public void testServerSideTransitionsCase() {
+        StatusTransitionMetadataStore transitionStore = Mockito.mock(StatusTransitionMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter transitionFilter =
+                new DummyPersistentAcceptOnceRetriableFileListFilter(transitionStore, "");
+        transitionFilter.setMaxAcceptedFileListLength(MAX_ACCEPT);
+        transitionFilter.setTerminalCacheSize(10);
+        transitionFilter.setServerSideTransitions(true);
+
+        DummyFile file1 = new DummyFile(FILE_A);
+        DummyFile file2 = new DummyFile(FILE_B);
+        DummyFile file3 = new DummyFile(FILE_C);
+        DummyFile file4 = new DummyFile(FILE_D);
+
+        when(transitionStore.claimAll(Mockito.anyListOf(String.class), Mockito.anyLong(),
+                Mockito.any(StatusTransitionMetadataStore.ClaimPolicy.class), Mockito.anyInt()))
+                .thenReturn(Arrays.asList(StatusTransitionMetadataStore.Transition.CLAIMED,
+                        StatusTransitionMetadataStore.Transition.TERMINAL,
+                        StatusTransitionMetadataStore.Transition.RETRIED,
+                        StatusTransitionMetadataStore.Transition.IN_PROGRESS));
+
+        List<DummyFile> result = transitionFilter.filterFiles(files(file1, file2, file3, file4));
+
+        assertThat(result, contains(file1, file3));
+        verify(transitionStore, times(1)).claimAll(eq(Arrays.asList(FILE_A, FILE_B, FILE_C, FILE_D)),
+                Mockito.anyLong(), Mockito.any(StatusTransitionMetadataStore.ClaimPolicy.class), eq(MAX_ACCEPT));
+        verify(transitionStore, never()).replace(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
+
+        // terminal file B is not sent to the store again
+        transitionFilter.filterFiles(files(file1, file2));
+        verify(transitionStore, times(1)).claimAll(eq(Collections.singletonList(FILE_A)),
+                Mockito.anyLong(), Mockito.any(StatusTransitionMetadataStore.ClaimPolicy.class), eq(MAX_ACCEPT));
+    }
+
+    @Test
+    public void testServerSideCommitCase() {
+        StatusTransitionMetadataStore transitionStore = Mockito.mock(StatusTransitionMetadataStore.class);
+        DummyPersistentAcceptOnceRetriableFileListFilter transitionFilter =
+                new DummyPersistentAcceptOnceRetriableFileListFilter(transitionStore, "");
+        transitionFilter.setServerSideTransitions(true);
+
+        when(transitionStore.commitAll(Mockito.anyListOf(String.class), Mockito.any(long[].class),
+                Mockito.any(String[].class)))
+                .thenReturn(Collections.singletonList(StatusTransitionMetadataStore.Transition.COMMITTED));
+
+        transitionFilter.commit(new DummyFile(FILE_A), 5L, "abc");
+
+        verify(transitionStore, times(1)).commitAll(Collections.singletonList(FILE_A), new long[]{5L},
+                new String[]{"abc"});
+        verify(transitionStore, never()).get(Mockito.anyString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testServerSideTransitionsNotSupportedCase() {
+        filter.setServerSideTransitions(true);
+    }
+
+    @Test
+    public void testAsyncClaimPipelineCase() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        try {
+            ScheduledAsyncMetadataStore asyncStore = new ScheduledAsyncMetadataStore(scheduler, 2000L);
+            DummyPersistentAcceptOnceRetriableFileListFilter asyncFilter =
+                    new DummyPersistentAcceptOnceRetriableFileListFilter(asyncStore, "");
+            asyncFilter.setMaxAcceptedFileListLength(MAX_ACCEPT);
+            asyncFilter.setAsyncStoreOperations(true);
+            asyncFilter.setMaxInFlightClaims(8);
+
+            DummyFile[] files = new DummyFile[20];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new DummyFile("file" + i);
+            }
+
+            // blocking adapter claims files concurrently, files claimed over the limit are released
+            List<DummyFile> first = asyncFilter.filterFiles(files);
+            assertThat(first, hasSize(MAX_ACCEPT));
+            assertThat(asyncStore.getMaxInFlight(), greaterThan(1));
+            assertThat(claimedKeys(asyncStore, files), equalTo(MAX_ACCEPT));
+
+            List<DummyFile> second = asyncFilter.filterFilesAsync(files, 2).get(5, TimeUnit.SECONDS);
+            assertThat(second, hasSize(2));
+            assertThat(Collections.disjoint(first, second), equalTo(true));
+            assertThat(claimedKeys(asyncStore, files), equalTo(MAX_ACCEPT + 2));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncCommitCase() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        try {
+            ScheduledAsyncMetadataStore asyncStore = new ScheduledAsyncMetadataStore(scheduler, 0L);
+            DummyPersistentAcceptOnceRetriableFileListFilter asyncFilter =
+                    new DummyPersistentAcceptOnceRetriableFileListFilter(asyncStore, "");
+            asyncFilter.setAsyncStoreOperations(true);
+            DummyFile file1 = new DummyFile(FILE_A);
+            DummyFile file2 = new DummyFile(FILE_B);
+
+            assertThat(asyncFilter.filterFilesAsync(files(file1), 1).get(5, TimeUnit.SECONDS), contains(file1));
+            asyncFilter.commitAsync(file1, 5L, "abc").get(5, TimeUnit.SECONDS);
+            // file that was never claimed is created done
+            asyncFilter.commitAsync(file2).get(5, TimeUnit.SECONDS);
+
+            FileAcceptStatus status = StatusSerializer.fromString(asyncStore.get(FILE_A));
+            assertThat(status.getStatus(), equalTo(FileAcceptStatus.DONE));
+            assertThat(status.getContentDigest(), equalTo("abc"));
+            assertStatus(asyncStore.get(FILE_B), FileAcceptStatus.DONE);
+            assertThat(asyncFilter.filterFiles(files(file1, file2)), empty());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncPriorityCase() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        try {
+            ScheduledAsyncMetadataStore asyncStore = new ScheduledAsyncMetadataStore(scheduler, 0L);
+            DummyPersistentAcceptOnceRetriableFileListFilter asyncFilter =
+                    new DummyPersistentAcceptOnceRetriableFileListFilter(asyncStore, "");
+            asyncFilter.setAsyncStoreOperations(true);
+            asyncFilter.setMaxInFlightClaims(1);
+            asyncFilter.setPriorityComparator(Comparator.comparing(DummyFile::getName).reversed());
+            DummyFile[] files = new DummyFile[6];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new DummyFile(String.valueOf((char) ('A' + i)));
+            }
+            // the best files are already processed, next round takes next best files
+            asyncStore.put("F", fileDoneStatus());
+            asyncStore.put("E", fileDoneStatus());
+
+            List<DummyFile> result = asyncFilter.filterFilesAsync(files, 2).get(5, TimeUnit.SECONDS);
+
+            assertThat(result, contains(files[3], files[2]));
+            assertThat(claimedKeys(asyncStore, files), equalTo(4));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncClaimFailureCase() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        try {
+            ScheduledAsyncMetadataStore asyncStore = new ScheduledAsyncMetadataStore(scheduler, 0L) {
+                @Override
+                public CompletableFuture<String> putIfAbsentAsync(String key, String value) {
+                    if (FILE_B.equals(key)) {
+                        throw new IllegalStateException("connection lost");
+                    }
+                    return super.putIfAbsentAsync(key, value);
+                }
+            };
+            DummyPersistentAcceptOnceRetriableFileListFilter asyncFilter =
+                    new DummyPersistentAcceptOnceRetriableFileListFilter(asyncStore, "");
+            asyncFilter.setAsyncStoreOperations(true);
+
+            CompletableFuture<List<DummyFile>> result =
+                    asyncFilter.filterFilesAsync(files(new DummyFile(FILE_A), new DummyFile(FILE_B)), 2);
+
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("exception expected");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAsyncStoreOperationsNotSupportedCase() {
+        filter.setAsyncStoreOperations(true);
+    }
+
+    private static int claimedKeys(ConcurrentMetadataStore store, DummyFile[] files) {
+        int claimed = 0;
+        for (DummyFile file : files) {
+            if (store.get(file.getName()) != null) {
+                claimed++;
+            }
+        }
+        return claimed;
+    }
+
+    private DummyPersistentAcceptOnceRetriableFileListFilter batchFilter(BatchConcurrentMetadataStore batchStore) {
+        DummyPersistentAcceptOnceRetriableFileListFilter batchFilter =
+                new DummyPersistentAcceptOnceRetriableFileListFilter(batchStore, "");
+
+        batchFilter.setMaxAcceptedFileListLength(MAX_ACCEPT);
+        batchFilter.setMaxTry(MAX_TRY);
+
+        return batchFilter;
+    }
+
     private void verifyNoConcurrentFlow(String key) {
         verify(store, times(1)).get(key);
     }
@@ -211,6 +769,17 @@ public class AbstractPersistentAcceptOnceRetriableFileListFilterTest {
         return fileStatus(FileAcceptStatus.DONE, 1, currentTimestamp());
     }
 
+    private static String fileLeasedStatus(String owner, long timestamp, long leaseExpiry) {
+        FileAcceptStatus acceptStatus = new FileAcceptStatus();
+
+        acceptStatus.setTries(1);
+        acceptStatus.setLastTryTimestamp(timestamp);
+        acceptStatus.setOwner(owner);
+        acceptStatus.setLeaseExpiry(leaseExpiry);
+
+        return StatusSerializer.toString(acceptStatus);
+    }
+
     private static String fileStatus(int status, int tries, long timestamp) {
         FileAcceptStatus acceptStatus = new FileAcceptStatus();
 
@@ -0,0 +1,99 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.integration.metadata.SimpleMetadataStore;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.util.Date;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdaptivePollTriggerTest {
+
+    private static long PERIOD = 1000L;
+    private static long MAX_PERIOD = 5000L;
+
+    AdaptivePollTrigger trigger;
+    DummyPersistentAcceptOnceRetriableFileListFilter filter;
+
+    @Before
+    public void init() {
+        trigger = new AdaptivePollTrigger(PERIOD);
+        trigger.setMaxPeriod(MAX_PERIOD);
+
+        ConcurrentMetadataStore store = new SimpleMetadataStore();
+        filter = new DummyPersistentAcceptOnceRetriableFileListFilter(store, "");
+        filter.setMaxAcceptedFileListLength(2);
+        filter.setPollListener(trigger);
+    }
+
+    @Test
+    public void testBackOffWhenIdleCase() {
+        assertThat(trigger.currentDelay(), is(PERIOD));
+
+        filter.filterFiles(new DummyFile[0]);
+        assertThat(trigger.currentDelay(), is(2 * PERIOD));
+
+        filter.filterFiles(new DummyFile[0]);
+        assertThat(trigger.currentDelay(), is(4 * PERIOD));
+
+        filter.filterFiles(new DummyFile[0]);
+        assertThat(trigger.currentDelay(), is(MAX_PERIOD));
+
+        filter.filterFiles(files("A"));
+        assertThat(trigger.currentDelay(), is(PERIOD));
+    }
+
+    @Test
+    public void testImmediatePollOnBacklogCase() {
+        filter.filterFiles(files("A", "B", "C"));
+        assertThat(trigger.currentDelay(), is(0L));
+
+        // only C is left
+        filter.filterFiles(files("A", "B", "C"));
+        assertThat(trigger.currentDelay(), is(PERIOD));
+    }
+
+    @Test
+    public void testSaturatedCase() {
+        CapacitySource capacity = mock(CapacitySource.class);
+        when(capacity.availableCapacity()).thenReturn(0);
+        trigger.setCapacitySource(capacity);
+
+        filter.filterFiles(files("A", "B", "C"));
+        assertThat(trigger.currentDelay(), is(PERIOD));
+
+        when(capacity.availableCapacity()).thenReturn(1);
+        assertThat(trigger.currentDelay(), is(0L));
+    }
+
+    @Test
+    public void testNoBackOffWhenFilterIsSaturatedCase() {
+        filter.setCapacitySource(() -> 0);
+
+        filter.filterFiles(files("A"));
+        assertThat(trigger.currentDelay(), is(0L));
+    }
+
+    @Test
+    public void testDelayFromLastCompletionCase() {
+        SimpleTriggerContext context = new SimpleTriggerContext();
+        Date completion = new Date(10000L);
+        context.update(new Date(9000L), new Date(9500L), completion);
+
+        assertThat(trigger.nextExecutionTime(context), is(new Date(completion.getTime() + PERIOD)));
+    }
+
+    private static DummyFile[] files(String... names) {
+        DummyFile[] files = new DummyFile[names.length];
+        for (int i = 0; i < names.length; i++) {
+            files[i] = new DummyFile(names[i]);
+        }
+        return files;
+    }
+}
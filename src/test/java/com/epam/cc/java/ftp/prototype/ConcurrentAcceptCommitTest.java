@@ -0,0 +1,146 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Contention test: independent files must be claimed and committed in parallel by executor threads.
+ */
+public class ConcurrentAcceptCommitTest {
+
+    private static int FILES = 96;
+    private static long ROUND_TRIP_MICROS = 2000L;
+
+    @Test
+    public void testOverlappingStoreCallsCase() throws Exception {
+        int threads = 4;
+        CountDownLatch overlapping = new CountDownLatch(threads);
+        LatencyInjectingMetadataStore store = new LatencyInjectingMetadataStore(0L) {
+            @Override
+            public String putIfAbsent(String key, String value) {
+                // the first calls wait for each other, so they complete only if all threads are in the store at once
+                overlapping.countDown();
+                try {
+                    overlapping.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.putIfAbsent(key, value);
+            }
+        };
+        DummyPersistentAcceptOnceRetriableFileListFilter filter =
+                new DummyPersistentAcceptOnceRetriableFileListFilter(store, "");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int filesPerThread = FILES / threads;
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < threads; i++) {
+            DummyFile[] files = files(i * filesPerThread, filesPerThread);
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int accepted = 0;
+                    for (DummyFile file : files) {
+                        if (!filter.filterFiles(new DummyFile[]{file}).isEmpty()) {
+                            filter.commit(file);
+                            accepted++;
+                        }
+                    }
+                    return accepted;
+                }
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get();
+        }
+        executor.shutdown();
+
+        assertThat(overlapping.getCount(), equalTo(0L));
+        assertThat(total, equalTo(FILES));
+    }
+
+    @Test
+    public void testEveryFileAcceptedOnceCase() throws Exception {
+        LatencyInjectingMetadataStore store = new LatencyInjectingMetadataStore(0L);
+        DummyPersistentAcceptOnceRetriableFileListFilter filter =
+                new DummyPersistentAcceptOnceRetriableFileListFilter(store, "");
+        filter.setMaxAcceptedFileListLength(1);
+        DummyFile[] files = files(0, FILES);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int accepted = 0;
+                    List<DummyFile> batch;
+                    while (!(batch = filter.filterFiles(files)).isEmpty()) {
+                        accepted += batch.size();
+                        filter.commit(batch.get(0));
+                    }
+                    return accepted;
+                }
+            }));
+        }
+
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get();
+        }
+        executor.shutdown();
+
+        assertThat(total, equalTo(FILES));
+    }
+
+    @Test
+    public void testParallelClaimLimitCase() throws Exception {
+        LatencyInjectingMetadataStore store =
+                new LatencyInjectingMetadataStore(TimeUnit.MICROSECONDS.toNanos(ROUND_TRIP_MICROS));
+        DummyPersistentAcceptOnceRetriableFileListFilter filter =
+                new DummyPersistentAcceptOnceRetriableFileListFilter(store, "");
+        ForkJoinPool pool = new ForkJoinPool(8);
+        filter.setClaimPool(pool);
+        filter.setParallelThreshold(4);
+        filter.setMaxAcceptedFileListLength(10);
+        SimpleFileProcessingMetrics metrics = new SimpleFileProcessingMetrics();
+        filter.setMetrics(metrics);
+        DummyFile[] files = files(0, FILES);
+
+        List<DummyFile> accepted = filter.filterFiles(files);
+        pool.shutdown();
+
+        int claimed = 0;
+        for (DummyFile file : files) {
+            if (store.get(file.getName()) != null) {
+                claimed++;
+            }
+        }
+        assertThat(accepted, hasSize(10));
+        // files claimed over the limit must be released
+        assertThat(claimed, equalTo(10));
+        assertThat(metrics.getCounter(".accepted"), equalTo(10L));
+    }
+
+    private static DummyFile[] files(int from, int count) {
+        DummyFile[] files = new DummyFile[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = new DummyFile("file-" + (from + i));
+        }
+        return files;
+    }
+}
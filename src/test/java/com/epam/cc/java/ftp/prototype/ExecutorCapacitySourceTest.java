@@ -0,0 +1,61 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ExecutorCapacitySourceTest {
+
+    ThreadPoolExecutor executor;
+    CountDownLatch release;
+
+    @Before
+    public void init() {
+        executor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void cleanup() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testIdleExecutorCase() {
+        assertThat(new ExecutorCapacitySource(executor).availableCapacity(), equalTo(2));
+    }
+
+    @Test
+    public void testCapacityQueriedByPollerThreadCase() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        ExecutorCapacitySource capacitySource = new ExecutorCapacitySource(executor);
+        // the polling thread is active while it asks for capacity, but it processes what it claims
+        assertThat(executor.submit(capacitySource::availableCapacity).get(5, TimeUnit.SECONDS), equalTo(0));
+
+        capacitySource.setReserved(1);
+        assertThat(executor.submit(capacitySource::availableCapacity).get(5, TimeUnit.SECONDS), equalTo(1));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.when;
+
+public class ExtendedRedisMetadataStoreTest {
+
+    StringRedisTemplate redisTemplate;
+    ExtendedRedisMetadataStore store;
+
+    @Before
+    public void init() {
+        redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        store = new ExtendedRedisMetadataStore(redisTemplate, "metadata");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testShortReplyCase() throws Exception {
+        when(redisTemplate.execute(any(RedisScript.class), anyListOf(String.class), Mockito.<Object>anyVararg()))
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Collections.singletonList("=1"));
+
+        assertFailed(store.getAsync("A"), IllegalStateException.class);
+        // dispatching continues after failure
+        assertThat(store.getAsync("A").get(5, TimeUnit.SECONDS), equalTo("1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testScriptFailureCase() throws Exception {
+        when(redisTemplate.execute(any(RedisScript.class), anyListOf(String.class), Mockito.<Object>anyVararg()))
+                .thenThrow(new IllegalStateException("connection lost"))
+                .thenReturn(null)
+                .thenReturn(Collections.singletonList("=1"));
+
+        assertFailed(store.getAsync("A"), IllegalStateException.class);
+        assertFailed(store.getAsync("A"), IllegalStateException.class);
+        assertThat(store.getAsync("A").get(5, TimeUnit.SECONDS), equalTo("1"));
+    }
+
+    private static void assertFailed(CompletableFuture<?> future, Class<? extends Throwable> type) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("exception expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(type));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.integration.metadata.SimpleMetadataStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FtpExtendedInboundFileSynchronizerTest {
+
+    private static String REMOTE_DIRECTORY = "/in";
+
+    @Rule
+    public TemporaryFolder localDirectory = new TemporaryFolder();
+
+    SessionFactory<FTPFile> sessionFactory;
+    Session<FTPFile> session;
+    CommitableFilter<FTPFile> filter;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        sessionFactory = Mockito.mock(SessionFactory.class);
+        session = Mockito.mock(Session.class);
+        filter = Mockito.mock(CommitableFilter.class);
+
+        when(sessionFactory.getSession()).thenReturn(session);
+    }
+
+    @Test
+    public void testParallelDownloadFailureIsolationCase() throws IOException {
+        FTPFile file1 = file("A");
+        FTPFile file2 = file("B");
+        FTPFile file3 = file("C");
+        FTPFile[] files = new FTPFile[]{file1, file2, file3};
+
+        when(session.list(REMOTE_DIRECTORY)).thenReturn(files);
+        when(filter.filterFiles(files)).thenReturn(Arrays.asList(files));
+        doThrow(new IOException("connection reset"))
+                .when(session).read(eq(REMOTE_DIRECTORY + "/B"), any(OutputStream.class));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            FtpExtendedInboundFileSynchronizer synchronizer = new FtpExtendedInboundFileSynchronizer(sessionFactory);
+            synchronizer.setRemoteDirectory(REMOTE_DIRECTORY);
+            synchronizer.setFilter(filter);
+            synchronizer.setCommitableFilter(filter);
+            synchronizer.setDownloadExecutor(executor);
+
+            synchronizer.synchronizeToLocalDirectory(localDirectory.getRoot());
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(filter).commit(file1);
+        verify(filter).commit(file3);
+        verify(filter, never()).commit(file2);
+        verify(filter).rollback(file2);
+        // one session for listing and one per file
+        verify(session, times(4)).close();
+        assertThat(new File(localDirectory.getRoot(), "A").exists(), equalTo(true));
+        assertThat(new File(localDirectory.getRoot(), "B").exists(), equalTo(false));
+        verify(session, times(3)).read(anyString(), any(OutputStream.class));
+    }
+
+    @Test
+    public void testResumeTransferCase() throws IOException {
+        ResumableFilter resumableFilter = Mockito.mock(ResumableFilter.class);
+        FTPClient client = Mockito.mock(FTPClient.class);
+        FTPFile file1 = file("A");
+        file1.setSize(11L);
+
+        // previous try saved 5 bytes, staging file has more bytes that were not confirmed
+        Files.write(new File(localDirectory.getRoot(), "A.writing").toPath(),
+                "hello, garbage".getBytes(StandardCharsets.US_ASCII));
+        CRC32 checksum = new CRC32();
+        checksum.update("hello".getBytes(StandardCharsets.US_ASCII));
+        FileAcceptStatus status = new FileAcceptStatus();
+        status.setTransferredBytes(5L);
+        status.setTransferChecksum(checksum.getValue());
+
+        when(resumableFilter.getStatus(file1)).thenReturn(status);
+        when(session.getClientInstance()).thenReturn(client);
+        when(session.readRaw(REMOTE_DIRECTORY + "/A"))
+                .thenReturn(new ByteArrayInputStream(" world".getBytes(StandardCharsets.US_ASCII)));
+        when(session.finalizeRaw()).thenReturn(true);
+
+        FtpExtendedInboundFileSynchronizer synchronizer = new FtpExtendedInboundFileSynchronizer(sessionFactory);
+        synchronizer.setCommitableFilter(resumableFilter);
+        synchronizer.setResumableTransfers(true);
+        synchronizer.copyFileToLocalDirectory(REMOTE_DIRECTORY, file1, localDirectory.getRoot(), session);
+
+        verify(client).setRestartOffset(5L);
+        verify(resumableFilter).commit(file1);
+        assertThat(new String(Files.readAllBytes(new File(localDirectory.getRoot(), "A").toPath()),
+                StandardCharsets.US_ASCII), equalTo("hello world"));
+    }
+
+    @Test
+    public void testDigestCase() throws IOException {
+        ResumableFilter resumableFilter = Mockito.mock(ResumableFilter.class);
+        FTPClient client = Mockito.mock(FTPClient.class);
+        FTPFile file1 = file("A");
+        file1.setSize(11L);
+
+        // digest of resumed transfer must include bytes of staging file
+        Files.write(new File(localDirectory.getRoot(), "A.writing").toPath(),
+                "hello".getBytes(StandardCharsets.US_ASCII));
+        CRC32 checksum = new CRC32();
+        checksum.update("hello".getBytes(StandardCharsets.US_ASCII));
+        FileAcceptStatus status = new FileAcceptStatus();
+        status.setTransferredBytes(5L);
+        status.setTransferChecksum(checksum.getValue());
+
+        when(resumableFilter.getStatus(file1)).thenReturn(status);
+        when(session.getClientInstance()).thenReturn(client);
+        when(session.readRaw(REMOTE_DIRECTORY + "/A"))
+                .thenReturn(new ByteArrayInputStream(" world".getBytes(StandardCharsets.US_ASCII)));
+        when(session.finalizeRaw()).thenReturn(true);
+
+        FtpExtendedInboundFileSynchronizer synchronizer = new FtpExtendedInboundFileSynchronizer(sessionFactory);
+        synchronizer.setCommitableFilter(resumableFilter);
+        synchronizer.setResumableTransfers(true);
+        synchronizer.setDigestAlgorithm("SHA-256");
+        synchronizer.setTransferBufferSize(4);
+        synchronizer.copyFileToLocalDirectory(REMOTE_DIRECTORY, file1, localDirectory.getRoot(), session);
+
+        verify(resumableFilter).commit(file1, 11L,
+                "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9");
+        verify(resumableFilter, never()).commit(file1);
+        assertThat(new String(Files.readAllBytes(new File(localDirectory.getRoot(), "A").toPath()),
+                StandardCharsets.US_ASCII), equalTo("hello world"));
+    }
+
+    @Test
+    public void testRemoteDirectoriesRoundRobinCase() throws IOException {
+        when(session.list("/a")).thenReturn(new FTPFile[]{file("A1"), file("A2"), file("A3")});
+        when(session.list("/b")).thenReturn(new FTPFile[]{file("B1"), file("B2"), file("B3")});
+
+        ConcurrentMetadataStore store = new SimpleMetadataStore();
+        FtpRemoteDirectory directoryA =
+                new FtpRemoteDirectory("/a", new FtpPersistentAcceptOnceRetriableFileListFilter(store, "a-"));
+        directoryA.setQuota(2);
+        FtpRemoteDirectory directoryB =
+                new FtpRemoteDirectory("/b", new FtpPersistentAcceptOnceRetriableFileListFilter(store, "b-"));
+        directoryB.setQuota(1);
+
+        FtpExtendedInboundFileSynchronizer synchronizer = new FtpExtendedInboundFileSynchronizer(sessionFactory);
+        synchronizer.addRemoteDirectory(directoryA);
+        synchronizer.addRemoteDirectory(directoryB);
+        synchronizer.setMaxFilesPerPoll(2);
+
+        // budget is used by the first directory
+        Map<FtpRemoteDirectory, List<FTPFile>> accepted = synchronizer.listAcceptedFilesOfDirectories();
+        assertThat(accepted.keySet(), contains(directoryA));
+        assertThat(accepted.get(directoryA), hasSize(2));
+
+        // next poll starts from the second directory, turn of the first one is cut by the budget
+        accepted = synchronizer.listAcceptedFilesOfDirectories();
+        assertThat(accepted.keySet(), contains(directoryB, directoryA));
+        assertThat(accepted.get(directoryB), hasSize(1));
+        assertThat(accepted.get(directoryA), hasSize(1));
+
+        // the first directory has nothing left, so the second one gets the rest of the budget
+        accepted = synchronizer.listAcceptedFilesOfDirectories();
+        assertThat(accepted.keySet(), contains(directoryB));
+        assertThat(accepted.get(directoryB), hasSize(1));
+        // all directories are listed in one session per poll
+        verify(sessionFactory, times(3)).getSession();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRemoteDirectoryFilterCase() throws IOException {
+        CommitableFilter<FTPFile> filterA = Mockito.mock(CommitableFilter.class);
+        CommitableFilter<FTPFile> filterB = Mockito.mock(CommitableFilter.class);
+        FTPFile file1 = file("A");
+
+        when(session.list("/a")).thenReturn(new FTPFile[]{file1});
+        when(session.list("/b")).thenThrow(new IOException("no such directory"));
+        when(filterA.filterFiles(any(FTPFile[].class), eq(10))).thenReturn(Collections.singletonList(file1));
+
+        FtpRemoteDirectory directoryA = new FtpRemoteDirectory("/a", filterA);
+        directoryA.setLocalSubdirectory("a");
+        FtpExtendedInboundFileSynchronizer synchronizer = new FtpExtendedInboundFileSynchronizer(sessionFactory);
+        synchronizer.addRemoteDirectory(new FtpRemoteDirectory("/b", filterB));
+        synchronizer.addRemoteDirectory(directoryA);
+        synchronizer.setCommitableFilter(filter);
+
+        synchronizer.synchronizeToLocalDirectory(localDirectory.getRoot());
+
+        verify(filterA).commit(file1);
+        verify(filter, never()).commit(any(FTPFile.class));
+        verify(filterB, never()).filterFiles(any(FTPFile[].class), Mockito.anyInt());
+        assertThat(new File(localDirectory.getRoot(), "a/A").exists(), equalTo(true));
+    }
+
+    private interface ResumableFilter extends CommitableFilter<FTPFile>, TransferProgressTracker<FTPFile> {
+    }
+
+    private static FTPFile file(String name) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setType(FTPFile.FILE_TYPE);
+        file.setSize(0L);
+        return file;
+    }
+}
@@ -0,0 +1,177 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.metadata.SimpleMetadataStore;
+
+import java.util.Calendar;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FtpListingSnapshotTest {
+
+    private static String REMOTE_DIRECTORY = "/in";
+    private static String POINTER_KEY = "listingSnapshot-" + REMOTE_DIRECTORY;
+
+    ConcurrentMap<String, String> metadata;
+    SimpleMetadataStore store;
+
+    @Before
+    public void init() {
+        metadata = new ConcurrentHashMap<String, String>();
+        store = new SimpleMetadataStore(metadata);
+    }
+
+    @Test
+    public void testUnchangedProcessedFilesAreDroppedCase() {
+        FtpListingSnapshot snapshot = new FtpListingSnapshot(store);
+        FTPFile file1 = file("A", 10L, 1000L);
+        FTPFile file2 = file("B", 20L, 2000L);
+        FTPFile[] listing = new FTPFile[]{file1, file2};
+
+        assertThat(snapshot.changedFiles(REMOTE_DIRECTORY, listing), contains(file1, file2));
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file1);
+        assertThat(snapshot.changedFiles(REMOTE_DIRECTORY, listing), contains(file2));
+        snapshot.persist(REMOTE_DIRECTORY, listing);
+
+        // another process reads snapshot from store
+        FtpListingSnapshot otherSnapshot = new FtpListingSnapshot(store);
+        FTPFile changedFile1 = file("A", 15L, 3000L);
+        assertThat(otherSnapshot.changedFiles(REMOTE_DIRECTORY, listing), contains(file2));
+        assertThat(otherSnapshot.changedFiles(REMOTE_DIRECTORY, new FTPFile[]{changedFile1, file2}),
+                contains(changedFile1, file2));
+    }
+
+    @Test
+    public void testConcurrentPersistAndPruneCase() {
+        FtpListingSnapshot snapshot = new FtpListingSnapshot(store);
+        FtpListingSnapshot otherSnapshot = new FtpListingSnapshot(store);
+        FTPFile file1 = file("A", 10L, 1000L);
+        FTPFile file2 = file("B", 20L, 2000L);
+        FTPFile file3 = file("C", 30L, 3000L);
+        FTPFile[] listing = new FTPFile[]{file1, file2, file3};
+
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file1);
+        snapshot.persist(REMOTE_DIRECTORY, listing);
+        otherSnapshot.recordProcessed(REMOTE_DIRECTORY, file2);
+        otherSnapshot.persist(REMOTE_DIRECTORY, listing);
+
+        assertThat(new FtpListingSnapshot(store).changedFiles(REMOTE_DIRECTORY, listing), contains(file3));
+
+        // A was removed from remote directory, so it's removed from snapshot on next update
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file3);
+        snapshot.persist(REMOTE_DIRECTORY, new FTPFile[]{file2, file3});
+
+        assertThat(new FtpListingSnapshot(store).changedFiles(REMOTE_DIRECTORY, listing), contains(file1));
+        assertThat(new FtpListingSnapshot(store).changedFiles(REMOTE_DIRECTORY, new FTPFile[]{file2, file3}),
+                empty());
+        // pointer and three change sets
+        assertThat(metadata.size(), equalTo(4));
+    }
+
+    @Test
+    public void testOnlyChangesAreWrittenCase() {
+        FtpListingSnapshot snapshot = new FtpListingSnapshot(store);
+        FTPFile[] listing = new FTPFile[100];
+        for (int i = 0; i < listing.length; i++) {
+            listing[i] = file("file" + i, i, 1000L);
+            snapshot.recordProcessed(REMOTE_DIRECTORY, listing[i]);
+        }
+        snapshot.persist(REMOTE_DIRECTORY, listing);
+
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file("file0", 5L, 2000L));
+        snapshot.persist(REMOTE_DIRECTORY, listing);
+
+        assertThat(metadata.get(POINTER_KEY), equalTo("2"));
+        assertThat(metadata.get(POINTER_KEY + "@2"), equalTo("5@2000/file0\n"));
+        assertThat(new FtpListingSnapshot(store).changedFiles(REMOTE_DIRECTORY, listing), contains(listing[0]));
+    }
+
+    @Test
+    public void testCompactionCase() {
+        FtpListingSnapshot snapshot = new FtpListingSnapshot(store);
+        snapshot.setCompactionInterval(2);
+        FtpListingSnapshot laggingSnapshot = new FtpListingSnapshot(store);
+        FTPFile file1 = file("A", 10L, 1000L);
+        FTPFile file2 = file("B", 20L, 2000L);
+        FTPFile file3 = file("C", 30L, 3000L);
+        FTPFile[] listing = new FTPFile[]{file1, file2, file3};
+
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file1);
+        snapshot.persist(REMOTE_DIRECTORY, listing);
+        assertThat(laggingSnapshot.changedFiles(REMOTE_DIRECTORY, listing), contains(file2, file3));
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file2);
+        snapshot.persist(REMOTE_DIRECTORY, listing);
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file3);
+        snapshot.persist(REMOTE_DIRECTORY, listing);
+
+        // change sets 1 and 2 are replaced by base
+        assertThat(metadata.containsKey(POINTER_KEY + "@1"), is(false));
+        assertThat(metadata.containsKey(POINTER_KEY + "@2"), is(false));
+        assertThat(metadata.get(POINTER_KEY + "@base"), equalTo("2"));
+        assertThat(laggingSnapshot.changedFiles(REMOTE_DIRECTORY, listing), empty());
+        assertThat(new FtpListingSnapshot(store).changedFiles(REMOTE_DIRECTORY, listing), empty());
+    }
+
+    @Test
+    public void testFailedWriteCase() {
+        SimpleMetadataStore failingStore = new SimpleMetadataStore(metadata) {
+            @Override
+            public String putIfAbsent(String key, String value) {
+                throw new IllegalStateException("connection lost");
+            }
+        };
+        FtpListingSnapshot snapshot = new FtpListingSnapshot(failingStore);
+        FTPFile file1 = file("A", 10L, 1000L);
+
+        snapshot.recordProcessed(REMOTE_DIRECTORY, file1);
+        try {
+            snapshot.persist(REMOTE_DIRECTORY, new FTPFile[]{file1});
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertThat(metadata.isEmpty(), is(true));
+        // file is still pending and saved by next persist
+        assertThat(snapshot.changedFiles(REMOTE_DIRECTORY, new FTPFile[]{file1}), empty());
+    }
+
+    @Test
+    public void testStaleKeysCase() {
+        FtpListingSnapshot snapshot = new FtpListingSnapshot(store);
+        metadata.put(POINTER_KEY, "5");
+        metadata.put(POINTER_KEY + "@base", "4");
+
+        assertThat(snapshot.isStale(POINTER_KEY), is(false));
+        assertThat(snapshot.isStale(POINTER_KEY + "@base"), is(false));
+        // left by compaction that did not complete
+        assertThat(snapshot.isStale(POINTER_KEY + "@3"), is(true));
+        assertThat(snapshot.isStale(POINTER_KEY + "@4"), is(true));
+        assertThat(snapshot.isStale(POINTER_KEY + "@base-2"), is(true));
+        assertThat(snapshot.isStale(POINTER_KEY + "@5"), is(false));
+        assertThat(snapshot.isStale(POINTER_KEY + "@base-4"), is(false));
+        // base which is being saved
+        assertThat(snapshot.isStale(POINTER_KEY + "@base-6"), is(false));
+        assertThat(snapshot.isStale(POINTER_KEY + "@legacy"), is(false));
+    }
+
+    private static FTPFile file(String name, long size, long timestamp) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setType(FTPFile.FILE_TYPE);
+        file.setSize(size);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        file.setTimestamp(calendar);
+        return file;
+    }
+}
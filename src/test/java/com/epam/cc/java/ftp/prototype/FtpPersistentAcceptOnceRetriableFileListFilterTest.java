@@ -0,0 +1,81 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.metadata.SimpleMetadataStore;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class FtpPersistentAcceptOnceRetriableFileListFilterTest {
+
+    private static long TIMESTAMP = 1474020000000L;
+
+    FtpPersistentAcceptOnceRetriableFileListFilter filter;
+
+    @Before
+    public void init() {
+        filter = new FtpPersistentAcceptOnceRetriableFileListFilter(new SimpleMetadataStore(), "remote-");
+        filter.setFingerprintKeys(true);
+    }
+
+    @Test
+    public void testChangedFileIsAcceptedCase() {
+        FTPFile original = file("report.csv", 10L, TIMESTAMP);
+        filter.filterFiles(new FTPFile[]{original});
+        filter.commit(original);
+
+        List<FTPFile> unchanged = filter.filterFiles(new FTPFile[]{file("report.csv", 10L, TIMESTAMP)});
+        assertThat(unchanged, empty());
+
+        FTPFile reuploaded = file("report.csv", 12L, TIMESTAMP + 60000L);
+        List<FTPFile> result = filter.filterFiles(new FTPFile[]{reuploaded});
+        assertThat(result, contains(reuploaded));
+    }
+
+    @Test
+    public void testVersionedNameCase() {
+        FTPFile file = file("report.csv", 10L, TIMESTAMP);
+
+        assertThat(filter.versionedName(file), equalTo("report.csv/10@20160916"));
+        // 2016-01-05 UTC
+        assertThat(filter.versionedName(file("report.csv", 10L, 1451952000000L)), equalTo("report.csv/10@20160105"));
+
+        filter.setFingerprintKeys(false);
+        assertThat(filter.versionedName(file), equalTo("report.csv"));
+    }
+
+    @Test
+    public void testListingPrecisionChangeCase() {
+        FTPFile recent = file("report.csv", 10L, TIMESTAMP);
+        filter.filterFiles(new FTPFile[]{recent});
+        filter.commit(recent);
+
+        // LIST reports date only when the file gets older than 6 months
+        Calendar date = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        date.setTimeInMillis(TIMESTAMP);
+        date.set(Calendar.HOUR_OF_DAY, 0);
+        date.set(Calendar.MINUTE, 0);
+        FTPFile old = file("report.csv", 10L, date.getTimeInMillis());
+
+        assertThat(filter.filterFiles(new FTPFile[]{old}), empty());
+    }
+
+    private static FTPFile file(String name, long size, long timestamp) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setType(FTPFile.FILE_TYPE);
+        file.setSize(size);
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(timestamp);
+        file.setTimestamp(calendar);
+        return file;
+    }
+}
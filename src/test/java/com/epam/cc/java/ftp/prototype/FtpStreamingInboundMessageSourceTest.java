@@ -0,0 +1,122 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.integration.transaction.IntegrationResourceHolder;
+import org.springframework.messaging.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FtpStreamingInboundMessageSourceTest {
+
+    private static String REMOTE_DIRECTORY = "/in";
+
+    SessionFactory<FTPFile> sessionFactory;
+    Session<FTPFile> session;
+    CommitableFilter<FTPFile> filter;
+    FTPFile file1;
+
+    FtpStreamingInboundMessageSource source;
+    StreamingTransactionSynchronizationProcessor processor;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() throws IOException {
+        sessionFactory = Mockito.mock(SessionFactory.class);
+        session = Mockito.mock(Session.class);
+        filter = Mockito.mock(CommitableFilter.class);
+
+        file1 = new FTPFile();
+        file1.setName("A");
+        file1.setType(FTPFile.FILE_TYPE);
+        file1.setSize(5L);
+        FTPFile[] files = new FTPFile[]{file1};
+
+        when(sessionFactory.getSession()).thenReturn(session);
+        when(session.list(REMOTE_DIRECTORY)).thenReturn(files);
+        when(session.readRaw(REMOTE_DIRECTORY + "/A"))
+                .thenReturn(new ByteArrayInputStream("hello".getBytes(StandardCharsets.US_ASCII)));
+        when(session.finalizeRaw()).thenReturn(true);
+        when(filter.filterFiles(files)).thenReturn(Collections.singletonList(file1));
+
+        FtpExtendedInboundFileSynchronizer synchronizer = new FtpExtendedInboundFileSynchronizer(sessionFactory);
+        synchronizer.setRemoteDirectory(REMOTE_DIRECTORY);
+        synchronizer.setFilter(filter);
+        synchronizer.setCommitableFilter(filter);
+
+        source = new FtpStreamingInboundMessageSource(synchronizer);
+        processor = new StreamingTransactionSynchronizationProcessor(synchronizer);
+    }
+
+    @Test
+    public void testCommitConsumedStreamCase() throws IOException {
+        Message<InputStream> message = source.receive();
+
+        assertThat(message.getPayload(), instanceOf(RemoteFileInputStream.class));
+        assertThat(message.getHeaders().get(FileHeaders.REMOTE_FILE), equalTo((Object) "A"));
+        byte[] buffer = new byte[16];
+        while (message.getPayload().read(buffer) >= 0) {
+            // consume whole stream
+        }
+
+        processor.processAfterCommit(holder(message));
+
+        verify(filter).commit(file1);
+        verify(session).finalizeRaw();
+        // listing session and session of the stream
+        verify(session, times(2)).close();
+    }
+
+    @Test
+    public void testRollbackPartiallyConsumedStreamCase() throws IOException {
+        Message<InputStream> message = source.receive();
+        message.getPayload().read();
+
+        processor.processAfterCommit(holder(message));
+
+        verify(filter, never()).commit(file1);
+        verify(filter).rollback(file1);
+    }
+
+    @Test
+    public void testRollbackQueuedFilesOnStopCase() throws IOException {
+        FTPFile file2 = new FTPFile();
+        file2.setName("B");
+        file2.setType(FTPFile.FILE_TYPE);
+        FTPFile[] files = new FTPFile[]{file1, file2};
+        when(session.list(REMOTE_DIRECTORY)).thenReturn(files);
+        when(filter.filterFiles(files)).thenReturn(Arrays.asList(files));
+
+        source.start();
+        source.receive();
+        source.stop();
+
+        // emitted file is completed by transaction, only queued file is rolled back
+        verify(filter, never()).rollback(file1);
+        verify(filter).rollback(file2);
+    }
+
+    private static IntegrationResourceHolder holder(Message<?> message) {
+        IntegrationResourceHolder holder = new IntegrationResourceHolder();
+        holder.setMessage(message);
+        return holder;
+    }
+}
@@ -0,0 +1,67 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory {@link ConcurrentMetadataStore} that simulates network round trip (e.g. to Redis) for every operation.
+ * Shared by tests and benchmarks.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class LatencyInjectingMetadataStore implements ConcurrentMetadataStore {
+
+    protected final ConcurrentMap<String, String> metadata = new ConcurrentHashMap<String, String>();
+
+    private final long roundTripNanos;
+
+    public LatencyInjectingMetadataStore(long roundTripNanos) {
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        roundTrip();
+        return metadata.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, String oldValue, String newValue) {
+        roundTrip();
+        return metadata.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        roundTrip();
+        metadata.put(key, value);
+    }
+
+    @Override
+    public String get(String key) {
+        roundTrip();
+        return metadata.get(key);
+    }
+
+    @Override
+    public String remove(String key) {
+        roundTrip();
+        return metadata.remove(key);
+    }
+
+    /**
+     * Direct access to data without latency, to prepare benchmark state.
+     */
+    public ConcurrentMap<String, String> getMetadata() {
+        return metadata;
+    }
+
+    protected void roundTrip() {
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MappedFileMetadataStoreTest {
+
+    private static int CHUNK_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File file;
+    MappedFileMetadataStore store;
+
+    @Before
+    public void init() throws IOException {
+        file = new File(folder.getRoot(), "metadata.log");
+        store = new MappedFileMetadataStore(file, CHUNK_SIZE);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testBasicOperationsCase() {
+        assertThat(store.putIfAbsent("A", "1"), is(nullValue()));
+        assertThat(store.putIfAbsent("A", "2"), is("1"));
+        assertThat(store.get("A"), is("1"));
+
+        assertThat(store.replace("A", "2", "3"), is(false));
+        assertThat(store.replace("A", "1", "3"), is(true));
+        assertThat(store.get("A"), is("3"));
+
+        store.put("B", "4");
+        assertThat(store.remove("A"), is("3"));
+        assertThat(store.remove("A"), is(nullValue()));
+        assertThat(store.get("A"), is(nullValue()));
+        assertThat(store.get("B"), is("4"));
+        assertThat(store.replace("A", "3", "5"), is(false));
+    }
+
+    @Test
+    public void testRecoveryCase() throws IOException {
+        // enough records to fill several chunks and resize the index
+        for (int i = 0; i < 1000; i++) {
+            store.put("key" + i, "value" + i);
+        }
+        store.replace("key1", "value1", "updated");
+        store.remove("key2");
+        store.close();
+
+        store = new MappedFileMetadataStore(file, CHUNK_SIZE);
+        assertThat(store.get("key0"), is("value0"));
+        assertThat(store.get("key1"), is("updated"));
+        assertThat(store.get("key2"), is(nullValue()));
+        assertThat(store.get("key999"), is("value999"));
+    }
+
+    @Test
+    public void testTornRecordCase() throws IOException {
+        store.put("A", "1");
+        store.put("B", "2");
+        store.close();
+
+        // damage value of the last record as if the process crashed while it was written
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            long recordB = 13 + 1 + 1;
+            log.seek(recordB + 13 + 1);
+            log.write('X');
+        }
+
+        store = new MappedFileMetadataStore(file, CHUNK_SIZE);
+        assertThat(store.get("A"), is("1"));
+        assertThat(store.get("B"), is(nullValue()));
+
+        store.put("C", "3");
+        store.close();
+
+        store = new MappedFileMetadataStore(file, CHUNK_SIZE);
+        assertThat(store.get("A"), is("1"));
+        assertThat(store.get("C"), is("3"));
+    }
+
+    @Test
+    public void testCompactionCase() throws IOException {
+        store.setCompactionMinBytes(CHUNK_SIZE);
+        assertThat(store.compactIfNeeded(), is(false));
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                store.put("key" + i, "value" + round);
+            }
+        }
+        long sizeBefore = file.length();
+
+        assertThat(store.compactIfNeeded(), is(true));
+        assertThat(file.length(), is(lessThan(sizeBefore)));
+        assertThat(store.get("key42"), is("value19"));
+
+        store.put("key42", "after");
+        store.close();
+
+        store = new MappedFileMetadataStore(file, CHUNK_SIZE);
+        assertThat(store.get("key0"), is("value19"));
+        assertThat(store.get("key42"), is("after"));
+    }
+
+    @Test
+    public void testConcurrentPutIfAbsentCase() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String node = "node" + t;
+                results.add(executor.submit((Callable<Integer>) () -> {
+                    int won = 0;
+                    for (int i = 0; i < 500; i++) {
+                        if (store.putIfAbsent("file" + i, node) == null) {
+                            won++;
+                        }
+                    }
+                    return won;
+                }));
+            }
+
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            assertThat(total, is(500));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentFlushCase() throws Exception {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String node = "node" + t;
+                results.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < 500; i++) {
+                        store.put(node + "-file" + i, "some value of record " + i);
+                        store.flush();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        store.close();
+        store = new MappedFileMetadataStore(file, CHUNK_SIZE);
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < 500; i++) {
+                assertThat(store.get("node" + t + "-file" + i), is("some value of record " + i));
+            }
+        }
+    }
+}
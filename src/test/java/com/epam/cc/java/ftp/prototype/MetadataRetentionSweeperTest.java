@@ -0,0 +1,151 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetadataRetentionSweeperTest {
+
+    private static String PREFIX = "remote-";
+    private static long MAX_AGE = 100L;
+
+    ScannableMetadataStore store;
+    MetadataRetentionSweeper sweeper;
+
+    @Before
+    public void init() {
+        store = Mockito.mock(ScannableMetadataStore.class);
+        sweeper = new MetadataRetentionSweeper(store);
+        sweeper.setMaxAgeSeconds(MAX_AGE);
+        when(store.remove(anyString(), anyString())).thenReturn(true);
+    }
+
+    @Test
+    public void testRemoveExpiredCase() {
+        long now = Instant.now().getEpochSecond();
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put(PREFIX + "A", status(FileAcceptStatus.DONE, now - MAX_AGE * 2));
+        entries.put(PREFIX + "B", status(FileAcceptStatus.REJECTED, now - MAX_AGE * 2));
+        entries.put(PREFIX + "C", status(FileAcceptStatus.IN_PROGRESS, now - MAX_AGE * 2));
+        entries.put(PREFIX + "D", status(FileAcceptStatus.DONE, now));
+        mockScan(entries);
+
+        sweeper.addPrefix(PREFIX);
+        sweeper.run();
+
+        verify(store).remove(PREFIX + "A", entries.get(PREFIX + "A"));
+        verify(store).remove(PREFIX + "B", entries.get(PREFIX + "B"));
+        verify(store, times(2)).remove(anyString(), anyString());
+    }
+
+    @Test
+    public void testUnknownAgeCase() {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        // records of older formats have no timestamp
+        entries.put(PREFIX + "A", status(FileAcceptStatus.DONE, 0L));
+        entries.put(PREFIX + "B", status(FileAcceptStatus.DONE, 0L));
+        mockScan(entries);
+
+        sweeper.addPrefix(PREFIX, () -> Arrays.asList("A"));
+        sweeper.run();
+
+        verify(store, never()).remove(eq(PREFIX + "A"), anyString());
+        verify(store).remove(PREFIX + "B", entries.get(PREFIX + "B"));
+    }
+
+    @Test
+    public void testRemoveDisappearedCase() {
+        long now = Instant.now().getEpochSecond();
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put(PREFIX + "A", status(FileAcceptStatus.DONE, now));
+        entries.put(PREFIX + "B", status(FileAcceptStatus.DONE, now));
+        entries.put(PREFIX + "C", status(FileAcceptStatus.IN_PROGRESS, now));
+        mockScan(entries);
+
+        sweeper.addPrefix(PREFIX, () -> Arrays.asList("B"));
+        sweeper.run();
+
+        verify(store).remove(PREFIX + "A", entries.get(PREFIX + "A"));
+        verify(store, never()).remove(eq(PREFIX + "B"), anyString());
+        verify(store, never()).remove(eq(PREFIX + "C"), anyString());
+    }
+
+    @Test
+    public void testEmptyListingIgnoredCase() {
+        long now = Instant.now().getEpochSecond();
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put(PREFIX + "A", status(FileAcceptStatus.DONE, now));
+        entries.put(PREFIX + "B", status(FileAcceptStatus.DONE, now - MAX_AGE * 2));
+        mockScan(entries);
+
+        sweeper.addPrefix(PREFIX, Collections::emptyList);
+        sweeper.run();
+
+        verify(store, never()).remove(eq(PREFIX + "A"), anyString());
+        verify(store).remove(PREFIX + "B", entries.get(PREFIX + "B"));
+    }
+
+    @Test
+    public void testRemoveStaleSnapshotKeysCase() {
+        FtpListingSnapshot snapshot = Mockito.mock(FtpListingSnapshot.class);
+        when(snapshot.getKeyPrefix()).thenReturn("snapshot-");
+        when(snapshot.isStale("snapshot-/in@1")).thenReturn(true);
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("snapshot-/in", "2");
+        entries.put("snapshot-/in@1", "A");
+        entries.put("snapshot-/in@2", "B");
+        when(store.scan(eq(ScannableMetadataStore.INITIAL_CURSOR), eq("snapshot-"), anyInt()))
+                .thenReturn(new ScannableMetadataStore.ScanChunk(ScannableMetadataStore.INITIAL_CURSOR, entries));
+
+        sweeper.addListingSnapshot(snapshot);
+        sweeper.run();
+
+        verify(store).remove("snapshot-/in@1", "A");
+        verify(store, times(1)).remove(anyString(), anyString());
+    }
+
+    @Test
+    public void testIncrementalScanCase() {
+        when(store.scan(eq(ScannableMetadataStore.INITIAL_CURSOR), eq(PREFIX), anyInt()))
+                .thenReturn(new ScannableMetadataStore.ScanChunk("7", new LinkedHashMap<String, String>()));
+        when(store.scan(eq("7"), eq(PREFIX), anyInt()))
+                .thenReturn(new ScannableMetadataStore.ScanChunk("0", new LinkedHashMap<String, String>()));
+
+        sweeper.setMaxChunksPerRun(1);
+        sweeper.addPrefix(PREFIX);
+        sweeper.run();
+        sweeper.run();
+
+        verify(store).scan(eq(ScannableMetadataStore.INITIAL_CURSOR), eq(PREFIX), anyInt());
+        verify(store).scan(eq("7"), eq(PREFIX), anyInt());
+    }
+
+    private void mockScan(Map<String, String> entries) {
+        when(store.scan(eq(ScannableMetadataStore.INITIAL_CURSOR), eq(PREFIX), anyInt()))
+                .thenReturn(new ScannableMetadataStore.ScanChunk(ScannableMetadataStore.INITIAL_CURSOR, entries));
+    }
+
+    private static String status(int status, long timestamp) {
+        FileAcceptStatus acceptStatus = new FileAcceptStatus();
+
+        acceptStatus.setStatus(status);
+        acceptStatus.setTries(1);
+        acceptStatus.setLastTryTimestamp(timestamp);
+
+        return StatusSerializer.toString(acceptStatus);
+    }
+}
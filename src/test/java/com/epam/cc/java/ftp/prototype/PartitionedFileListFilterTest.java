@@ -0,0 +1,133 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.metadata.SimpleMetadataStore;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PartitionedFileListFilterTest {
+
+    private static int FILES = 200;
+
+    SimpleMetadataStore store;
+    ClusterMembership membership1;
+    ClusterMembership membership2;
+    PartitionedFileListFilter<DummyFile> filter1;
+    PartitionedFileListFilter<DummyFile> filter2;
+
+    @Before
+    public void init() {
+        store = new SimpleMetadataStore();
+        membership1 = new ClusterMembership(store, "node-1");
+        membership2 = new ClusterMembership(store, "node-2");
+        filter1 = new PartitionedFileListFilter<DummyFile>(
+                new DummyPersistentAcceptOnceRetriableFileListFilter(store, "remote-"), membership1);
+        filter2 = new PartitionedFileListFilter<DummyFile>(
+                new DummyPersistentAcceptOnceRetriableFileListFilter(store, "remote-"), membership2);
+
+        membership1.heartbeat();
+        membership2.heartbeat();
+        // first node learns about the second one on its next heartbeat
+        membership1.heartbeat();
+    }
+
+    @Test
+    public void testFilesArePartitionedCase() {
+        DummyFile[] files = files();
+
+        List<DummyFile> accepted1 = filter1.filterFiles(files);
+        List<DummyFile> accepted2 = filter2.filterFiles(files);
+
+        Set<DummyFile> all = new HashSet<DummyFile>(accepted1);
+        all.addAll(accepted2);
+        assertThat(all, hasSize(FILES));
+        assertThat(accepted1.size() + accepted2.size(), equalTo(FILES));
+        assertThat(accepted1.size(), greaterThan(FILES / 4));
+        assertThat(accepted2.size(), greaterThan(FILES / 4));
+    }
+
+    @Test
+    public void testTakeOverAfterLeaveCase() {
+        DummyFile[] files = files();
+
+        List<DummyFile> accepted1 = filter1.filterFiles(files);
+        membership2.leave();
+        membership1.heartbeat();
+        List<DummyFile> acceptedAfterLeave = filter1.filterFiles(files);
+
+        assertThat(accepted1.size() + acceptedAfterLeave.size(), equalTo(FILES));
+        assertThat(filter1.filterFiles(files), empty());
+    }
+
+    @Test
+    public void testFillLimitWithOtherFilesCase() {
+        DummyFile[] files = files();
+        int ownCount = 0;
+        for (DummyFile file : files) {
+            if (isOwnedBy(file, "node-1")) {
+                ownCount++;
+            }
+        }
+
+        // second node is registered but does not poll
+        List<DummyFile> accepted = filter1.filterFiles(files, FILES);
+
+        assertThat(accepted, hasSize(FILES));
+        for (DummyFile file : accepted.subList(0, ownCount)) {
+            assertThat(isOwnedBy(file, "node-1"), is(true));
+        }
+        assertThat(filter2.filterFiles(files, FILES), empty());
+    }
+
+    @Test
+    public void testFillLimitOfDelegateCase() {
+        DummyFile[] files = files();
+        AtomicInteger polls = new AtomicInteger();
+        AtomicInteger accepted = new AtomicInteger();
+        filter1.getDelegate().setMaxAcceptedFileListLength(FILES);
+        filter1.getDelegate().setPollListener((prefix, candidates, acceptedFiles, limitReached) -> {
+            polls.incrementAndGet();
+            accepted.addAndGet(acceptedFiles);
+            assertThat(candidates, equalTo(FILES));
+        });
+
+        // limit comes from the wrapped filter
+        assertThat(filter1.filterFiles(files), hasSize(FILES));
+        // one poll is reported once
+        assertThat(polls.get(), equalTo(1));
+        assertThat(accepted.get(), equalTo(FILES));
+    }
+
+    @Test
+    public void testOwnFilesFirstCase() {
+        List<DummyFile> accepted = filter1.filterFiles(files(), 10);
+
+        assertThat(accepted, hasSize(10));
+        for (DummyFile file : accepted) {
+            assertThat(isOwnedBy(file, "node-1"), is(true));
+        }
+    }
+
+    private boolean isOwnedBy(DummyFile file, String nodeId) {
+        return nodeId.equals(membership1.getRing().owner("remote-" + file.getName()));
+    }
+
+    private static DummyFile[] files() {
+        DummyFile[] files = new DummyFile[FILES];
+        for (int i = 0; i < FILES; i++) {
+            files[i] = new DummyFile("file-" + i);
+        }
+        return files;
+    }
+}
@@ -0,0 +1,55 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ProcessedKeysBloomFilterTest {
+
+    private static int KEYS = 10000;
+    private static double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    @Test
+    public void testNoFalseNegativesCase() {
+        ProcessedKeysBloomFilter filter = new ProcessedKeysBloomFilter(KEYS, FALSE_POSITIVE_PROBABILITY);
+        for (int i = 0; i < KEYS; i++) {
+            filter.put("processed-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < KEYS; i++) {
+            assertThat(filter.mightContain("processed-" + i), equalTo(true));
+            if (filter.mightContain("new-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives, lessThan((int) (KEYS * FALSE_POSITIVE_PROBABILITY * 2)));
+    }
+
+    @Test
+    public void testPersistAndMergeCase() {
+        ProcessedKeysBloomFilter first = new ProcessedKeysBloomFilter(KEYS, FALSE_POSITIVE_PROBABILITY);
+        ProcessedKeysBloomFilter second = new ProcessedKeysBloomFilter(KEYS, FALSE_POSITIVE_PROBABILITY);
+        first.put("A");
+        second.put("B");
+
+        ProcessedKeysBloomFilter restored = ProcessedKeysBloomFilter.fromString(first.toString());
+
+        assertThat(restored.mightContain("A"), equalTo(true));
+        assertThat(restored.merge(second), equalTo(true));
+        assertThat(restored.mightContain("B"), equalTo(true));
+    }
+
+    @Test
+    public void testIncompatibleFilterCase() {
+        ProcessedKeysBloomFilter filter = new ProcessedKeysBloomFilter(KEYS, FALSE_POSITIVE_PROBABILITY);
+        ProcessedKeysBloomFilter other = new ProcessedKeysBloomFilter(KEYS * 10, FALSE_POSITIVE_PROBABILITY);
+
+        assertThat(filter.merge(other), equalTo(false));
+        assertThat(ProcessedKeysBloomFilter.fromString("0:1:1474020000"), nullValue());
+    }
+}
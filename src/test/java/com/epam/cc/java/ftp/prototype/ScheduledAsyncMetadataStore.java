@@ -0,0 +1,95 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.integration.metadata.SimpleMetadataStore;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * In-memory store which asynchronous operations are completed by a scheduler after simulated network round trip,
+ * counts max number of operations in flight. Blocking operations are executed immediately. Use for tests only.
+ * <p>
+ * Created by Maksym Bruner.
+ */
+public class ScheduledAsyncMetadataStore implements AsyncConcurrentMetadataStore {
+
+    private final ConcurrentMetadataStore delegate = new SimpleMetadataStore();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long delayMicros;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public ScheduledAsyncMetadataStore(ScheduledExecutorService scheduler, long delayMicros) {
+        this.scheduler = scheduler;
+        this.delayMicros = delayMicros;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(String key) {
+        return roundTrip(() -> delegate.get(key));
+    }
+
+    @Override
+    public CompletableFuture<String> putIfAbsentAsync(String key, String value) {
+        return roundTrip(() -> delegate.putIfAbsent(key, value));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> replaceAsync(String key, String oldValue, String newValue) {
+        return roundTrip(() -> delegate.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    public CompletableFuture<String> removeAsync(String key) {
+        return roundTrip(() -> delegate.remove(key));
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, String oldValue, String newValue) {
+        return delegate.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public String get(String key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public String remove(String key) {
+        return delegate.remove(key);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    private <T> CompletableFuture<T> roundTrip(Supplier<T> operation) {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        scheduler.schedule(() -> {
+            inFlight.decrementAndGet();
+            future.complete(operation.get());
+        }, delayMicros, TimeUnit.MICROSECONDS);
+        return future;
+    }
+}
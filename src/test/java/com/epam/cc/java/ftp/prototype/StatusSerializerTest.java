@@ -0,0 +1,122 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class StatusSerializerTest {
+
+    private static long TIMESTAMP = 1474020000L;
+
+    @Test
+    public void testRoundTripCase() {
+        FileAcceptStatus status = status(FileAcceptStatus.REJECTED, 3, TIMESTAMP);
+
+        String value = StatusSerializer.toString(status);
+        FileAcceptStatus result = StatusSerializer.fromString(value);
+
+        assertThat(value, equalTo("2:3:" + TIMESTAMP));
+        assertStatus(result, FileAcceptStatus.REJECTED, 3, TIMESTAMP);
+    }
+
+    @Test
+    public void testLeaseRoundTripCase() {
+        FileAcceptStatus status = status(FileAcceptStatus.IN_PROGRESS, 1, TIMESTAMP);
+        status.setOwner("node-1");
+        status.setLeaseExpiry(TIMESTAMP + 15);
+
+        String value = StatusSerializer.toString(status);
+        FileAcceptStatus result = StatusSerializer.fromString(value, status(FileAcceptStatus.DONE, 2, 0L));
+
+        assertThat(value, equalTo("0:1:" + TIMESTAMP + ":" + (TIMESTAMP + 15) + ":node-1"));
+        assertStatus(result, FileAcceptStatus.IN_PROGRESS, 1, TIMESTAMP);
+        assertThat(result.getOwner(), equalTo("node-1"));
+        assertThat(result.getLeaseExpiry(), equalTo(TIMESTAMP + 15));
+
+        // reused target must not keep lease of previous value
+        StatusSerializer.fromString("0:1:" + TIMESTAMP, result);
+        assertThat(result.getOwner(), nullValue());
+        assertThat(result.getLeaseExpiry(), equalTo(0L));
+    }
+
+    @Test
+    public void testTransferProgressRoundTripCase() {
+        FileAcceptStatus status = status(FileAcceptStatus.IN_PROGRESS, 2, TIMESTAMP);
+        status.setTransferredBytes(1048576L);
+        status.setTransferChecksum(4294967295L);
+
+        String value = StatusSerializer.toString(status);
+        FileAcceptStatus result = StatusSerializer.fromString(value);
+
+        assertThat(value, equalTo("0:2:" + TIMESTAMP + ":0::1048576:4294967295"));
+        assertStatus(result, FileAcceptStatus.IN_PROGRESS, 2, TIMESTAMP);
+        assertThat(result.getOwner(), nullValue());
+        assertThat(result.getTransferredBytes(), equalTo(1048576L));
+        assertThat(result.getTransferChecksum(), equalTo(4294967295L));
+    }
+
+    @Test
+    public void testContentDigestRoundTripCase() {
+        FileAcceptStatus status = status(FileAcceptStatus.DONE, 1, TIMESTAMP);
+        status.setContentSize(11L);
+        status.setContentDigest("b94d27b9");
+
+        String value = StatusSerializer.toString(status);
+        FileAcceptStatus result = StatusSerializer.fromString(value);
+
+        assertThat(value, equalTo("1:1:" + TIMESTAMP + ":0::0:0:11:b94d27b9"));
+        assertStatus(result, FileAcceptStatus.DONE, 1, TIMESTAMP);
+        assertThat(result.getContentSize(), equalTo(11L));
+        assertThat(result.getContentDigest(), equalTo("b94d27b9"));
+
+        // reused target must not keep digest of previous value
+        StatusSerializer.fromString("1:1:" + TIMESTAMP, result);
+        assertThat(result.getContentDigest(), nullValue());
+    }
+
+    @Test
+    public void testLegacyJsonCase() {
+        String value = "{\"status\":1,\"tries\":2,\"lastTryTimestamp\":" + TIMESTAMP + "}";
+
+        FileAcceptStatus result = StatusSerializer.fromString(value);
+
+        assertStatus(result, FileAcceptStatus.DONE, 2, TIMESTAMP);
+    }
+
+    @Test
+    public void testReuseTargetCase() {
+        FileAcceptStatus target = new FileAcceptStatus();
+
+        FileAcceptStatus result = StatusSerializer.fromString("0:1:" + TIMESTAMP, target);
+
+        assertThat(result, sameInstance(target));
+        assertStatus(result, FileAcceptStatus.IN_PROGRESS, 1, TIMESTAMP);
+    }
+
+    @Test
+    public void testInvalidValueCase() {
+        assertThat(StatusSerializer.fromString(""), nullValue());
+        assertThat(StatusSerializer.fromString("0:x:1"), nullValue());
+        assertThat(StatusSerializer.fromString("{broken"), nullValue());
+    }
+
+    private static FileAcceptStatus status(int status, int tries, long timestamp) {
+        FileAcceptStatus acceptStatus = new FileAcceptStatus();
+
+        acceptStatus.setStatus(status);
+        acceptStatus.setTries(tries);
+        acceptStatus.setLastTryTimestamp(timestamp);
+
+        return acceptStatus;
+    }
+
+    private static void assertStatus(FileAcceptStatus status, int expectedStatus, int expectedTries,
+                                     long expectedTimestamp) {
+        assertThat(status.getStatus(), equalTo(expectedStatus));
+        assertThat(status.getTries(), equalTo(expectedTries));
+        assertThat(status.getLastTryTimestamp(), equalTo(expectedTimestamp));
+    }
+}
@@ -0,0 +1,95 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class TerminalStatusCacheTest {
+
+    @Test
+    public void testEvictionCase() {
+        TerminalStatusCache cache = new TerminalStatusCache(2);
+        cache.put("A");
+        cache.put("B");
+        // recently used key gets a second chance
+        assertThat(cache.contains("A"), equalTo(true));
+
+        cache.put("C");
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.contains("A"), equalTo(true));
+        assertThat(cache.contains("B"), equalTo(false));
+        assertThat(cache.contains("C"), equalTo(true));
+    }
+
+    @Test
+    public void testRemoveCase() {
+        TerminalStatusCache cache = new TerminalStatusCache(2);
+        cache.put("A");
+        cache.remove("A");
+        cache.put("B");
+        cache.put("C");
+
+        assertThat(cache.contains("A"), equalTo(false));
+        assertThat(cache.contains("B"), equalTo(true));
+        assertThat(cache.contains("C"), equalTo(true));
+    }
+
+    @Test
+    public void testRemoveAndPutCase() {
+        TerminalStatusCache cache = new TerminalStatusCache(10);
+        cache.put("hot");
+        for (int i = 0; i < 10000; i++) {
+            cache.put("key" + (i % 3));
+            cache.remove("key" + (i % 3));
+            cache.contains("hot");
+        }
+
+        assertThat(cache.clockSize(), lessThanOrEqualTo(20));
+        assertThat(cache.size(), equalTo(1));
+        assertThat(cache.contains("hot"), equalTo(true));
+    }
+
+    @Test
+    public void testConcurrentAccessCase() throws Exception {
+        int threads = 8;
+        int keysPerThread = 5000;
+        TerminalStatusCache cache = new TerminalStatusCache(1000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < threads; i++) {
+            String prefix = "thread" + i + "-";
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int found = 0;
+                    for (int j = 0; j < keysPerThread; j++) {
+                        cache.put(prefix + j);
+                        if (cache.contains(prefix + (j / 2))) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }
+            }));
+        }
+        for (Future<Integer> result : results) {
+            assertThat(result.get(), lessThanOrEqualTo(keysPerThread));
+        }
+        executor.shutdown();
+
+        cache.put("last");
+        assertThat(cache.size(), lessThanOrEqualTo(1000));
+        assertThat(cache.contains("last"), equalTo(true));
+    }
+}
@@ -0,0 +1,38 @@
+package com.epam.cc.java.ftp.prototype;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TopKSelectorTest {
+
+    @Test
+    public void testSelectCase() {
+        Integer[] items = {5, 1, 4, 2, 3};
+
+        int[] selected = TopKSelector.select(items, items.length, 3, Comparator.<Integer>naturalOrder());
+
+        assertThat(selected, equalTo(new int[]{1, 3, 4}));
+    }
+
+    @Test
+    public void testEqualElementsKeepOrderCase() {
+        String[] items = {"b", "a1", "c", "a2", "a3"};
+
+        int[] selected = TopKSelector.select(items, items.length, 2, Comparator.comparing(s -> s.charAt(0)));
+
+        assertThat(selected, equalTo(new int[]{1, 3}));
+    }
+
+    @Test
+    public void testPrefixAndBigKCase() {
+        Integer[] items = {3, 2, 1, 0};
+
+        assertThat(TopKSelector.select(items, 3, 10, Comparator.<Integer>naturalOrder()),
+                equalTo(new int[]{2, 1, 0}));
+        assertThat(TopKSelector.select(items, 3, 0, Comparator.<Integer>naturalOrder()), equalTo(new int[0]));
+    }
+}